@@ -0,0 +1,101 @@
+package org.geneticsvm;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Synthetic data set shaped like testdata (11 objects, 61 features, 3 classes).
+ * A scale of 100 multiplies both the objects and the features by 10.
+ */
+public class BenchmarkData {
+
+	public static final int ROWS = 11;
+	public static final int COLUMNS = 61;
+	public static final int LABELS = 3;
+	public static final long SEED = 4711;
+
+	private double[][] matrix;
+	private DataMatrix dataMatrix;
+	private int[] index;
+	private int[] indexLabels;
+	private List<SVMParameters> parameters;
+	
+	public BenchmarkData(int pScale) {
+		int lFactor = (int)Math.round(Math.sqrt(pScale));
+		int lRows = ROWS*lFactor;
+		int lColumns = COLUMNS*lFactor;
+		Random lRandom = new Random(SEED);
+		index = new int[lRows];
+		matrix = new double[lRows][lColumns];
+		for (int i=0; i<lRows; i++) {
+			index[i] = i % LABELS;
+			for (int k=0; k<lColumns; k++) {
+				// Mix of magnitudes, signs and exact zeros like the real feature vectors
+				switch (lRandom.nextInt(4)) {
+					case 0: matrix[i][k] = 0; break;
+					case 1: matrix[i][k] = lRandom.nextGaussian()+index[i]*0.25; break;
+					case 2: matrix[i][k] = lRandom.nextDouble()*1e-4; break;
+					default: matrix[i][k] = Math.round(lRandom.nextDouble()*1e6)/1e6; break;
+				}
+			}
+		}
+		dataMatrix = new DenseMatrix(matrix);
+		indexLabels = new int[LABELS];
+		for (int i=0; i<LABELS; i++) indexLabels[i] = i;
+		parameters = new ArrayList<SVMParameters>();
+		parameters.add(SVMParameters.fromString("-t 2 -c 100.0 -g 0.01"));
+		parameters.add(SVMParameters.fromString("-t 2 -c 1000.0 -g 0.01"));
+		parameters.add(SVMParameters.fromString("-t 2 -c 100.0 -g 0.1"));
+	}
+	
+	public void writeMatrix(File pFile) throws IOException {
+		PrintWriter lWriter = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(pFile), "UTF-8")));
+		try {
+			for (double[] lRow:matrix) {
+				for (int k=0; k<lRow.length; k++) {
+					if (k > 0) lWriter.print('\t');
+					lWriter.print(lRow[k]);
+				}
+				lWriter.println();
+			}
+		}
+		finally {
+			lWriter.close();
+		}
+	}
+	
+	public String getAllFeatures() {
+		char[] lResult = new char[getColumns()];
+		Arrays.fill(lResult, '1');
+		return new String(lResult);
+	}
+	
+	public Creature createCreature(Random pRandom) {
+		return new Creature(0.5, getColumns(), pRandom);
+	}
+	
+	public DataMatrix getMatrix() {
+		return dataMatrix;
+	}
+	
+	public int[] getIndex() {
+		return index;
+	}
+	
+	public int[] getIndexLabels() {
+		return indexLabels;
+	}
+	
+	public List<SVMParameters> getParameters() {
+		return parameters;
+	}
+	
+	public int getRows() {
+		return matrix.length;
+	}
+	
+	public int getColumns() {
+		return matrix[0].length;
+	}
+	
+}
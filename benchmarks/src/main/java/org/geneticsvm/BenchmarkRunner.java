@@ -0,0 +1,41 @@
+package org.geneticsvm;
+
+import java.io.*;
+import java.util.*;
+
+import org.openjdk.jmh.results.format.*;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+
+/**
+ * Runs the JMH benchmarks and writes the results as JSON to jmh-result-&lt;version&gt;.json
+ * unless -rf/-rff are given. All other JMH command line options are passed through.
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions lCommandLine = new CommandLineOptions(args);
+		ChainedOptionsBuilder lBuilder = new OptionsBuilder().parent(lCommandLine);
+		if (!lCommandLine.getResultFormat().hasValue()) {
+			lBuilder.resultFormat(ResultFormatType.JSON);
+		}
+		if (!lCommandLine.getResult().hasValue()) {
+			lBuilder.result("jmh-result-"+getVersion()+".json");
+		}
+		new Runner(lBuilder.build()).run();
+	}
+	
+	private static String getVersion() throws IOException {
+		Properties lProperties = new Properties();
+		InputStream lInput = BenchmarkRunner.class.getResourceAsStream("/benchmark.properties");
+		if (lInput == null) return "unknown";
+		try {
+			lProperties.load(lInput);
+		}
+		finally {
+			lInput.close();
+		}
+		return lProperties.getProperty("version", "unknown");
+	}
+	
+}
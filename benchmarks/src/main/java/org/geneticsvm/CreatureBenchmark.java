@@ -0,0 +1,69 @@
+package org.geneticsvm;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CreatureBenchmark {
+
+	public static final int POPULATION = 100;
+
+	@Param({"1", "100"})
+	public int scale;
+	
+	@Param({"0.01"})
+	public double permutationRate;
+	
+	private Random random;
+	private Creature creature;
+	private Creature other;
+	private Creature[] population;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		BenchmarkData lData = new BenchmarkData(scale);
+		random = new Random(BenchmarkData.SEED);
+		population = new Creature[POPULATION];
+		for (int i=0; i<population.length; i++) {
+			population[i] = lData.createCreature(random);
+			SVMResult[] lResults = new SVMResult[BenchmarkData.LABELS];
+			for (int k=0; k<lResults.length; k++) {
+				lResults[k] = new SVMResult(k, lData.getParameters().get(0), random.nextInt(10000)/100.0, random.nextInt(10000)/100.0);
+			}
+			population[i].setIndexLabelsBestResults(lResults);
+		}
+		creature = population[0];
+		other = population[1];
+	}
+	
+	@Benchmark
+	public Creature createOffspring() {
+		return creature.createOffspring(permutationRate, random);
+	}
+	
+	@Benchmark
+	public double getFMeasure() {
+		return creature.getFMeasure();
+	}
+	
+	@Benchmark
+	public int compareTo() {
+		return creature.compareTo(other);
+	}
+	
+	/** Ranking of a whole population as done once per turn. */
+	@Benchmark
+	public Creature[] sortPopulation() {
+		Creature[] lPopulation = population.clone();
+		Arrays.sort(lPopulation);
+		return lPopulation;
+	}
+	
+}
@@ -0,0 +1,38 @@
+package org.geneticsvm;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark {
+
+	@Param({"1", "100"})
+	public int scale;
+	
+	private BenchmarkData data;
+	private Creature creature;
+	private SVMBackend backend;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		data = new BenchmarkData(scale);
+		creature = data.createCreature(new Random(BenchmarkData.SEED));
+		backend = new StubBackend();
+	}
+	
+	/** Full fitness evaluation of one creature: every parameter set against every label, no fitness cache. */
+	@Benchmark
+	public double evaluateCreature() {
+		Creature lCreature = new Creature(creature.getBits(), creature.getLength());
+		new ComputeCreatureThread(lCreature, data.getParameters(), data.getIndex(), data.getIndexLabels(), data.getMatrix(), backend, null, 0, null).run();
+		return lCreature.getFMeasure();
+	}
+	
+}
@@ -0,0 +1,60 @@
+package org.geneticsvm;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatrixParsingBenchmark {
+
+	@Param({"1", "100"})
+	public int scale;
+	
+	private File directory;
+	private File textFile;
+	private File cachedFile;
+	private String features;
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		BenchmarkData lData = new BenchmarkData(scale);
+		features = lData.getAllFeatures();
+		directory = Files.createTempDirectory("geneticsvm-bench").toFile();
+		textFile = new File(directory, "text.matrix");
+		cachedFile = new File(directory, "cached.matrix");
+		lData.writeMatrix(textFile);
+		lData.writeMatrix(cachedFile);
+		MatrixLoader.load(cachedFile, features);
+	}
+	
+	@Setup(Level.Invocation)
+	public void removeSidecar() {
+		MatrixLoader.getSidecar(textFile).delete();
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		for (File lFile:directory.listFiles()) lFile.delete();
+		directory.delete();
+	}
+	
+	/** Cold load: tokenizes the text matrix and writes the binary sidecar. */
+	@Benchmark
+	public DataMatrix parseText() throws IOException {
+		return MatrixLoader.load(textFile, features);
+	}
+	
+	/** Warm load from an up to date sidecar. */
+	@Benchmark
+	public DataMatrix loadSidecar() throws IOException {
+		return MatrixLoader.load(cachedFile, features);
+	}
+	
+}
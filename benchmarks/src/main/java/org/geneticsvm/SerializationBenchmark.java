@@ -0,0 +1,58 @@
+package org.geneticsvm;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+	@Param({"1", "100"})
+	public int scale;
+	
+	private BenchmarkData data;
+	private Creature creature;
+	private TrainingSet formattedTrainingSet;
+	private File directory;
+	private File trainFile;
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		data = new BenchmarkData(scale);
+		creature = data.createCreature(new Random(BenchmarkData.SEED));
+		formattedTrainingSet = TrainingSet.forFeatures(data.getMatrix(), data.getIndex(), creature);
+		formattedTrainingSet.getFormattedRows();
+		directory = Files.createTempDirectory("geneticsvm-bench").toFile();
+		trainFile = new File(directory, "train.svm");
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		trainFile.delete();
+		directory.delete();
+	}
+	
+	/** First training file of a creature: formats the projected rows and writes them. */
+	@Benchmark
+	public long formatAndWrite() throws IOException {
+		TrainingSet lTrainingSet = TrainingSet.forFeatures(data.getMatrix(), data.getIndex(), creature);
+		lTrainingSet.writeSVMLight(trainFile, 0, -1);
+		return trainFile.length();
+	}
+	
+	/** Further training files of the same creature reuse the formatted rows. */
+	@Benchmark
+	public long write() throws IOException {
+		formattedTrainingSet.writeSVMLight(trainFile, 1, -1);
+		return trainFile.length();
+	}
+	
+}
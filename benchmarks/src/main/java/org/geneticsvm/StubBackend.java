@@ -0,0 +1,102 @@
+package org.geneticsvm;
+
+import java.io.*;
+
+/**
+ * Deterministic stand-in for svm_learn: a leave-one-out nearest centroid classifier.
+ * It touches every value of the training set once per call, so the benchmarks measure
+ * the cost around the solver (training sets, result bookkeeping) rather than svmlight itself.
+ */
+public class StubBackend implements SVMBackend {
+
+	private EvaluationMetrics metrics = new EvaluationMetrics();
+
+	public SVMResult leaveOneOut(TrainingSet pTrainingSet, int pIndexLabel, SVMParameters pParameters) throws IOException {
+		int lRows = pTrainingSet.getRowCount();
+		int lColumns = pTrainingSet.getColumnCount();
+		double[] lPositiveSum = new double[lColumns];
+		double[] lNegativeSum = new double[lColumns];
+		int lPositives = 0;
+		for (int i=0; i<lRows; i++) {
+			boolean lPositive = pTrainingSet.getLabel(i, pIndexLabel) == 1;
+			if (lPositive) lPositives++;
+			double[] lSum = lPositive ? lPositiveSum : lNegativeSum;
+			for (int k=0; k<lColumns; k++) {
+				lSum[k] += pTrainingSet.getValue(i, k);
+			}
+		}
+		int lTruePositives = 0;
+		int lFalsePositives = 0;
+		int lFalseNegatives = 0;
+		for (int i=0; i<lRows; i++) {
+			boolean lPositive = pTrainingSet.getLabel(i, pIndexLabel) == 1;
+			int lPositiveCount = lPositives-(lPositive ? 1 : 0);
+			int lNegativeCount = lRows-lPositives-(lPositive ? 0 : 1);
+			if ((lPositiveCount == 0) || (lNegativeCount == 0)) continue;
+			double lPositiveDistance = 0;
+			double lNegativeDistance = 0;
+			for (int k=0; k<lColumns; k++) {
+				double lValue = pTrainingSet.getValue(i, k);
+				double lPositiveCentroid = (lPositiveSum[k]-(lPositive ? lValue : 0))/lPositiveCount;
+				double lNegativeCentroid = (lNegativeSum[k]-(lPositive ? 0 : lValue))/lNegativeCount;
+				lPositiveDistance += (lValue-lPositiveCentroid)*(lValue-lPositiveCentroid);
+				lNegativeDistance += (lValue-lNegativeCentroid)*(lValue-lNegativeCentroid);
+			}
+			boolean lPredicted = lPositiveDistance < lNegativeDistance;
+			if (lPredicted && lPositive) lTruePositives++;
+			else if (lPredicted) lFalsePositives++;
+			else if (lPositive) lFalseNegatives++;
+		}
+		return SVMResult.fromConfusion(pIndexLabel, pParameters, lTruePositives, lFalsePositives, lFalseNegatives);
+	}
+
+	/** Centroids of the training rows of the fold, its test rows classified by the nearer one. */
+	public int[] crossValidateFold(TrainingSet pTrainingSet, int pIndexLabel, SVMParameters pParameters, FoldSplit pFoldSplit, int pFold) throws IOException {
+		boolean[] lTest = pFoldSplit.getTestRows(pTrainingSet, pFold);
+		int lColumns = pTrainingSet.getColumnCount();
+		double[] lPositiveCentroid = new double[lColumns];
+		double[] lNegativeCentroid = new double[lColumns];
+		int lPositives = 0;
+		int lNegatives = 0;
+		for (int i=0; i<lTest.length; i++) {
+			if (lTest[i]) continue;
+			boolean lPositive = pTrainingSet.getLabel(i, pIndexLabel) == 1;
+			if (lPositive) lPositives++;
+			else lNegatives++;
+			double[] lSum = lPositive ? lPositiveCentroid : lNegativeCentroid;
+			for (int k=0; k<lColumns; k++) {
+				lSum[k] += pTrainingSet.getValue(i, k);
+			}
+		}
+		int[] lConfusion = new int[3];
+		if ((lPositives == 0) || (lNegatives == 0)) return lConfusion;
+		for (int k=0; k<lColumns; k++) {
+			lPositiveCentroid[k] /= lPositives;
+			lNegativeCentroid[k] /= lNegatives;
+		}
+		for (int i=0; i<lTest.length; i++) {
+			if (!lTest[i]) continue;
+			boolean lPositive = pTrainingSet.getLabel(i, pIndexLabel) == 1;
+			double lPositiveDistance = 0;
+			double lNegativeDistance = 0;
+			for (int k=0; k<lColumns; k++) {
+				double lValue = pTrainingSet.getValue(i, k);
+				lPositiveDistance += (lValue-lPositiveCentroid[k])*(lValue-lPositiveCentroid[k]);
+				lNegativeDistance += (lValue-lNegativeCentroid[k])*(lValue-lNegativeCentroid[k]);
+			}
+			boolean lPredicted = lPositiveDistance < lNegativeDistance;
+			if (lPredicted && lPositive) lConfusion[0]++;
+			else if (lPredicted) lConfusion[1]++;
+			else if (lPositive) lConfusion[2]++;
+		}
+		return lConfusion;
+	}
+
+	public void kill() {
+	}
+
+	public EvaluationMetrics getMetrics() {
+		return metrics;
+	}
+
+}
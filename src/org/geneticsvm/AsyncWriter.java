@@ -0,0 +1,81 @@
+package org.geneticsvm;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+/**
+ * Writer that collects text in memory and hands it to a background thread on flush(), so the study never waits
+ * for the disk. Everything flushed before close() is written; the file is flushed whenever the queue runs empty,
+ * so readers tailing it see complete lines.
+ */
+public class AsyncWriter extends Writer {
+
+	private static final String END = new String("END");
+
+	private StringBuilder buffer = new StringBuilder();
+	private BlockingQueue<String> queue = new LinkedBlockingQueue<String>();
+	private Thread thread;
+	private volatile IOException error;
+	private boolean closed = false;
+
+	public AsyncWriter(File pFile, boolean pAppend) throws IOException {
+		final Writer lWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(pFile, pAppend), "UTF-8"), 1 << 16);
+		thread = new Thread("Writer "+pFile.getName()) {
+			public void run() {
+				try {
+					while (true) {
+						String lChunk = queue.take();
+						if (lChunk == END) break;
+						lWriter.write(lChunk);
+						if (queue.isEmpty()) lWriter.flush();
+					}
+				}
+				catch (IOException e) {
+					error = e;
+				}
+				catch (InterruptedException e) {
+					// Closed without draining
+				}
+				finally {
+					try {
+						lWriter.close();
+					}
+					catch (IOException e) {
+						if (error == null) error = e;
+					}
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public synchronized void write(char[] pBuffer, int pOffset, int pLength) throws IOException {
+		if (closed) throw new IOException("Writer closed");
+		buffer.append(pBuffer, pOffset, pLength);
+	}
+
+	public synchronized void flush() throws IOException {
+		if (error != null) throw error;
+		if (buffer.length() == 0) return;
+		queue.add(buffer.toString());
+		buffer.setLength(0);
+	}
+
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed) return;
+			flush();
+			closed = true;
+			queue.add(END);
+		}
+		try {
+			thread.join();
+		}
+		catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted while closing");
+		}
+		if (error != null) throw error;
+	}
+
+}
@@ -0,0 +1,255 @@
+package org.geneticsvm;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Binary state of a GeneticSVMStudy after a turn: input files, turn counter, best F-measure, random generator
+ * and the population with its results. Written to a temporary file and moved over the old checkpoint, so an
+ * interrupted run always leaves the last complete turn behind.
+ */
+public class Checkpoint {
+
+	private static final long MAGIC = 0x4753564d434b5054L; // "GSVMCKPT"
+	private static final int VERSION = 2;
+
+	private File parameterFile;
+	private File indexFile;
+	private File dataFile;
+	private File featureFile;
+	private long gridHash;
+	private int turn;
+	private double lastTurnsBestF;
+	private Random random;
+	private List<Creature> population;
+	private long evaluations;
+	private long trainings;
+	private int targetTurn = -1;
+	private long targetEvaluations;
+	private long targetTrainings;
+
+	public Checkpoint(File pParameterFile, File pIndexFile, File pDataFile, File pFeatureFile, long pGridHash, int pTurn, double pLastTurnsBestF, Random pRandom, Collection<Creature> pPopulation) {
+		parameterFile = pParameterFile;
+		indexFile = pIndexFile;
+		dataFile = pDataFile;
+		featureFile = pFeatureFile;
+		gridHash = pGridHash;
+		turn = pTurn;
+		lastTurnsBestF = pLastTurnsBestF;
+		random = pRandom;
+		population = new ArrayList<Creature>(pPopulation);
+	}
+
+	public static boolean isCheckpoint(File pFile) {
+		try {
+			DataInputStream lInput = new DataInputStream(new FileInputStream(pFile));
+			try {
+				return lInput.readLong() == MAGIC;
+			}
+			finally {
+				lInput.close();
+			}
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+
+	public void write(File pFile) throws IOException {
+		File lTemp = new File(pFile.getAbsolutePath()+".tmp");
+		FileOutputStream lFileOutput = new FileOutputStream(lTemp);
+		try {
+			DataOutputStream lOutput = new DataOutputStream(new BufferedOutputStream(lFileOutput));
+			lOutput.writeLong(MAGIC);
+			lOutput.writeInt(VERSION);
+			writeFile(lOutput, parameterFile);
+			writeFile(lOutput, indexFile);
+			writeFile(lOutput, dataFile);
+			writeFile(lOutput, featureFile);
+			lOutput.writeLong(gridHash);
+			lOutput.writeInt(turn);
+			lOutput.writeDouble(lastTurnsBestF);
+			// java.util.Random keeps its seed private, its serialized form is the only way to continue the sequence
+			ByteArrayOutputStream lRandom = new ByteArrayOutputStream();
+			ObjectOutputStream lObjectOutput = new ObjectOutputStream(lRandom);
+			lObjectOutput.writeObject(random);
+			lObjectOutput.close();
+			lOutput.writeInt(lRandom.size());
+			lOutput.write(lRandom.toByteArray());
+			lOutput.writeLong(evaluations);
+			lOutput.writeLong(trainings);
+			lOutput.writeInt(targetTurn);
+			lOutput.writeLong(targetEvaluations);
+			lOutput.writeLong(targetTrainings);
+			lOutput.writeInt(population.size());
+			for (Creature lCreature:population) {
+				lOutput.writeInt(lCreature.getLength());
+				for (long lWord:lCreature.getBits()) {
+					lOutput.writeLong(lWord);
+				}
+				lOutput.writeBoolean(lCreature.isKeep());
+				lOutput.writeBoolean(lCreature.isEvaluated());
+				SVMResult[] lResults = lCreature.getIndexLabelsBestResults();
+				lOutput.writeInt(lResults != null ? lResults.length : -1);
+				if (lResults == null) continue;
+				for (SVMResult lResult:lResults) {
+					lOutput.writeInt(lResult.getIndexLabel());
+					lOutput.writeUTF(lResult.getParameters() != null ? lResult.getParameters().toString() : "null");
+					lOutput.writeDouble(lResult.getPrecision());
+					lOutput.writeDouble(lResult.getRecall());
+				}
+			}
+			lOutput.flush();
+			lFileOutput.getFD().sync();
+		}
+		finally {
+			lFileOutput.close();
+		}
+		Files.move(lTemp.toPath(), pFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public static Checkpoint read(File pFile) throws IOException {
+		DataInputStream lInput = new DataInputStream(new BufferedInputStream(new FileInputStream(pFile)));
+		try {
+			if (lInput.readLong() != MAGIC) throw new IOException("Not a checkpoint file: "+pFile.getAbsolutePath());
+			int lVersion = lInput.readInt();
+			if (lVersion != VERSION) throw new IOException("Unsupported checkpoint version "+lVersion+": "+pFile.getAbsolutePath());
+			File lParameterFile = readFile(lInput);
+			File lIndexFile = readFile(lInput);
+			File lDataFile = readFile(lInput);
+			File lFeatureFile = readFile(lInput);
+			long lGridHash = lInput.readLong();
+			int lTurn = lInput.readInt();
+			double lLastTurnsBestF = lInput.readDouble();
+			byte[] lRandomBytes = new byte[lInput.readInt()];
+			lInput.readFully(lRandomBytes);
+			Random lRandom;
+			try {
+				lRandom = (Random)new ObjectInputStream(new ByteArrayInputStream(lRandomBytes)).readObject();
+			}
+			catch (ClassNotFoundException e) {
+				throw new IOException(e);
+			}
+			long lEvaluations = lInput.readLong();
+			long lTrainings = lInput.readLong();
+			int lTargetTurn = lInput.readInt();
+			long lTargetEvaluations = lInput.readLong();
+			long lTargetTrainings = lInput.readLong();
+			int lCount = lInput.readInt();
+			List<Creature> lPopulation = new ArrayList<Creature>(lCount);
+			for (int i=0; i<lCount; i++) {
+				int lLength = lInput.readInt();
+				long[] lBits = new long[Creature.words(lLength)];
+				for (int k=0; k<lBits.length; k++) {
+					lBits[k] = lInput.readLong();
+				}
+				Creature lCreature = new Creature(lBits, lLength);
+				lCreature.setKeep(lInput.readBoolean());
+				lCreature.setEvaluated(lInput.readBoolean());
+				int lResultCount = lInput.readInt();
+				if (lResultCount >= 0) {
+					SVMResult[] lResults = new SVMResult[lResultCount];
+					for (int k=0; k<lResults.length; k++) {
+						int lLabel = lInput.readInt();
+						SVMParameters lParameters = SVMParameters.fromString(lInput.readUTF());
+						double lPrecision = lInput.readDouble();
+						double lRecall = lInput.readDouble();
+						lResults[k] = new SVMResult(lLabel, lParameters, lPrecision, lRecall);
+					}
+					lCreature.setIndexLabelsBestResults(lResults);
+				}
+				lPopulation.add(lCreature);
+			}
+			Checkpoint lResult = new Checkpoint(lParameterFile, lIndexFile, lDataFile, lFeatureFile, lGridHash, lTurn, lLastTurnsBestF, lRandom, lPopulation);
+			lResult.setEvaluations(lEvaluations, lTrainings);
+			lResult.setTarget(lTargetTurn, lTargetEvaluations, lTargetTrainings);
+			return lResult;
+		}
+		finally {
+			lInput.close();
+		}
+	}
+
+	/** Creature evaluations and SVM trainings of the run so far. */
+	public void setEvaluations(long pEvaluations, long pTrainings) {
+		evaluations = pEvaluations;
+		trainings = pTrainings;
+	}
+	
+	/** Turn, evaluations and trainings when the target F-measure was reached, turn -1 if not yet. */
+	public void setTarget(int pTurn, long pEvaluations, long pTrainings) {
+		targetTurn = pTurn;
+		targetEvaluations = pEvaluations;
+		targetTrainings = pTrainings;
+	}
+	
+	private static void writeFile(DataOutputStream pOutput, File pFile) throws IOException {
+		pOutput.writeUTF(pFile != null ? pFile.getAbsolutePath() : "");
+	}
+
+	private static File readFile(DataInputStream pInput) throws IOException {
+		String lPath = pInput.readUTF();
+		return lPath.length() > 0 ? new File(lPath) : null;
+	}
+
+	public File getParameterFile() {
+		return parameterFile;
+	}
+
+	public File getIndexFile() {
+		return indexFile;
+	}
+
+	public File getDataFile() {
+		return dataFile;
+	}
+
+	public File getFeatureFile() {
+		return featureFile;
+	}
+
+	/** Hash of parameters, index and data the results were computed for, see GeneticSVMStudy.computeGridHash(). */
+	public long getGridHash() {
+		return gridHash;
+	}
+
+	/** Number of turns completed when the checkpoint was written. */
+	public int getTurn() {
+		return turn;
+	}
+
+	public double getLastTurnsBestF() {
+		return lastTurnsBestF;
+	}
+
+	public Random getRandom() {
+		return random;
+	}
+
+	public long getEvaluations() {
+		return evaluations;
+	}
+	
+	public long getTrainings() {
+		return trainings;
+	}
+	
+	public int getTargetTurn() {
+		return targetTurn;
+	}
+	
+	public long getTargetEvaluations() {
+		return targetEvaluations;
+	}
+	
+	public long getTargetTrainings() {
+		return targetTrainings;
+	}
+	
+	/** Population of the next turn. */
+	public List<Creature> getPopulation() {
+		return population;
+	}
+
+}
@@ -3,37 +3,74 @@ package org.geneticsvm;
 import java.io.*;
 import java.util.*;
 
-public class ComputeCreatureThread extends Thread {
+public class ComputeCreatureThread implements Runnable, WorkStealingExecutor.Job<ComputeCreatureThread> {
 
 	private Creature creature;
 	private List<SVMParameters> parameters;
 	private int[] index;
-	private double[][] matrix;
-	private int threadID;
-	private File tmpDirectory;
+	private DataMatrix matrix;
 	private int[] indexLabels;
 	private SVMResult[] indexLabelsBestResults;
 	private long startTime;
-	private Process process = null;
-	private InputStream inputStream;
-	private InputStream errorStream;
-	private OutputStream outputStream;
+	private SVMBackend backend;
+	private FoldSplit foldSplit;
 	private long timeout;
 	private SVMResult[] oldIndexLabelsBestResults;
+	private FitnessCache fitnessCache;
+	private boolean[] selection;
+	private boolean resume;
+	private boolean complete;
+	private boolean cached;
+	private SVMBackendPool backends;
+	private TrainingSet trainingSet;
+	private int[] bestOrder;
+	// Per label and parameter set: summed confusion of the folds run as parts, and the number of folds done
+	private int[][][] foldConfusions;
+	private int[][] foldsDone;
+	private long prepareStart;
+	private volatile boolean timedOut;
+	private volatile boolean killed;
+	private Set<SVMBackend> running = new HashSet<SVMBackend>();
 	
-	public ComputeCreatureThread(Creature pCreature, List<SVMParameters> pParameters, int[] pIndex, int[] pIndexLabels, double[][] pMatrix, File pTmpDirectory, int pThreadID, long pTimeout) {
+	public ComputeCreatureThread(Creature pCreature, List<SVMParameters> pParameters, int[] pIndex, int[] pIndexLabels, DataMatrix pMatrix, SVMBackend pBackend, FoldSplit pFoldSplit, long pTimeout, FitnessCache pFitnessCache) {
 		startTime = System.currentTimeMillis();
 		creature = pCreature;
 		parameters = pParameters;
 		index = pIndex;
 		indexLabels = pIndexLabels;
 		matrix = pMatrix;
-		tmpDirectory = pTmpDirectory;
-		threadID = pThreadID;
+		backend = pBackend;
+		foldSplit = pFoldSplit;
 		timeout = pTimeout;
+		fitnessCache = pFitnessCache;
 		oldIndexLabelsBestResults = pCreature.getIndexLabelsBestResults();		
 	}
 	
+	/** Creature split into parts for a WorkStealingExecutor, each part trains on the backend of its slot. */
+	public ComputeCreatureThread(Creature pCreature, List<SVMParameters> pParameters, int[] pIndex, int[] pIndexLabels, DataMatrix pMatrix, SVMBackendPool pBackends, FoldSplit pFoldSplit, long pTimeout, FitnessCache pFitnessCache) {
+		this(pCreature, pParameters, pIndex, pIndexLabels, pMatrix, (SVMBackend)null, pFoldSplit, pTimeout, pFitnessCache);
+		backends = pBackends;
+	}
+	
+	/**
+	 * Restricts the run to the selected parameters (racing). With pResume the creature's current results
+	 * are extended instead of replaced, so a coarse grid and the rest of the grid add up to the full grid.
+	 */
+	public void setParameterSelection(boolean[] pSelection, boolean pResume) {
+		selection = pSelection;
+		resume = pResume;
+	}
+	
+	/** Whether the creature's results cover the whole parameter grid after the run. */
+	public boolean isComplete() {
+		return complete;
+	}
+	
+	/** Whether the results were taken from the fitness cache instead of being computed. */
+	public boolean isCached() {
+		return cached;
+	}
+	
 	public Creature getCreatue() {
 		return creature;
 	}
@@ -45,193 +82,259 @@ public class ComputeCreatureThread extends Thread {
 		return lResult;
 	}
 	
+	/** Stops the running trainings and skips the remaining ones, the creature is left without results. */
 	public void kill() {
-		if (process != null) {
-			if (inputStream != null) {
-				try {
-					inputStream.close();
-				}
-				catch (IOException e) {
-				}
+		killed = true;
+		synchronized (running) {
+			for (SVMBackend lBackend:running) {
+				lBackend.kill();
 			}
-			if (outputStream != null) {
-				try {
-					outputStream.close();
-				}
-				catch (IOException e) {
-				}
+		}
+	}
+	
+	private EvaluationMetrics getMetrics() {
+		return backends != null ? backends.getMetrics() : backend.getMetrics();
+	}
+	
+	public void run() {
+		if (!prepare()) return;
+		for (int[] lPath:getPaths(true)) {
+			for (int i=0; i<indexLabels.length; i++) {
+				evaluate(backend, i, lPath);
 			}
-			if (errorStream != null) {
-				try {
-					errorStream.close();
+		}
+		finish();
+	}
+	
+	/**
+	 * One part per label and parameter set, or per label and kernel path if the backends warm-start along C.
+	 * With cross-validation each fold is a part of its own.
+	 */
+	public List<WorkStealingExecutor.Part> split() {
+		List<WorkStealingExecutor.Part> lResult = new ArrayList<WorkStealingExecutor.Part>();
+		if (!prepare()) return lResult;
+		if (foldSplit != null) {
+			foldConfusions = new int[indexLabels.length][parameters.size()][3];
+			foldsDone = new int[indexLabels.length][parameters.size()];
+		}
+		for (final int[] lPath:getPaths(backends.isWarmStarting())) {
+			for (int i=0; i<indexLabels.length; i++) {
+				final int lLabel = i;
+				if (foldSplit == null) {
+					lResult.add(new WorkStealingExecutor.Part() {
+						public void run(int pSlot) {
+							evaluate(backends.get(pSlot), lLabel, lPath);
+						}
+					});
+					continue;
 				}
-				catch (IOException e) {
+				for (int f=0; f<foldSplit.getFolds(); f++) {
+					final int lFold = f;
+					lResult.add(new WorkStealingExecutor.Part() {
+						public void run(int pSlot) {
+							evaluateFold(backends.get(pSlot), lLabel, lPath, lFold);
+						}
+					});
 				}
 			}
-			process.destroy();
 		}
+		return lResult;
 	}
 	
-	public void run() {
+	public ComputeCreatureThread reduce() {
+		if (foldConfusions != null) mergeFolds();
+		finish();
+		return this;
+	}
+	
+	/** Looks the creature up in the fitness cache and prepares the training set, false if nothing is left to compute. */
+	private boolean prepare() {
+		startTime = System.currentTimeMillis();
 		creature.setKeep(false);
-		// Evaluate Parameters
+		if ((fitnessCache != null) && (!resume)) {
+			SVMResult[] lCachedResults = fitnessCache.get(creature);
+			if (lCachedResults != null) {
+				creature.setIndexLabelsBestResults(lCachedResults);
+				complete = true;
+				cached = true;
+				creature.setEvaluated(true);
+				return false;
+			}
+		}
+		prepareStart = System.nanoTime();
+		trainingSet = TrainingSet.forFeatures(matrix, index, creature);
+		getMetrics().since(EvaluationMetrics.PREPARE, prepareStart);
 		indexLabelsBestResults = new SVMResult[indexLabels.length];
+		bestOrder = new int[indexLabels.length];
 		for (int i=0; i<indexLabelsBestResults.length; i++) {
 			indexLabelsBestResults[i] = new SVMResult(indexLabels[i], null, -1, -1);
+			if (resume && (oldIndexLabelsBestResults != null)) {
+				SVMResult lOld = oldIndexLabelsBestResults[i];
+				indexLabelsBestResults[i] = new SVMResult(lOld.getIndexLabel(), lOld.getParameters(), lOld.getPrecision(), lOld.getRecall());
+				indexLabelsBestResults[i].setModel(lOld.getModel());
+				bestOrder[i] = parameters.indexOf(lOld.getParameters());
+			}
 		}
-		for (SVMParameters lParameters:parameters) {
-			if (isTimeout()) {
-				indexLabelsBestResults = null;
-				break;
+		complete = (selection == null) || resume;
+		return true;
+	}
+	
+	/** Selected parameter indices, every kernel's C values in ascending order, one path per kernel or per parameter set. */
+	private List<int[]> getPaths(boolean pByKernel) {
+		Integer[] lOrder = new Integer[parameters.size()];
+		for (int i=0; i<lOrder.length; i++) lOrder[i] = i;
+		Arrays.sort(lOrder, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				SVMParameters lA = parameters.get(a);
+				SVMParameters lB = parameters.get(b);
+				if (lA.getKernel() != lB.getKernel()) return Integer.compare(lA.getKernel(), lB.getKernel());
+				if (lA.getD() != lB.getD()) return Integer.compare(lA.getD(), lB.getD());
+				if (lA.getGamma() != lB.getGamma()) return Double.compare(lA.getGamma(), lB.getGamma());
+				return Double.compare(lA.getTradeOff(), lB.getTradeOff());
 			}
-			for (int i=0; i<indexLabels.length; i++) {
-				if (isTimeout()) {
-					indexLabelsBestResults = null;
-					break;
+		});
+		List<int[]> lResult = new ArrayList<int[]>();
+		List<Integer> lPath = new ArrayList<Integer>();
+		SVMParameters lPrevious = null;
+		for (int lParameterIndex:lOrder) {
+			if ((selection != null) && (!selection[lParameterIndex])) continue;
+			SVMParameters lParameters = parameters.get(lParameterIndex);
+			if ((lPrevious != null) && ((!pByKernel) || (lPrevious.getKernel() != lParameters.getKernel()) || (lPrevious.getD() != lParameters.getD()) || (lPrevious.getGamma() != lParameters.getGamma()))) {
+				lResult.add(toArray(lPath));
+				lPath.clear();
+			}
+			lPath.add(lParameterIndex);
+			lPrevious = lParameters;
+		}
+		if (!lPath.isEmpty()) lResult.add(toArray(lPath));
+		return lResult;
+	}
+	
+	private static int[] toArray(List<Integer> pList) {
+		int[] lResult = new int[pList.size()];
+		for (int i=0; i<lResult.length; i++) lResult[i] = pList.get(i);
+		return lResult;
+	}
+	
+	/** Trains one label on a path of parameter sets, each run can start from the previous solution. */
+	private void evaluate(SVMBackend pBackend, int pLabel, int[] pPath) {
+		synchronized (running) {
+			running.add(pBackend);
+		}
+		try {
+			pBackend.setParentResults(creature.getParentResults());
+			for (int lParameterIndex:pPath) {
+				if (isTimeout() || killed) {
+					timedOut = true;
+					return;
 				}
-				int lIndexLabel = indexLabels[i];
-				// Write Training Data
 				try {
-					PrintWriter lWriter = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmpDirectory.getAbsolutePath()+File.separator+Integer.toString(threadID)+File.separator+"train.svm"), "UTF-8"));					
-					for (int k=0; k<matrix.length; k++) {
-						int lColID = 0;
-						lWriter.print(index[k] == lIndexLabel ? "1":"-1");
-						for (int m=0; m<matrix[k].length; m++) {
-							if (creature.getFeatures().charAt(m)=='1') {
-								lColID++;
-								lWriter.print(" "+lColID+":"+matrix[k][m]);
-							}
-						}
-						lWriter.println();
+					SVMResult lResult = pBackend.evaluate(trainingSet, indexLabels[pLabel], parameters.get(lParameterIndex), foldSplit);
+					if (isTimeout() || killed) {
+						timedOut = true;
+						return;
 					}
-					lWriter.close();
+					merge(pLabel, lParameterIndex, lResult);
 				}
 				catch (IOException e) {
-					e.printStackTrace();
-				}
-				// Start SVM
-				String lSVMLearn = File.separatorChar=='/' ? "svm_learn" : "svm_learn.exe";
-				BufferedReader lErrorReader = null;
-				BufferedReader lInputReader = null;
-				try {
-					List<String> lParamList = new Vector<String>();
-					lParamList.add(lSVMLearn);
-					for (String lString:lParameters.getParameterArray()) {
-						lParamList.add(lString);
-					}
-					lParamList.add("-x");
-					lParamList.add("1");
-					lParamList.add(tmpDirectory.getAbsolutePath()+File.separator+Integer.toString(threadID)+File.separator+"train.svm");
-					lParamList.add(tmpDirectory.getAbsolutePath()+File.separator+Integer.toString(threadID)+File.separator+"train.model");
-					String[] lParams = new String[lParamList.size()];
-					StringBuffer lDebug = new StringBuffer();
-					for (int k=0; k<lParams.length; k++) {
-						lDebug.append(lParamList.get(k)+" ");
-						lParams[k] = lParamList.get(k);
-					}
-					//System.out.println(lDebug.toString());
-					process = Runtime.getRuntime().exec(lParams);
-					inputStream = process.getInputStream();
-					errorStream = process.getErrorStream();
-					outputStream = process.getOutputStream();
-					lErrorReader = new BufferedReader(new InputStreamReader(errorStream));
-					lInputReader = new BufferedReader(new InputStreamReader(inputStream));
-					String lLine = null;
-					while ((lLine = lErrorReader.readLine()) != null) {
-						System.err.println(lLine);
-						if (isTimeout()) {
-							indexLabelsBestResults = null;
-							break;
-						}
-					}
-					double lPrecision = -1;
-					double lRecall = -1;
-					while ((lLine = lInputReader.readLine()) != null) {
-						if (isTimeout()) {
-							indexLabelsBestResults = null;
-							break;
-						}
-						if (lLine.startsWith("Leave-one-out estimate of the recall")) {
-							try {
-								lRecall = Double.parseDouble(lLine.substring(lLine.indexOf("=")+1, lLine.indexOf("%")));
-							}
-							catch (NumberFormatException f) {
-								lRecall = -1;
-							}
-						}
-						if (lLine.startsWith("Leave-one-out estimate of the precision")) {
-							try {
-								lPrecision = Double.parseDouble(lLine.substring(lLine.indexOf("=")+1, lLine.indexOf("%")));
-							}
-							catch (NumberFormatException f) {
-								lPrecision = -1;
-							}
-						}
-						//System.out.println(lLine);
-					}
-					if (!isTimeout()) {
-						try {
-							if (process.waitFor() == 0) {
-								if ((lPrecision >= 0) && (lRecall >= 0)) {
-									double lFMeasure = 0;								
-									if (lPrecision+lRecall > 0) {
-										lFMeasure = (2 *  lPrecision * lRecall) / (lPrecision + lRecall);
-										if ((lFMeasure > indexLabelsBestResults[i].getFMeasure()) || (indexLabelsBestResults[i].getParameters()==null)) {
-											indexLabelsBestResults[i].setParameters(lParameters);
-											indexLabelsBestResults[i].setPrecision(lPrecision);
-											indexLabelsBestResults[i].setRecall(lRecall);
-										}
-									}
-								}
-							}
-							else {
-								throw new Exception("SVM exited with error");
-							}
-						}
-						catch (InterruptedException e) {
-							if (isTimeout()) {
-								indexLabelsBestResults = null;
-								break;
-							}
-						}
+					if (isTimeout() || killed) {
+						timedOut = true;
+						return;
 					}
-				}
-				catch (Exception e) {
-					if ((!e.getMessage().equals("Stream closed")) && (!e.getMessage().equals("Bad file descriptor"))) {
+					if ((e.getMessage() == null) || ((!e.getMessage().equals("Stream closed")) && (!e.getMessage().equals("Bad file descriptor")))) {
 						e.printStackTrace();
 					}
 				}
-				finally {
-					if (inputStream != null) {
-						try {
-							inputStream.close();
-						}
-						catch (IOException e) {							
-						}
+			}
+		}
+		finally {
+			synchronized (running) {
+				running.remove(pBackend);
+			}
+		}
+	}
+	
+	/** Trains one label on a path of parameter sets without one fold, the folds are added up in mergeFolds(). */
+	private void evaluateFold(SVMBackend pBackend, int pLabel, int[] pPath, int pFold) {
+		synchronized (running) {
+			running.add(pBackend);
+		}
+		try {
+			pBackend.setParentResults(creature.getParentResults());
+			for (int lParameterIndex:pPath) {
+				if (isTimeout() || killed) {
+					timedOut = true;
+					return;
+				}
+				try {
+					int[] lConfusion = pBackend.crossValidateFold(trainingSet, indexLabels[pLabel], parameters.get(lParameterIndex), foldSplit, pFold);
+					synchronized (this) {
+						for (int i=0; i<3; i++) foldConfusions[pLabel][lParameterIndex][i] += lConfusion[i];
+						foldsDone[pLabel][lParameterIndex]++;
 					}
-					if (errorStream != null) {
-						try {
-							errorStream.close();
-						}
-						catch (IOException e) {							
-						}
+				}
+				catch (IOException e) {
+					if (isTimeout() || killed) {
+						timedOut = true;
+						return;
 					}
-					if (outputStream != null) {
-						try {
-							outputStream.close();
-						}
-						catch (IOException e) {							
-						}
+					if ((e.getMessage() == null) || ((!e.getMessage().equals("Stream closed")) && (!e.getMessage().equals("Bad file descriptor")))) {
+						e.printStackTrace();
 					}
 				}
 			}
 		}
+		finally {
+			synchronized (running) {
+				running.remove(pBackend);
+			}
+		}
+	}
+	
+	/** Results of the parameter sets whose folds all succeeded. */
+	private synchronized void mergeFolds() {
+		if (timedOut) return;
+		for (int i=0; i<indexLabels.length; i++) {
+			for (int p=0; p<parameters.size(); p++) {
+				if (foldsDone[i][p] < foldSplit.getFolds()) continue;
+				int[] lConfusion = foldConfusions[i][p];
+				merge(i, p, SVMResult.fromConfusion(indexLabels[i], parameters.get(p), lConfusion[0], lConfusion[1], lConfusion[2]));
+			}
+		}
+	}
+	
+	private synchronized void merge(int pLabel, int pParameterIndex, SVMResult pResult) {
+		double lPrecision = pResult.getPrecision();
+		double lRecall = pResult.getRecall();
+		if ((lPrecision < 0) || (lRecall < 0) || (lPrecision+lRecall <= 0)) return;
+		// Ties go to the parameters listed first, as if evaluated in file order
+		double lFMeasure = pResult.getFMeasure();
+		double lBestFMeasure = indexLabelsBestResults[pLabel].getFMeasure();
+		if ((lFMeasure > lBestFMeasure) || (indexLabelsBestResults[pLabel].getParameters()==null) || ((lFMeasure == lBestFMeasure) && (pParameterIndex < bestOrder[pLabel]))) {
+			indexLabelsBestResults[pLabel].setParameters(parameters.get(pParameterIndex));
+			indexLabelsBestResults[pLabel].setPrecision(lPrecision);
+			indexLabelsBestResults[pLabel].setRecall(lRecall);
+			indexLabelsBestResults[pLabel].setModel(pResult.getModel());
+			bestOrder[pLabel] = pParameterIndex;
+		}
+	}
+	
+	private synchronized void finish() {
+		// Cache hits were complete in prepare(), there is nothing to merge, store or time
+		if (cached) return;
+		getMetrics().since(EvaluationMetrics.CREATURE, prepareStart);
+		if (timedOut) indexLabelsBestResults = null;
 		if ((!isTimeout()) || (creature.getFMeasure()==0)) {
 			creature.setIndexLabelsBestResults(indexLabelsBestResults);
+			creature.setEvaluated(complete && (!isTimeout()) && (indexLabelsBestResults != null));
+			if ((fitnessCache != null) && (!isTimeout()) && complete) {
+				fitnessCache.put(creature, indexLabelsBestResults);
+			}
 		}
 		else {
 			if (creature.getFMeasure()>0) {
 				creature.setIndexLabelsBestResults(oldIndexLabelsBestResults);
+				creature.setEvaluated(false);
 				creature.setKeep(true);
 			}
 		}
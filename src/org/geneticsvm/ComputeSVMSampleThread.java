@@ -3,27 +3,35 @@ package org.geneticsvm;
 import java.io.*;
 import java.util.*;
 
-public class ComputeSVMSampleThread extends Thread{
+public class ComputeSVMSampleThread implements WorkStealingExecutor.Job<ComputeSVMSampleThread> {
 	
-	private double[][] matrix;
-	private int threadID;
-	private File tmpDirectory;
+	private DataMatrix matrix;
 	private int[] index;
 	private int[] indexLabels;
 	private Sample sample;
 	SVMParameters[] indexLabelParameters;
 	private long startTime;
-	private Process process = null;
+	private FoldSplit foldSplit;
+	private volatile boolean killed = false;
+	private SVMBackendPool backends;
+	private TrainingSet trainingSet;
+	private SVMResult[] indexLabelsBestResults;
+	// Per label: summed confusion of the folds run as parts, and the number of folds done
+	private int[][] foldConfusions;
+	private int[] foldsDone;
+	private long prepareStart;
+	private Set<SVMBackend> running = new HashSet<SVMBackend>();
 	
-	public ComputeSVMSampleThread(Sample pSample, SVMParameters[] pIndexLabelParameters, int[] pIndex, int[] pIndexLabels, double[][] pMatrix, File pTmpDirectory, int pThreadID) {
+	/** Sample split into parts for a WorkStealingExecutor, each part trains on the backend of its slot. */
+	public ComputeSVMSampleThread(Sample pSample, SVMParameters[] pIndexLabelParameters, int[] pIndex, int[] pIndexLabels, DataMatrix pMatrix, SVMBackendPool pBackends, FoldSplit pFoldSplit) {
 		startTime = System.currentTimeMillis();
 		sample = pSample;
 		indexLabelParameters = pIndexLabelParameters;
 		index = pIndex;
 		indexLabels = pIndexLabels;
 		matrix = pMatrix;
-		tmpDirectory = pTmpDirectory;
-		threadID = pThreadID;
+		backends = pBackends;
+		foldSplit = pFoldSplit;
 	}
 	
 	public Sample getSample() {
@@ -35,97 +43,116 @@ public class ComputeSVMSampleThread extends Thread{
 	}
 	
 	public void kill() {
-		if (process != null) {
-			process.destroy();
+		killed = true;
+		synchronized (running) {
+			for (SVMBackend lBackend:running) {
+				lBackend.kill();
+			}
 		}
 	}
 	
-	public void run() {
-		SVMResult[] lIndexLabelsBestResults = new SVMResult[indexLabels.length];
-		sample.setIndexLabelsBestResults(lIndexLabelsBestResults);
+	/** One part per label, or per label and fold with cross-validation, each trains on the backend of its slot. */
+	public List<WorkStealingExecutor.Part> split() {
+		prepare();
+		List<WorkStealingExecutor.Part> lResult = new ArrayList<WorkStealingExecutor.Part>();
+		if (foldSplit != null) {
+			foldConfusions = new int[indexLabels.length][3];
+			foldsDone = new int[indexLabels.length];
+		}
 		for (int i=0; i<indexLabels.length; i++) {
-			int lIndexLabel = indexLabels[i];
-			lIndexLabelsBestResults[i] = new SVMResult(lIndexLabel, indexLabelParameters[i], -1, -1);
-			// Write Training Data
-			try {
-				PrintWriter lWriter = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmpDirectory.getAbsolutePath()+File.separator+Integer.toString(threadID)+File.separator+"train.svm"), "UTF-8"));					
-				for (int k=0; k<matrix.length; k++) {
-					if (sample.getSample().charAt(k) == '1') {
-						lWriter.print(index[k] == lIndexLabel ? "1":"-1");
-						for (int m=0; m<matrix[k].length; m++) {
-							lWriter.print(" "+(m+1)+":"+matrix[k][m]);
-						}
-						lWriter.println();
+			final int lLabel = i;
+			if (foldSplit == null) {
+				lResult.add(new WorkStealingExecutor.Part() {
+					public void run(int pSlot) {
+						evaluate(backends.get(pSlot), lLabel);
 					}
-				}
-				lWriter.close();
+				});
+				continue;
 			}
-			catch (IOException e) {
-				e.printStackTrace();
-			}
-			// Start SVM
-			String lSVMLearn = File.separatorChar=='/' ? "svm_learn" : "svm_learn.exe";
-			try {
-				List<String> lParamList = new Vector<String>();
-				lParamList.add(lSVMLearn);
-				for (String lString:indexLabelParameters[i].getParameterArray()) {
-					lParamList.add(lString);
-				}
-				lParamList.add("-x");
-				lParamList.add("1");
-				lParamList.add(tmpDirectory.getAbsolutePath()+File.separator+Integer.toString(threadID)+File.separator+"train.svm");
-				lParamList.add(tmpDirectory.getAbsolutePath()+File.separator+Integer.toString(threadID)+File.separator+"train.model");
-				String[] lParams = new String[lParamList.size()];
-				StringBuffer lDebug = new StringBuffer();
-				for (int k=0; k<lParams.length; k++) {
-					lDebug.append(lParamList.get(k)+" ");
-					lParams[k] = lParamList.get(k);
-				}
-				//System.out.println(lDebug.toString());
-				process = Runtime.getRuntime().exec(lParams);
-				BufferedReader lErrorReader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-				BufferedReader lInputReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-				String lLine = null;
-				while ((lLine = lErrorReader.readLine()) != null) {
-					System.err.println(lLine);
-				}
-				double lPrecision = -1;
-				double lRecall = -1;
-				while ((lLine = lInputReader.readLine()) != null) {
-					if (lLine.startsWith("Leave-one-out estimate of the recall")) {
-						try {
-							lRecall = Double.parseDouble(lLine.substring(lLine.indexOf("=")+1, lLine.indexOf("%")));
-						}
-						catch (NumberFormatException f) {
-							lRecall = -1;
-						}
-					}
-					if (lLine.startsWith("Leave-one-out estimate of the precision")) {
-						try {
-							lPrecision = Double.parseDouble(lLine.substring(lLine.indexOf("=")+1, lLine.indexOf("%")));
-						}
-						catch (NumberFormatException f) {
-							lPrecision = -1;
-						}
+			for (int f=0; f<foldSplit.getFolds(); f++) {
+				final int lFold = f;
+				lResult.add(new WorkStealingExecutor.Part() {
+					public void run(int pSlot) {
+						evaluateFold(backends.get(pSlot), lLabel, lFold);
 					}
-					//System.out.println(lLine);
-				}
-				lErrorReader.close();
-				lInputReader.close();
-				try {
-					if (process.waitFor() == 0) {
-						lIndexLabelsBestResults[i].setPrecision(lPrecision);
-						lIndexLabelsBestResults[i].setRecall(lRecall);
-					}
-				}
-				catch (InterruptedException e) {
-					e.printStackTrace();
-				}
+				});
 			}
-			catch (IOException e) {
-				e.printStackTrace();
+		}
+		return lResult;
+	}
+	
+	public ComputeSVMSampleThread reduce() {
+		if (foldConfusions != null) {
+			for (int i=0; i<indexLabels.length; i++) {
+				if (foldsDone[i] < foldSplit.getFolds()) continue;
+				SVMResult lResult = SVMResult.fromConfusion(indexLabels[i], indexLabelParameters[i], foldConfusions[i][0], foldConfusions[i][1], foldConfusions[i][2]);
+				indexLabelsBestResults[i].setPrecision(lResult.getPrecision());
+				indexLabelsBestResults[i].setRecall(lResult.getRecall());
 			}
 		}
+		finish();
+		return this;
+	}
+	
+	private void prepare() {
+		startTime = System.currentTimeMillis();
+		indexLabelsBestResults = new SVMResult[indexLabels.length];
+		for (int i=0; i<indexLabels.length; i++) {
+			indexLabelsBestResults[i] = new SVMResult(indexLabels[i], indexLabelParameters[i], -1, -1);
+		}
+		sample.setIndexLabelsBestResults(indexLabelsBestResults);
+		prepareStart = System.nanoTime();
+		trainingSet = TrainingSet.forSample(matrix, index, sample);
+		backends.getMetrics().since(EvaluationMetrics.PREPARE, prepareStart);
+	}
+	
+	private void evaluate(SVMBackend pBackend, int pLabel) {
+		synchronized (running) {
+			if (killed) return;
+			running.add(pBackend);
+		}
+		try {
+			SVMResult lResult = pBackend.evaluate(trainingSet, indexLabels[pLabel], indexLabelParameters[pLabel], foldSplit);
+			indexLabelsBestResults[pLabel].setPrecision(lResult.getPrecision());
+			indexLabelsBestResults[pLabel].setRecall(lResult.getRecall());
+		}
+		catch (IOException e) {
+			if (!killed) e.printStackTrace();
+		}
+		finally {
+			synchronized (running) {
+				running.remove(pBackend);
+			}
+		}
+	}
+	
+	private void evaluateFold(SVMBackend pBackend, int pLabel, int pFold) {
+		synchronized (running) {
+			if (killed) return;
+			running.add(pBackend);
+		}
+		try {
+			int[] lConfusion = pBackend.crossValidateFold(trainingSet, indexLabels[pLabel], indexLabelParameters[pLabel], foldSplit, pFold);
+			synchronized (this) {
+				for (int i=0; i<3; i++) foldConfusions[pLabel][i] += lConfusion[i];
+				foldsDone[pLabel]++;
+			}
+		}
+		catch (IOException e) {
+			if (!killed) e.printStackTrace();
+		}
+		finally {
+			synchronized (running) {
+				running.remove(pBackend);
+			}
+		}
+	}
+	
+	private void finish() {
+		backends.getMetrics().since(EvaluationMetrics.CREATURE, prepareStart);
+		if (killed) {
+			sample.setIndexLabelsBestResults(null);
+		}
 	}
 	
 }
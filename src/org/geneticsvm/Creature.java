@@ -1,30 +1,70 @@
 package org.geneticsvm;
 
+import java.util.*;
+
 public class Creature implements Comparable<Creature> {
 
-	private String features;
+	private long[] bits;
+	private int length;
+	private int hashCode;
 	private SVMResult[] indexLabelsBestResults;
 	private boolean keep;
+	private boolean evaluated;
+	private long[] parentBits;
+	private SVMResult[] parentResults;
 	
 	public Creature(String pFeatures) {
-		features = pFeatures;
+		length = pFeatures.length();
+		bits = new long[words(length)];
+		for (int i=0; i<length; i++) {
+			if (pFeatures.charAt(i) == '1') bits[i >>> 6] |= 1L << i;
+		}
+		hashCode = Arrays.hashCode(bits);
+	}
+	
+	public Creature(long[] pBits, int pLength) {
+		bits = pBits;
+		length = pLength;
+		hashCode = Arrays.hashCode(bits);
 	}
 	
-	public Creature(double pCompleteness, int pFeatureCount) {
-		StringBuffer lBuffer = null;
+	public Creature(double pCompleteness, int pFeatureCount, Random pRandom) {
+		length = pFeatureCount;
 		do {
-			lBuffer = new StringBuffer();
-			for (int i=0; i<pFeatureCount; i++) {
-				if (Math.random()<pCompleteness) {
-					lBuffer.append('1');
-				}
-				else {
-					lBuffer.append('0');
-				}
-			}
+			bits = randomMask(pFeatureCount, pCompleteness, pRandom);
 		}
-		while (lBuffer.indexOf("1") == -1);
-		features = lBuffer.toString();
+		while (isEmpty(bits));
+		hashCode = Arrays.hashCode(bits);
+	}
+	
+	static int words(int pLength) {
+		return (pLength+63) >>> 6;
+	}
+	
+	static boolean isEmpty(long[] pBits) {
+		for (long lWord:pBits) {
+			if (lWord != 0) return false;
+		}
+		return true;
+	}
+	
+	static long[] randomMask(int pLength, double pProbability, Random pRandom) {
+		long[] lResult = new long[words(pLength)];
+		if (pProbability <= 0) return lResult;
+		if (pProbability >= 1) {
+			Arrays.fill(lResult, -1L);
+			if ((pLength & 63) != 0) lResult[lResult.length-1] = (1L << pLength)-1;
+			return lResult;
+		}
+		// Jump directly from one set bit to the next (geometric gaps) instead of drawing per bit
+		double lLogQ = Math.log(1-pProbability);
+		long lPosition = -1;
+		while (true) {
+			lPosition += 1+(long)Math.floor(Math.log(1-pRandom.nextDouble())/lLogQ);
+			if (lPosition >= pLength) break;
+			lResult[(int)(lPosition >>> 6)] |= 1L << lPosition;
+		}
+		return lResult;
 	}
 
 	public boolean isKeep() {
@@ -35,6 +75,15 @@ public class Creature implements Comparable<Creature> {
 		this.keep = keep;
 	}
 
+	/** Whether the results cover the whole parameter grid, so the creature needs no further evaluation. */
+	public boolean isEvaluated() {
+		return evaluated;
+	}
+	
+	public void setEvaluated(boolean pEvaluated) {
+		evaluated = pEvaluated;
+	}
+	
 	public void setIndexLabelsBestResults(SVMResult[] pIndexLabelsBestResults) {
 		indexLabelsBestResults = pIndexLabelsBestResults;
 	}
@@ -58,51 +107,119 @@ public class Creature implements Comparable<Creature> {
 	}
 
 	public boolean equals(Object o) {
-		return features.equals(o.toString());
+		if (o instanceof Creature) {
+			Creature lCreature = (Creature)o;
+			return (lCreature.hashCode == hashCode) && (lCreature.length == length) && Arrays.equals(lCreature.bits, bits);
+		}
+		return getFeatures().equals(o.toString());
+	}
+	
+	public boolean isFeature(int pFeature) {
+		return (bits[pFeature >>> 6] & (1L << pFeature)) != 0;
+	}
+	
+	public int[] getFeatureIndices() {
+		return indices(bits);
+	}
+	
+	static int[] indices(long[] pBits) {
+		int lCount = 0;
+		for (long lWord:pBits) {
+			lCount += Long.bitCount(lWord);
+		}
+		int[] lResult = new int[lCount];
+		int k = 0;
+		for (int i=0; i<pBits.length; i++) {
+			long lWord = pBits[i];
+			while (lWord != 0) {
+				lResult[k++] = (i << 6)+Long.numberOfTrailingZeros(lWord);
+				lWord &= lWord-1;
+			}
+		}
+		return lResult;
+	}
+	
+	public long[] getBits() {
+		return bits;
+	}
+	
+	/** Feature mask of the creature this one was mutated from, null for random and parsed creatures. */
+	public long[] getParentBits() {
+		return parentBits;
+	}
+	
+	public SVMResult[] getParentResults() {
+		return parentResults;
+	}
+	
+	public int getLength() {
+		return length;
 	}
 	
 	public String getFeatures() {
-		return features;
+		char[] lResult = new char[length];
+		for (int i=0; i<length; i++) {
+			lResult[i] = isFeature(i) ? '1' : '0';
+		}
+		return new String(lResult);
 	}
 	
 	public String toString() {
-		return features;
+		return getFeatures();
 	}
 	
 	public int hashCode() {
-		return features.hashCode();
+		return hashCode;
 	}
 	
-	public Creature createOffspring(double pPermutationRate) {
-		StringBuffer lBuffer = null;
+	public Creature createOffspring(double pPermutationRate, Random pRandom) {
+		long[] lBits = new long[bits.length];
+		do {
+			long[] lMask = randomMask(length, pPermutationRate, pRandom);
+			for (int i=0; i<lBits.length; i++) {
+				lBits[i] = bits[i] ^ lMask[i];
+			}
+		} while (isEmpty(lBits));
+		Creature lResult = new Creature(lBits, length);
+		lResult.parentBits = bits;
+		lResult.parentResults = indexLabelsBestResults;
+		return lResult;
+	}
+
+	/** Offspring recombined from this creature and pMate, then mutated like createOffspring(double, Random). */
+	public Creature createOffspring(Creature pMate, Crossover pCrossover, double pPermutationRate, Random pRandom) {
+		long[] lBits = new long[bits.length];
 		do {
-			lBuffer = new StringBuffer();
-			for (int i=0; i<features.length(); i++) {
-				if (pPermutationRate > Math.random()) {
-					if (features.charAt(i)=='0') {
-						lBuffer.append('1');
-					}
-					else {
-						lBuffer.append('0');
-					}
-				}
-				else {
-					lBuffer.append(features.charAt(i));
-				}
+			long[] lChild = pCrossover.cross(bits, pMate.bits, length, pRandom);
+			long[] lMask = randomMask(length, pPermutationRate, pRandom);
+			for (int i=0; i<lBits.length; i++) {
+				lBits[i] = lChild[i] ^ lMask[i];
 			}
-		} while (lBuffer.indexOf("1") == -1);
-		return new Creature(lBuffer.toString());
+		} while (isEmpty(lBits));
+		Creature lResult = new Creature(lBits, length);
+		// Warm starts and kernel patches work best from the parent with the closer mask
+		Creature lParent = distance(lBits, bits) <= distance(lBits, pMate.bits) ? this : pMate;
+		lResult.parentBits = lParent.bits;
+		lResult.parentResults = lParent.indexLabelsBestResults;
+		return lResult;
+	}
+
+	private static int distance(long[] pFirst, long[] pSecond) {
+		int lResult = 0;
+		for (int i=0; i<pFirst.length; i++) {
+			lResult += Long.bitCount(pFirst[i] ^ pSecond[i]);
+		}
+		return lResult;
 	}
 
 	public int compareTo(Creature arg0) {
-		Double l = new Double(getFMeasure());
-		return l.compareTo(arg0.getFMeasure())*(-1);
+		return Double.compare(arg0.getFMeasure(), getFMeasure());
 	}
 	
 	public int getFeaturesCount() {
 		int lResult = 0;
-		for (int i=0; i<features.length(); i++) {
-			if (features.charAt(i) == '1') lResult++;
+		for (long lWord:bits) {
+			lResult += Long.bitCount(lWord);
 		}
 		return lResult;
 	}
@@ -0,0 +1,31 @@
+package org.geneticsvm;
+
+import java.util.*;
+
+/** Recombination of the feature masks of two parents. */
+public interface Crossover {
+
+	public static final String NONE = "none";
+	public static final String UNIFORM = "uniform";
+	public static final String K_POINT = "kpoint";
+	
+	/** Mask of pLength features taking every feature from one of the parents' masks. */
+	public long[] cross(long[] pFirst, long[] pSecond, int pLength, Random pRandom);
+	
+	/**
+	 * @param pSpec none, uniform or kpoint[:&lt;points&gt;]
+	 * @return null for none
+	 */
+	public static Crossover create(String pSpec) {
+		if (pSpec.equals(NONE)) return null;
+		if (pSpec.equals(UNIFORM)) return new UniformCrossover();
+		if (pSpec.equals(K_POINT)) return new KPointCrossover(2);
+		if (pSpec.startsWith(K_POINT+":")) {
+			int lPoints = Integer.parseInt(pSpec.substring(K_POINT.length()+1));
+			if (lPoints < 1) throw new IllegalArgumentException("Number of crossover points < 1 is invalid");
+			return new KPointCrossover(lPoints);
+		}
+		throw new IllegalArgumentException("Unknown crossover: "+pSpec);
+	}
+	
+}
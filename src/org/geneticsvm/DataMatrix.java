@@ -0,0 +1,27 @@
+package org.geneticsvm;
+
+/** Read access to the data matrix, shared by all threads, independent of how its rows are stored. */
+public interface DataMatrix {
+
+	public int getRowCount();
+
+	public int getColumnCount();
+
+	public double get(int pRow, int pColumn);
+
+	/** Copies a row into pTarget, which holds at least getColumnCount() values. */
+	public void getRow(int pRow, double[] pTarget);
+
+	/**
+	 * Non-zero values of a row within the given columns, which must be ascending: stores the position in pColumns
+	 * and the value of each and returns their number.
+	 */
+	public int project(int pRow, int[] pColumns, int[] pPositions, double[] pValues);
+
+	/** Fraction of non-zero values. */
+	public double getDensity();
+
+	/** Bytes held by the values. */
+	public long getBytes();
+
+}
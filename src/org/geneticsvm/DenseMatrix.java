@@ -0,0 +1,65 @@
+package org.geneticsvm;
+
+/** One array per row. */
+public class DenseMatrix implements DataMatrix {
+
+	private double[][] rows;
+	private int columns;
+	private double density = -1;
+
+	public DenseMatrix(double[][] pRows) {
+		rows = pRows;
+		columns = pRows.length > 0 ? pRows[0].length : 0;
+	}
+
+	public int getRowCount() {
+		return rows.length;
+	}
+
+	public int getColumnCount() {
+		return columns;
+	}
+
+	public double get(int pRow, int pColumn) {
+		return rows[pRow][pColumn];
+	}
+
+	public void getRow(int pRow, double[] pTarget) {
+		System.arraycopy(rows[pRow], 0, pTarget, 0, columns);
+	}
+
+	public int project(int pRow, int[] pColumns, int[] pPositions, double[] pValues) {
+		double[] lRow = rows[pRow];
+		int lResult = 0;
+		for (int m=0; m<pColumns.length; m++) {
+			double lValue = lRow[pColumns[m]];
+			if (lValue != 0) {
+				pPositions[lResult] = m;
+				pValues[lResult++] = lValue;
+			}
+		}
+		return lResult;
+	}
+
+	public synchronized double getDensity() {
+		if (density < 0) {
+			long lNonZeros = 0;
+			for (double[] lRow:rows) {
+				for (double lValue:lRow) {
+					if (lValue != 0) lNonZeros++;
+				}
+			}
+			density = rows.length*(long)columns > 0 ? lNonZeros/(double)(rows.length*(long)columns) : 0;
+		}
+		return density;
+	}
+
+	public long getBytes() {
+		return 8L*rows.length*columns;
+	}
+
+	public String toString() {
+		return MatrixLoader.describe(this, "dense");
+	}
+
+}
@@ -0,0 +1,61 @@
+package org.geneticsvm;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/** Islands sharing a directory, e.g. on one machine or a network file system. */
+public class DirectoryIslandTransport implements IslandTransport {
+
+	public static final String SUFFIX = ".migrants";
+
+	private File inbox;
+	private File next;
+	private int island;
+	private long sequence = 0;
+	
+	public DirectoryIslandTransport(File pDirectory, int pIsland, int pIslands) throws IOException {
+		island = pIsland;
+		inbox = new File(pDirectory, "island"+pIsland);
+		next = new File(pDirectory, "island"+((pIsland+1) % pIslands));
+		if ((!inbox.isDirectory()) && (!inbox.mkdirs())) throw new IOException("Could not create "+inbox.getAbsolutePath());
+		if ((!next.isDirectory()) && (!next.mkdirs())) throw new IOException("Could not create "+next.getAbsolutePath());
+	}
+	
+	public void emigrate(List<Creature> pMigrants) throws IOException {
+		String lName = island+"-"+System.currentTimeMillis()+"-"+(sequence++);
+		File lTmpFile = new File(next, "."+lName);
+		DataOutputStream lOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(lTmpFile)));
+		try {
+			IslandTransport.write(lOutput, pMigrants);
+		}
+		finally {
+			lOutput.close();
+		}
+		// The receiver only picks up complete files
+		Files.move(lTmpFile.toPath(), new File(next, lName+SUFFIX).toPath(), StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	public List<Creature> immigrate() throws IOException {
+		List<Creature> lResult = new ArrayList<Creature>();
+		File[] lFiles = inbox.listFiles();
+		if (lFiles == null) return lResult;
+		Arrays.sort(lFiles);
+		for (File lFile:lFiles) {
+			if (!lFile.getName().endsWith(SUFFIX)) continue;
+			DataInputStream lInput = new DataInputStream(new BufferedInputStream(new FileInputStream(lFile)));
+			try {
+				lResult.addAll(IslandTransport.read(lInput));
+			}
+			finally {
+				lInput.close();
+			}
+			lFile.delete();
+		}
+		return lResult;
+	}
+	
+	public void close() {
+	}
+	
+}
@@ -10,40 +10,32 @@ public class ErrorEvaluation {
     protected File matrixFile;
     protected Map<Integer, SVMParameters> indexLabelSVMParameterMap;
     protected String features;
+    protected int[] columns;
     protected int[] index;
-    protected double[][] matrix;
+    protected DataMatrix matrix;
     protected TreeSet<Integer> indexSet;
     protected File tmpDirectory;
+    protected String storage;
 
     public ErrorEvaluation(File pIndexFile, File pMatrixFile, Map<Integer, SVMParameters> pIndexLabelSVMParameterMap, String pFeatures, File pTmpDirectory) throws IOException {
+        this(pIndexFile, pMatrixFile, pIndexLabelSVMParameterMap, pFeatures, pTmpDirectory, MatrixLoader.DOUBLE);
+    }
+
+    /** pStorage is the storage of the matrix unless it is sparse, see MatrixLoader. */
+    public ErrorEvaluation(File pIndexFile, File pMatrixFile, Map<Integer, SVMParameters> pIndexLabelSVMParameterMap, String pFeatures, File pTmpDirectory, String pStorage) throws IOException {
         indexFile = pIndexFile;
         matrixFile = pMatrixFile;
         indexLabelSVMParameterMap = pIndexLabelSVMParameterMap;
         features = pFeatures;
         tmpDirectory = pTmpDirectory;
+        storage = pStorage;
         initialize();
     }
 
     protected void initialize() throws IOException {
-        {
-            List<String[]> lFieldList = new ArrayList<>();
-            BufferedReader lReader = new BufferedReader(new InputStreamReader(new FileInputStream(matrixFile), Charset.forName("UTF-8")));
-            String lLine = null;
-            while ((lLine = lReader.readLine()) != null) {
-                lLine = lLine.trim();
-                if (lLine.length() > 0) {
-                    lFieldList.add(lLine.split("\t", -1));
-                }
-            }
-            lReader.close();
-            matrix = new double[lFieldList.size()][lFieldList.get(0).length];
-            for (int i=0; i<lFieldList.size(); i++) {
-                for (int k=0; k<lFieldList.get(i).length; k++) {
-                    matrix[i][k] = Double.parseDouble(lFieldList.get(i)[k]);
-                }
-            }
-        }
-        index = new int[matrix.length];
+        matrix = MatrixLoader.load(matrixFile, null, storage);
+        columns = new Creature(features).getFeatureIndices();
+        index = new int[matrix.getRowCount()];
         indexSet = new TreeSet<>();
         {
             BufferedReader lReader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), Charset.forName("UTF-8")));
@@ -62,158 +54,189 @@ public class ErrorEvaluation {
     }
 
     public void evaluate(File pResultFile) throws IOException {
+        evaluate(pResultFile, 1);
+    }
+
+    public void evaluate(File pResultFile, int pThreads) throws IOException {
+        final TrainingSet lTrainingSet = new TrainingSet(matrix, index, allRows(), columns);
+        final int[] lIndexLabels = new int[indexSet.size()];
+        int lPosition = 0;
+        for (int lIndexLabel:indexSet) {
+            lIndexLabels[lPosition++] = lIndexLabel;
+        }
+        EvaluationMetrics lMetrics = new EvaluationMetrics();
+        final SVMLightWorkerPool lWorkerPool = SVMLightWorkerPool.create(pThreads, 0, lMetrics);
+        SlotExecutor<String[]> lExecutor = new SlotExecutor<>(pThreads, 0, lMetrics);
         PrintWriter lResultWriter = new PrintWriter(new OutputStreamWriter(new FileOutputStream(pResultFile), Charset.forName("UTF-8")));
-        lResultWriter.println("Row-Index\tLabelIndex\tClassifyLabel\tExpected\tClassified\tSuccess");
-        //lResultWriter.println(lID + "\t" + index[lID] + "\t" + lIndexLabel + "\t" + (lExpectedResult ? "1" : "0") + "\t" + (lClassifiedResult ? "1" : "0") + "\t" + (lExpectedResult == lClassifiedResult ? "1" : "0"));
-        for (int lID = 0; lID < matrix.length; lID++) {
-            for (int lIndexLabel:indexSet) {
-                System.out.println("Processing "+lID+" - "+lIndexLabel);
-                boolean lExpectedResult = index[lID] == lIndexLabel;
-                boolean lClassifiedResult = false;
-                boolean lPipelineExecuted = false;
-                // OK- predict to classify lID with label lLabel based on leave-one-out
-                File lTrainInputFile = new File(tmpDirectory.getAbsolutePath()+File.separator+"evaluate_train.svm");
-                File lModelFile = new File(tmpDirectory.getAbsolutePath()+File.separator+"evaluate.model");
-                File lPredictInputFile = new File(tmpDirectory.getAbsolutePath()+File.separator+"evaluate_predict.svm");
-                File lResultFile = new File(tmpDirectory.getAbsolutePath()+File.separator+"evaluate.result");
-                lResultFile.delete();
-                lModelFile.delete();
-                PrintWriter lWriter = new PrintWriter(new OutputStreamWriter(new FileOutputStream(lTrainInputFile), "UTF-8"));
-                PrintWriter lPredictWriter = new PrintWriter(new OutputStreamWriter(new FileOutputStream(lPredictInputFile), Charset.forName("UTF-8")));
-                for (int k=0; k<matrix.length; k++) {
-                    // Skip Leave-one-out-line
-                    if (k != lID) {
-                        int lColID = 0;
-                        lWriter.print(index[k] == lIndexLabel ? "1" : "-1");
-                        for (int m = 0; m < matrix[k].length; m++) {
-                            if (features.charAt(m) == '1') {
-                                lColID++;
-                                lWriter.print(" " + lColID + ":" + matrix[k][m]);
-                            }
-                        }
-                        lWriter.println();
-                    }
-                    else {
-                        int lColID = 0;
-                        lPredictWriter.print("0");
-                        for (int m = 0; m < matrix[k].length; m++) {
-                            if (features.charAt(m) == '1') {
-                                lColID++;
-                                lPredictWriter.print(" " + lColID + ":" + matrix[k][m]);
-                            }
+        try {
+            lResultWriter.println("Row-Index\tLabelIndex\tClassifyLabel\tExpected\tClassified\tSuccess");
+            int lJobs = matrix.getRowCount()*lIndexLabels.length;
+            for (int lJob = 0; lJob < lJobs; lJob++) {
+                final int lID = lJob/lIndexLabels.length;
+                final int lIndexLabel = lIndexLabels[lJob%lIndexLabels.length];
+                final String lJobID = Integer.toString(lJob);
+                lExecutor.submit(new SlotExecutor.Task<String[]>() {
+                    public String[] run(int pSlot) throws Exception {
+                        File lDirectory = new File(tmpDirectory.getAbsolutePath()+File.separator+"evaluate_"+pSlot);
+                        lDirectory.mkdirs();
+                        Boolean lClassifiedResult;
+                        try {
+                            lClassifiedResult = classify(lTrainingSet, lID, lIndexLabel, lDirectory, lWorkerPool != null ? lWorkerPool.getWorker(pSlot) : null);
                         }
-                        lPredictWriter.println();
-                    }
-                }
-                lWriter.close();
-                lPredictWriter.close();
-                // Start SVM
-                String lSVMLearn = File.separatorChar=='/' ? "svm_learn" : "svm_learn.exe";
-                String lSVMClassify = File.separatorChar=='/' ? "svm_classify" : "svm_classify.exe";
-                BufferedReader lErrorReader = null;
-                BufferedReader lInputReader = null;
-                InputStream lInputStream = null;
-                InputStream lErrorStream = null;
-                OutputStream lOutputStream = null;
-                try {
-                    List<String> lParamList = new Vector<String>();
-                    lParamList.add(lSVMLearn);
-                    for (String lString:indexLabelSVMParameterMap.get(lIndexLabel).getParameterArray()) {
-                        lParamList.add(lString);
-                    }
-                    lParamList.add("-x");
-                    lParamList.add("0");
-                    lParamList.add(lTrainInputFile.getAbsolutePath());
-                    lParamList.add(lModelFile.getAbsolutePath());
-                    String[] lParams = new String[lParamList.size()];
-                    StringBuffer lDebug = new StringBuffer();
-                    for (int k=0; k<lParams.length; k++) {
-                        lDebug.append(lParamList.get(k)+" ");
-                        lParams[k] = lParamList.get(k);
-                    }
-                    //System.out.println(lDebug.toString());
-                    Process lProcess = Runtime.getRuntime().exec(lParams);
-                    lInputStream = lProcess.getInputStream();
-                    lErrorStream = lProcess.getErrorStream();
-                    lOutputStream = lProcess.getOutputStream();
-                    lErrorReader = new BufferedReader(new InputStreamReader(lErrorStream));
-                    lInputReader = new BufferedReader(new InputStreamReader(lInputStream));
-                    String lLine = null;
-                    while ((lLine = lErrorReader.readLine()) != null) {
-                        System.err.println(lLine);
-                    }
-                    double lPrecision = -1;
-                    double lRecall = -1;
-                    while ((lLine = lInputReader.readLine()) != null) {
-                    }
-                    lProcess.waitFor();
-                    if (lModelFile.exists()) {
-                        Process lPredictProcess = Runtime.getRuntime().exec(new String[]{lSVMClassify, lPredictInputFile.getAbsolutePath(), lModelFile.getAbsolutePath(), lResultFile.getAbsolutePath()});
-                        BufferedReader lPredictInputReader = new BufferedReader(new InputStreamReader(lPredictProcess.getInputStream()));
-                        while (lPredictInputReader.readLine() != null);
-                        BufferedReader lPredictErrorReader = new BufferedReader(new InputStreamReader(lPredictProcess.getErrorStream()));
-                        while (lPredictErrorReader.readLine() != null);
-                        lPredictProcess.waitFor();
-                        lPredictErrorReader.close();
-                        lPredictInputReader.close();
-                        if (lResultFile.exists()) {
-                            BufferedReader lResultReader = new BufferedReader(new InputStreamReader(new FileInputStream(lResultFile)));
-                            lLine = lResultReader.readLine();
-                            if (Double.parseDouble(lLine) > 0) {
-                                lClassifiedResult = true;
-                                lPipelineExecuted = true;
-                            }
-                            else {
-                                lClassifiedResult = false;
-                                lPipelineExecuted = true;
-                            }
-                            lResultReader.close();
+                        catch (Exception e) {
+                            // Reported as a failed job, so the rows after it are still written
+                            e.printStackTrace();
+                            lClassifiedResult = null;
                         }
-                        else {
-                            System.err.println("Failed: No ResultFile");
+                        if (lClassifiedResult == null) {
+                            System.err.println("Pipeline Failed");
+                            return new String[]{lJobID, null};
                         }
+                        boolean lExpectedResult = index[lID] == lIndexLabel;
+                        return new String[]{lJobID, lID + "\t" + index[lID] + "\t" + lIndexLabel + "\t" + (lExpectedResult ? "1" : "0") + "\t" + (lClassifiedResult ? "1" : "0") + "\t" + (lExpectedResult == lClassifiedResult ? "1" : "0")};
                     }
-                    else {
-                        System.err.println("Failed: No ModelFile");
+                    public void kill() {
                     }
+                });
+            }
+            // Results arrive in completion order but are written in job order
+            String[] lLines = new String[lJobs];
+            boolean[] lDone = new boolean[lJobs];
+            int lNextToWrite = 0;
+            long lStart = System.currentTimeMillis();
+            long lLastReport = lStart;
+            for (int lFinished = 1; lFinished <= lJobs; lFinished++) {
+                String[] lResult = lExecutor.take();
+                if (lResult == null) continue;
+                int lJob = Integer.parseInt(lResult[0]);
+                lLines[lJob] = lResult[1];
+                lDone[lJob] = true;
+                while ((lNextToWrite < lJobs) && lDone[lNextToWrite]) {
+                    if (lLines[lNextToWrite] != null) lResultWriter.println(lLines[lNextToWrite]);
+                    lLines[lNextToWrite] = null;
+                    lNextToWrite++;
                 }
-                catch (Exception e) {
-                    if ((!e.getMessage().equals("Stream closed")) && (!e.getMessage().equals("Bad file descriptor"))) {
-                        e.printStackTrace();
-                    }
+                long lNow = System.currentTimeMillis();
+                if ((lNow - lLastReport >= 1000) || (lFinished == lJobs)) {
+                    lResultWriter.flush();
+                    double lSeconds = Math.max(lNow - lStart, 1) / 1000.0;
+                    System.out.println("Processed " + lFinished + "/" + lJobs + " (" + String.format(Locale.US, "%.2f", lFinished / lSeconds) + " jobs/s, " + pThreads + " threads)");
+                    lLastReport = lNow;
                 }
-                finally {
-                    if (lInputStream != null) {
-                        try {
-                            lInputStream.close();
-                        }
-                        catch (IOException e) {
-                        }
-                    }
-                    if (lErrorStream != null) {
-                        try {
-                            lErrorStream.close();
-                        }
-                        catch (IOException e) {
-                        }
+            }
+        }
+        catch (InterruptedException e) {
+            throw new IOException("Interrupted while evaluating");
+        }
+        finally {
+            lExecutor.shutdown();
+            lResultWriter.close();
+            if (lWorkerPool != null) {
+                lWorkerPool.printStatistics(System.out);
+                lWorkerPool.shutdown();
+            }
+        }
+    }
+
+    protected int[] allRows() {
+        int[] lResult = new int[matrix.getRowCount()];
+        for (int i = 0; i < lResult.length; i++) {
+            lResult[i] = i;
+        }
+        return lResult;
+    }
+
+    protected Boolean classify(TrainingSet pTrainingSet, int pID, int pIndexLabel, File pDirectory, SVMLightWorker pWorker) {
+        // Predict to classify pID with label pIndexLabel based on leave-one-out
+        File lTrainInputFile = new File(pDirectory.getAbsolutePath()+File.separator+"evaluate_train.svm");
+        File lModelFile = new File(pDirectory.getAbsolutePath()+File.separator+"evaluate.model");
+        File lPredictInputFile = new File(pDirectory.getAbsolutePath()+File.separator+"evaluate_predict.svm");
+        File lResultFile = new File(pDirectory.getAbsolutePath()+File.separator+"evaluate.result");
+        lResultFile.delete();
+        lModelFile.delete();
+        try {
+            pTrainingSet.writeSVMLight(lTrainInputFile, pIndexLabel, pID);
+            pTrainingSet.writeSVMLightQuery(lPredictInputFile, pID);
+            // Start SVM
+            List<String> lParamList = new Vector<String>();
+            lParamList.add(SVMLightBackend.getSVMLearn());
+            for (String lString:indexLabelSVMParameterMap.get(pIndexLabel).getParameterArray()) {
+                lParamList.add(lString);
+            }
+            lParamList.add("-x");
+            lParamList.add("0");
+            lParamList.add(lTrainInputFile.getAbsolutePath());
+            lParamList.add(lModelFile.getAbsolutePath());
+            execute(lParamList, true, pWorker);
+            if (lModelFile.exists()) {
+                execute(Arrays.asList(SVMLightBackend.getSVMClassify(), lPredictInputFile.getAbsolutePath(), lModelFile.getAbsolutePath(), lResultFile.getAbsolutePath()), false, pWorker);
+                if (lResultFile.exists()) {
+                    BufferedReader lResultReader = new BufferedReader(new InputStreamReader(new FileInputStream(lResultFile)));
+                    try {
+                        return Double.parseDouble(lResultReader.readLine()) > 0;
                     }
-                    if (lOutputStream != null) {
-                        try {
-                            lOutputStream.close();
-                        }
-                        catch (IOException e) {
-                        }
+                    finally {
+                        lResultReader.close();
                     }
                 }
-                if (lPipelineExecuted) {
-                    lResultWriter.println(lID + "\t" + index[lID] + "\t" + lIndexLabel + "\t" + (lExpectedResult ? "1" : "0") + "\t" + (lClassifiedResult ? "1" : "0") + "\t" + (lExpectedResult == lClassifiedResult ? "1" : "0"));
-                }
                 else {
-                    System.err.println("Pipeline Failed");
+                    System.err.println("Failed: No ResultFile");
                 }
             }
+            else {
+                System.err.println("Failed: No ModelFile");
+            }
+        }
+        catch (Exception e) {
+            if ((e.getMessage() == null) || ((!e.getMessage().equals("Stream closed")) && (!e.getMessage().equals("Bad file descriptor")))) {
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
+
+    protected int execute(List<String> pCommand, boolean pPrintErrors, SVMLightWorker pWorker) throws IOException, InterruptedException {
+        if (pWorker != null) {
+            List<String> lOutput = new ArrayList<>();
+            int lResult = pWorker.execute(pCommand, lOutput);
+            if (pPrintErrors && (lResult != 0)) {
+                for (String lLine:lOutput) {
+                    System.err.println(lLine);
+                }
+            }
+            return lResult;
+        }
+        Process lProcess = Runtime.getRuntime().exec(pCommand.toArray(new String[pCommand.size()]));
+        InputStream lInputStream = lProcess.getInputStream();
+        InputStream lErrorStream = lProcess.getErrorStream();
+        OutputStream lOutputStream = lProcess.getOutputStream();
+        try {
+            BufferedReader lErrorReader = new BufferedReader(new InputStreamReader(lErrorStream));
+            BufferedReader lInputReader = new BufferedReader(new InputStreamReader(lInputStream));
+            String lLine = null;
+            while ((lLine = lErrorReader.readLine()) != null) {
+                if (pPrintErrors) System.err.println(lLine);
+            }
+            while (lInputReader.readLine() != null);
+            return lProcess.waitFor();
+        }
+        finally {
+            try {
+                lInputStream.close();
+            }
+            catch (IOException e) {
+            }
+            try {
+                lErrorStream.close();
+            }
+            catch (IOException e) {
+            }
+            try {
+                lOutputStream.close();
+            }
+            catch (IOException e) {
+            }
         }
-        lResultWriter.close();
     }
 
     public static void main(String[] args) throws Exception {
@@ -221,8 +244,9 @@ public class ErrorEvaluation {
         lMap.put(0, new SVMParameters(2, 10000, 0, 0.01));
         lMap.put(1, new SVMParameters(2, 100, 0, 0.1));
         lMap.put(2, new SVMParameters(2, 1000, 0, 0.01));
-        ErrorEvaluation lErrorEvaluation = new ErrorEvaluation(new File("testdata/object.index"), new File("testdata/object.matrix"), lMap, "0100000111010100010010111110100111000010001010100100010010101", new File("tmp"));
-        lErrorEvaluation.evaluate(new File("testdata/evaluation_results.txt"));
+        ErrorEvaluation lErrorEvaluation = new ErrorEvaluation(new File("testdata/object.index"), new File("testdata/object.matrix"), lMap, "0100000111010100010010111110100111000010001010100100010010101", new File("tmp"), args.length > 1 ? args[1] : MatrixLoader.DOUBLE);
+        int lThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        lErrorEvaluation.evaluate(new File("testdata/evaluation_results.txt"), lThreads);
     }
 
 }
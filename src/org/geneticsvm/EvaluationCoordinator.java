@@ -0,0 +1,418 @@
+package org.geneticsvm;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Hands out (feature mask, parameter list, label) jobs of a study to EvaluationWorker processes and collects
+ * the best SVMResult of each job. Jobs of workers that stop sending heartbeats are dispatched again, jobs running
+ * longer than the slow threshold get a speculative copy on another worker, and the first result wins and cancels
+ * the other copies. A job is given up after MAX_ATTEMPTS failures, MAX_ATTEMPTS slow copies or MAX_ATTEMPTS times
+ * the slow threshold.
+ */
+public class EvaluationCoordinator {
+
+	public static final int MAX_ATTEMPTS = 3;
+	public static final long MIN_SLOW_THRESHOLD = 10000;
+	public static final int SLOW_FACTOR = 4;
+
+	private ServerSocket serverSocket;
+	private String backend;
+	private FoldSplit foldSplit;
+	private DataMatrix matrix;
+	private int[] index;
+	private long timeout;
+	private List<RemoteWorker> workers = new ArrayList<RemoteWorker>();
+	private Map<Long, Job> jobs = new HashMap<Long, Job>();
+	private LinkedList<Job> pending = new LinkedList<Job>();
+	private long nextJob = 0;
+	private long completedJobs = 0;
+	private long completedTime = 0;
+	private int deadRedispatches = 0;
+	private int slowRedispatches = 0;
+	private volatile boolean closed = false;
+
+	private static class Job {
+		long id;
+		int creature;
+		int label;
+		String features;
+		List<SVMParameters> parameters;
+		Set<RemoteWorker> assignments = new HashSet<RemoteWorker>();
+		long started;
+		long sent;
+		int copies;
+		int failures;
+		boolean done;
+		SVMResult result;
+	}
+
+	private class RemoteWorker extends Thread {
+		Socket socket;
+		DataInputStream input;
+		DataOutputStream output;
+		String workerName = "?";
+		int slots;
+		Set<Long> running = new HashSet<Long>();
+		long lastHeartbeat = System.currentTimeMillis();
+		long connected = System.currentTimeMillis();
+		int jobs;
+		int turnJobs;
+		int lost;
+		boolean alive = true;
+		// Messages written by the sender thread, so a full socket buffer never blocks the coordinator monitor
+		BlockingQueue<byte[]> outbox = new LinkedBlockingQueue<byte[]>();
+
+		RemoteWorker(Socket pSocket) throws IOException {
+			super("Evaluation Worker "+pSocket.getRemoteSocketAddress());
+			setDaemon(true);
+			socket = pSocket;
+			socket.setTcpNoDelay(true);
+			input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		}
+
+		public void run() {
+			try {
+				if (input.readByte() != EvaluationProtocol.HELLO) throw new IOException("Expected hello from worker");
+				workerName = input.readUTF();
+				slots = input.readInt();
+				EvaluationProtocol.writeSetup(output, backend, timeout, foldSplit != null ? foldSplit.getFolds() : 0, foldSplit != null ? foldSplit.getSeed() : 0, matrix, index);
+				startSender();
+				synchronized (EvaluationCoordinator.this) {
+					lastHeartbeat = System.currentTimeMillis();
+					workers.add(this);
+					EvaluationCoordinator.this.notifyAll();
+				}
+				System.out.println("  Worker "+workerName+" connected with "+slots+" slots");
+				while (true) {
+					byte lType = input.readByte();
+					if (lType == EvaluationProtocol.HEARTBEAT) {
+						synchronized (EvaluationCoordinator.this) {
+							lastHeartbeat = System.currentTimeMillis();
+						}
+					}
+					else if (lType == EvaluationProtocol.RESULT) {
+						long lJob = input.readLong();
+						String lParameters = input.readUTF();
+						double lPrecision = input.readDouble();
+						double lRecall = input.readDouble();
+						finished(this, lJob, lParameters, lPrecision, lRecall);
+					}
+					else if (lType == EvaluationProtocol.FAILED) {
+						long lJob = input.readLong();
+						String lMessage = input.readUTF();
+						System.err.println("  Warning: Job "+lJob+" failed on worker "+workerName+": "+lMessage);
+						failed(this, lJob);
+					}
+					else {
+						throw new IOException("Unexpected message "+lType);
+					}
+				}
+			}
+			catch (IOException e) {
+				if (!closed) dead(this, "connection lost");
+			}
+		}
+
+		private void startSender() {
+			Thread lThread = new Thread(getName()+" Sender") {
+				public void run() {
+					try {
+						while (true) {
+							byte[] lMessage = outbox.take();
+							// An empty message ends the sender
+							if (lMessage.length == 0) break;
+							output.write(lMessage);
+							if (outbox.isEmpty()) output.flush();
+						}
+					}
+					catch (IOException e) {
+						if (!closed) dead(RemoteWorker.this, "sending failed");
+					}
+					catch (InterruptedException e) {
+					}
+				}
+			};
+			lThread.setDaemon(true);
+			lThread.start();
+		}
+	}
+
+	public EvaluationCoordinator(int pPort, String pBackend, FoldSplit pFoldSplit, DataMatrix pMatrix, int[] pIndex, long pTimeout) throws IOException {
+		backend = pBackend;
+		foldSplit = pFoldSplit;
+		matrix = pMatrix;
+		index = pIndex;
+		timeout = pTimeout;
+		serverSocket = new ServerSocket(pPort);
+		Thread lAcceptThread = new Thread("Evaluation Coordinator") {
+			public void run() {
+				while (!closed) {
+					try {
+						new RemoteWorker(serverSocket.accept()).start();
+					}
+					catch (IOException e) {
+						if (!closed) e.printStackTrace();
+					}
+				}
+			}
+		};
+		lAcceptThread.setDaemon(true);
+		lAcceptThread.start();
+		System.out.println("Coordinator waiting for EvaluationWorkers on port "+serverSocket.getLocalPort());
+	}
+
+	/**
+	 * Evaluates every label of every creature on the selected parameters (null = all) and returns the best result
+	 * per creature and label, or null for creatures with a job that failed MAX_ATTEMPTS times.
+	 */
+	public SVMResult[][] evaluate(List<Creature> pCreatures, List<SVMParameters> pParameters, boolean[] pSelection, int[] pIndexLabels) throws InterruptedException {
+		// The selected parameters keep their order, so the workers break ties the same way as a local run
+		List<SVMParameters> lParameters = new ArrayList<SVMParameters>();
+		for (int i=0; i<pParameters.size(); i++) {
+			if ((pSelection == null) || pSelection[i]) lParameters.add(pParameters.get(i));
+		}
+		List<Job> lJobs = new ArrayList<Job>();
+		synchronized (this) {
+			jobs.clear();
+			pending.clear();
+			for (RemoteWorker lWorker:workers) {
+				lWorker.turnJobs = 0;
+			}
+			for (int i=0; i<pCreatures.size(); i++) {
+				String lFeatures = pCreatures.get(i).getFeatures();
+				for (int k=0; k<pIndexLabels.length; k++) {
+					Job lJob = new Job();
+					lJob.id = nextJob++;
+					lJob.creature = i;
+					lJob.label = pIndexLabels[k];
+					lJob.features = lFeatures;
+					lJob.parameters = lParameters;
+					jobs.put(lJob.id, lJob);
+					pending.add(lJob);
+					lJobs.add(lJob);
+				}
+			}
+			long lStart = System.currentTimeMillis();
+			boolean lWaiting = false;
+			int lDone = 0;
+			int lCreaturesDone = 0;
+			while (lDone < lJobs.size()) {
+				checkHeartbeats();
+				if (workers.isEmpty() && !lWaiting) {
+					System.out.println("  Waiting for workers");
+					lWaiting = true;
+				}
+				dispatch();
+				wait(EvaluationProtocol.HEARTBEAT_INTERVAL/2);
+				lDone = 0;
+				for (Job lJob:lJobs) {
+					if (lJob.done) lDone++;
+				}
+				// Progress per creature whose labels are all done
+				int lCreatures = 0;
+				for (int i=0; i<lJobs.size(); i+=pIndexLabels.length) {
+					boolean lComplete = true;
+					for (int k=0; k<pIndexLabels.length; k++) {
+						lComplete &= lJobs.get(i+k).done;
+					}
+					if (lComplete) lCreatures++;
+				}
+				if (lCreatures > lCreaturesDone) {
+					lCreaturesDone = lCreatures;
+					System.out.println("  "+lCreaturesDone+"/"+pCreatures.size()+" creatures evaluated remotely");
+				}
+			}
+			printDashboard(System.currentTimeMillis()-lStart);
+		}
+		SVMResult[][] lResult = new SVMResult[pCreatures.size()][];
+		for (int i=0; i<lJobs.size(); i++) {
+			Job lJob = lJobs.get(i);
+			if (lResult[lJob.creature] == null) lResult[lJob.creature] = new SVMResult[pIndexLabels.length];
+			lResult[lJob.creature][i % pIndexLabels.length] = lJob.result;
+		}
+		for (int i=0; i<lResult.length; i++) {
+			for (SVMResult lLabelResult:lResult[i]) {
+				if (lLabelResult == null) lResult[i] = null;
+				if (lResult[i] == null) break;
+			}
+		}
+		return lResult;
+	}
+
+	private long getSlowThreshold() {
+		if (timeout > 0) return timeout;
+		long lAverage = completedJobs > 0 ? completedTime/completedJobs : 0;
+		return Math.max(MIN_SLOW_THRESHOLD, SLOW_FACTOR*lAverage);
+	}
+
+	private void dispatch() {
+		for (RemoteWorker lWorker:new ArrayList<RemoteWorker>(workers)) {
+			while ((lWorker.running.size() < lWorker.slots) && (!pending.isEmpty()) && lWorker.alive) {
+				Job lJob = pending.removeFirst();
+				if (lJob.done) continue;
+				send(lWorker, lJob);
+			}
+		}
+		// Once nothing is pending, idle slots take a copy of jobs running much longer than the others
+		long lNow = System.currentTimeMillis();
+		long lSlow = getSlowThreshold();
+		for (Job lJob:jobs.values()) {
+			if (lJob.done || lJob.assignments.isEmpty() || (lNow-lJob.sent < lSlow)) continue;
+			// Hanging on every copy, or on all workers there are
+			if ((lJob.copies >= MAX_ATTEMPTS-1) || (lNow-lJob.started >= MAX_ATTEMPTS*lSlow)) {
+				System.err.println("  Warning: Job "+lJob.id+" running for "+((lNow-lJob.started)/1000)+"s on "+(lJob.copies+1)+" workers, giving up");
+				lJob.done = true;
+				cancel(lJob, null);
+				continue;
+			}
+			if (!pending.isEmpty()) continue;
+			for (RemoteWorker lWorker:new ArrayList<RemoteWorker>(workers)) {
+				if ((lWorker.running.size() < lWorker.slots) && lWorker.alive && (!lJob.assignments.contains(lWorker))) {
+					System.err.println("  Warning: Job "+lJob.id+" running for "+((lNow-lJob.started)/1000)+"s, dispatching a copy to worker "+lWorker.workerName);
+					lJob.copies++;
+					slowRedispatches++;
+					send(lWorker, lJob);
+					break;
+				}
+			}
+		}
+	}
+
+	private void send(RemoteWorker pWorker, Job pJob) {
+		String[] lParameters = new String[pJob.parameters.size()];
+		for (int i=0; i<lParameters.length; i++) {
+			lParameters[i] = pJob.parameters.get(i).toString();
+		}
+		ByteArrayOutputStream lMessage = new ByteArrayOutputStream();
+		try {
+			EvaluationProtocol.writeJob(new DataOutputStream(lMessage), pJob.id, pJob.features, pJob.label, lParameters);
+		}
+		catch (IOException e) {
+			// Not thrown by a byte array
+			throw new IllegalStateException(e);
+		}
+		pWorker.outbox.add(lMessage.toByteArray());
+		pWorker.running.add(pJob.id);
+		pJob.sent = System.currentTimeMillis();
+		if (pJob.assignments.isEmpty()) pJob.started = pJob.sent;
+		pJob.assignments.add(pWorker);
+	}
+
+	/** Stops the copies of a job still running on other workers than pExcept, freeing their slots. */
+	private void cancel(Job pJob, RemoteWorker pExcept) {
+		for (RemoteWorker lWorker:pJob.assignments) {
+			if ((lWorker == pExcept) || (!lWorker.running.remove(pJob.id))) continue;
+			ByteArrayOutputStream lMessage = new ByteArrayOutputStream();
+			try {
+				EvaluationProtocol.writeCancel(new DataOutputStream(lMessage), pJob.id);
+			}
+			catch (IOException e) {
+				// Not thrown by a byte array
+				throw new IllegalStateException(e);
+			}
+			lWorker.outbox.add(lMessage.toByteArray());
+		}
+		pJob.assignments.clear();
+	}
+
+	private void checkHeartbeats() {
+		long lNow = System.currentTimeMillis();
+		for (RemoteWorker lWorker:new ArrayList<RemoteWorker>(workers)) {
+			if (lNow-lWorker.lastHeartbeat > EvaluationProtocol.HEARTBEAT_TIMEOUT) {
+				dead(lWorker, "no heartbeat for "+((lNow-lWorker.lastHeartbeat)/1000)+"s");
+			}
+		}
+	}
+
+	private synchronized void dead(RemoteWorker pWorker, String pReason) {
+		if (!pWorker.alive) return;
+		pWorker.alive = false;
+		workers.remove(pWorker);
+		pWorker.outbox.add(new byte[0]);
+		try {
+			pWorker.socket.close();
+		}
+		catch (IOException e) {
+		}
+		int lRequeued = 0;
+		for (long lId:pWorker.running) {
+			Job lJob = jobs.get(lId);
+			if ((lJob == null) || lJob.done) continue;
+			lJob.assignments.remove(pWorker);
+			pWorker.lost++;
+			if (lJob.assignments.isEmpty()) {
+				pending.addFirst(lJob);
+				lRequeued++;
+			}
+		}
+		pWorker.running.clear();
+		deadRedispatches += lRequeued;
+		System.err.println("  Warning: Worker "+pWorker.workerName+" dead ("+pReason+"), dispatching "+lRequeued+" jobs again");
+		notifyAll();
+	}
+
+	private synchronized void finished(RemoteWorker pWorker, long pId, String pParameters, double pPrecision, double pRecall) {
+		pWorker.running.remove(pId);
+		Job lJob = jobs.get(pId);
+		if ((lJob != null) && (!lJob.done)) {
+			SVMParameters lParameters = null;
+			for (SVMParameters lCandidate:lJob.parameters) {
+				if (lCandidate.toString().equals(pParameters)) lParameters = lCandidate;
+			}
+			lJob.result = new SVMResult(lJob.label, lParameters, pPrecision, pRecall);
+			lJob.done = true;
+			cancel(lJob, pWorker);
+			completedJobs++;
+			completedTime += System.currentTimeMillis()-lJob.started;
+			pWorker.jobs++;
+			pWorker.turnJobs++;
+		}
+		notifyAll();
+	}
+
+	private synchronized void failed(RemoteWorker pWorker, long pId) {
+		pWorker.running.remove(pId);
+		Job lJob = jobs.get(pId);
+		if ((lJob != null) && (!lJob.done)) {
+			lJob.assignments.remove(pWorker);
+			lJob.failures++;
+			if (lJob.failures >= MAX_ATTEMPTS) {
+				lJob.done = true;
+				cancel(lJob, pWorker);
+			}
+			else if (lJob.assignments.isEmpty()) {
+				pending.addFirst(lJob);
+			}
+		}
+		notifyAll();
+	}
+
+	private void printDashboard(long pDuration) {
+		long lNow = System.currentTimeMillis();
+		for (RemoteWorker lWorker:workers) {
+			System.out.println("  Worker "+lWorker.workerName+": "+lWorker.slots+" slots, "+lWorker.turnJobs+" jobs ("+String.format(Locale.US, "%.2f", (lWorker.turnJobs*1000.0)/Math.max(1, pDuration))+" jobs/s), "+lWorker.jobs+" jobs in total, "+lWorker.lost+" lost, heartbeat "+(lNow-lWorker.lastHeartbeat)+"ms ago");
+		}
+		System.out.println("  Dispatched again: "+deadRedispatches+" jobs of dead workers, "+slowRedispatches+" slow jobs (threshold "+(getSlowThreshold()/1000)+"s)");
+	}
+
+	public synchronized String getStatistics() {
+		return "Evaluation Coordinator: "+workers.size()+" workers connected, "+completedJobs+" jobs, "+deadRedispatches+" dispatched again after worker loss, "+slowRedispatches+" slow jobs copied";
+	}
+
+	public void close() throws IOException {
+		closed = true;
+		serverSocket.close();
+		synchronized (this) {
+			for (RemoteWorker lWorker:workers) {
+				lWorker.outbox.add(new byte[0]);
+				lWorker.socket.close();
+			}
+			workers.clear();
+		}
+	}
+
+}
@@ -0,0 +1,194 @@
+package org.geneticsvm;
+
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+/**
+ * Time spent per phase of a creature evaluation, recorded in log2 histograms of microseconds: waiting for a slot,
+ * building the training set, writing training files, starting svm_learn, training, parsing its output and computing
+ * kernel matrices. Counters only grow; a turn summary is the difference of two snapshots. Every study records into
+ * an instance of its own, handed to its executor and backends, so islands in one process keep their phases apart.
+ */
+public class EvaluationMetrics implements EvaluationMetricsMBean {
+
+	public static final int QUEUE = 0;
+	public static final int PREPARE = 1;
+	public static final int WRITE = 2;
+	public static final int SPAWN = 3;
+	public static final int SOLVE = 4;
+	public static final int PARSE = 5;
+	public static final int KERNEL = 6;
+	public static final int CREATURE = 7;
+	
+	private static final String[] NAMES = {"queue", "prepare", "write", "spawn", "solve", "parse", "kernel", "creature"};
+	public static final int PHASES = NAMES.length;
+	private static final int BUCKETS = 40;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(NAMES.length*BUCKETS);
+	private final AtomicLongArray nanos = new AtomicLongArray(NAMES.length);
+	private volatile String lastTurn = "";
+	private ObjectName objectName;
+	
+	/** Counts and time of all phases at one point in time. */
+	public static class Snapshot {
+		
+		private long[] counts;
+		private long[] nanos;
+		
+		private Snapshot(long[] pCounts, long[] pNanos) {
+			counts = pCounts;
+			nanos = pNanos;
+		}
+		
+		public Snapshot minus(Snapshot pEarlier) {
+			long[] lCounts = counts.clone();
+			long[] lNanos = nanos.clone();
+			for (int i=0; i<lCounts.length; i++) lCounts[i] -= pEarlier.counts[i];
+			for (int i=0; i<lNanos.length; i++) lNanos[i] -= pEarlier.nanos[i];
+			return new Snapshot(lCounts, lNanos);
+		}
+		
+		public long getCount(int pPhase) {
+			long lResult = 0;
+			for (int b=0; b<BUCKETS; b++) lResult += counts[pPhase*BUCKETS+b];
+			return lResult;
+		}
+		
+		public double getMillis(int pPhase) {
+			return nanos[pPhase]/1e6;
+		}
+		
+		public double getMeanMillis(int pPhase) {
+			long lCount = getCount(pPhase);
+			return lCount > 0 ? getMillis(pPhase)/lCount : 0;
+		}
+		
+		/** Upper bound of the histogram bucket holding the pQuantile, accurate to a factor of 2. */
+		public double getQuantileMillis(int pPhase, double pQuantile) {
+			long lTarget = (long)Math.ceil(getCount(pPhase)*pQuantile);
+			long lSeen = 0;
+			for (int b=0; b<BUCKETS; b++) {
+				lSeen += counts[pPhase*BUCKETS+b];
+				if ((lSeen >= lTarget) && (lSeen > 0)) return (1L << b)/1000.0;
+			}
+			return 0;
+		}
+		
+		public String getPhase(int pPhase) {
+			return NAMES[pPhase]+" "+getCount(pPhase)+"x "+format(getMillis(pPhase))+"ms (mean "+format(getMeanMillis(pPhase))+"ms, p50 <"+format(getQuantileMillis(pPhase, 0.5))+"ms, p90 <"+format(getQuantileMillis(pPhase, 0.9))+"ms, p99 <"+format(getQuantileMillis(pPhase, 0.99))+"ms)";
+		}
+		
+		/** One line with total and mean milliseconds of every phase that occurred. */
+		public String toString() {
+			StringBuilder lBuilder = new StringBuilder("Phases:");
+			for (int i=0; i<NAMES.length; i++) {
+				long lCount = getCount(i);
+				if (lCount == 0) continue;
+				lBuilder.append(" "+NAMES[i]+" "+format(getMillis(i))+"ms/"+lCount+" (p90 <"+format(getQuantileMillis(i, 0.9))+"ms)");
+			}
+			return lBuilder.toString();
+		}
+		
+	}
+	
+	public static String getName(int pPhase) {
+		return NAMES[pPhase];
+	}
+	
+	public void record(int pPhase, long pNanos) {
+		long lMicros = Math.max(0, pNanos/1000);
+		int lBucket = Math.min(BUCKETS-1, 64-Long.numberOfLeadingZeros(lMicros));
+		counts.incrementAndGet(pPhase*BUCKETS+lBucket);
+		nanos.addAndGet(pPhase, pNanos);
+	}
+	
+	/** Records the time elapsed since pStartNanos (System.nanoTime()) for pPhase. */
+	public void since(int pPhase, long pStartNanos) {
+		record(pPhase, System.nanoTime()-pStartNanos);
+	}
+	
+	public Snapshot snapshot() {
+		long[] lCounts = new long[counts.length()];
+		for (int i=0; i<lCounts.length; i++) lCounts[i] = counts.get(i);
+		long[] lNanos = new long[nanos.length()];
+		for (int i=0; i<lNanos.length; i++) lNanos[i] = nanos.get(i);
+		return new Snapshot(lCounts, lNanos);
+	}
+	
+	public void setLastTurn(String pSummary) {
+		lastTurn = pSummary;
+	}
+	
+	/** Publishes the metrics as org.geneticsvm:type=EvaluationMetrics,name=pName on the platform MBean server. */
+	public synchronized void register(String pName) {
+		if (objectName != null) return;
+		try {
+			ObjectName lName = new ObjectName("org.geneticsvm:type=EvaluationMetrics,name="+ObjectName.quote(pName));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, lName);
+			objectName = lName;
+		}
+		catch (JMException e) {
+			System.err.println("Warning: Evaluation metrics not available via JMX: "+e.getMessage());
+		}
+	}
+	
+	private static String format(double pMillis) {
+		return String.format(Locale.US, pMillis < 10 ? "%.2f" : "%.0f", pMillis);
+	}
+	
+	public long getTrainings() {
+		return snapshot().getCount(SOLVE);
+	}
+	
+	public long getCreatures() {
+		return snapshot().getCount(CREATURE);
+	}
+	
+	public double getQueueMillis() {
+		return snapshot().getMillis(QUEUE);
+	}
+	
+	public double getPrepareMillis() {
+		return snapshot().getMillis(PREPARE);
+	}
+	
+	public double getWriteMillis() {
+		return snapshot().getMillis(WRITE);
+	}
+	
+	public double getSpawnMillis() {
+		return snapshot().getMillis(SPAWN);
+	}
+	
+	public double getSolveMillis() {
+		return snapshot().getMillis(SOLVE);
+	}
+	
+	public double getParseMillis() {
+		return snapshot().getMillis(PARSE);
+	}
+	
+	public double getKernelMillis() {
+		return snapshot().getMillis(KERNEL);
+	}
+	
+	public double getCreatureMillis() {
+		return snapshot().getMillis(CREATURE);
+	}
+	
+	public String getLastTurn() {
+		return lastTurn;
+	}
+	
+	public String[] getPhases() {
+		Snapshot lSnapshot = snapshot();
+		String[] lResult = new String[NAMES.length];
+		for (int i=0; i<lResult.length; i++) {
+			lResult[i] = lSnapshot.getPhase(i);
+		}
+		return lResult;
+	}
+	
+}
@@ -0,0 +1,32 @@
+package org.geneticsvm;
+
+/** JMX view of EvaluationMetrics: accumulated milliseconds per phase since start. */
+public interface EvaluationMetricsMBean {
+
+	public long getTrainings();
+	
+	public long getCreatures();
+	
+	public double getQueueMillis();
+	
+	public double getPrepareMillis();
+	
+	public double getWriteMillis();
+	
+	public double getSpawnMillis();
+	
+	public double getSolveMillis();
+	
+	public double getParseMillis();
+	
+	public double getKernelMillis();
+	
+	public double getCreatureMillis();
+	
+	/** Summary line of the last completed turn. */
+	public String getLastTurn();
+	
+	/** Summary of all phases since start, one line per phase. */
+	public String[] getPhases();
+	
+}
@@ -0,0 +1,74 @@
+package org.geneticsvm;
+
+import java.io.*;
+
+/**
+ * Messages between the EvaluationCoordinator of a study and its EvaluationWorker processes.
+ * Every message starts with its type byte, all other fields are written with DataOutputStream.
+ */
+public class EvaluationProtocol {
+
+	// Coordinator to worker
+	public static final byte SETUP = 1;
+	public static final byte JOB = 2;
+	public static final byte CANCEL = 3;
+	// Worker to coordinator
+	public static final byte HELLO = 10;
+	public static final byte RESULT = 11;
+	public static final byte FAILED = 12;
+	public static final byte HEARTBEAT = 13;
+	
+	public static final long HEARTBEAT_INTERVAL = 1000;
+	public static final long HEARTBEAT_TIMEOUT = 10000;
+	
+	/** SETUP: everything a worker keeps resident for the whole study. */
+	public static void writeSetup(DataOutputStream pOutput, String pBackend, long pTimeout, int pFolds, long pSeed, DataMatrix pMatrix, int[] pIndex) throws IOException {
+		pOutput.writeByte(SETUP);
+		pOutput.writeUTF(pBackend);
+		pOutput.writeLong(pTimeout);
+		pOutput.writeInt(pFolds);
+		pOutput.writeLong(pSeed);
+		pOutput.writeInt(pMatrix.getRowCount());
+		pOutput.writeInt(pMatrix.getColumnCount());
+		double[] lRow = new double[pMatrix.getColumnCount()];
+		for (int i=0; i<pMatrix.getRowCount(); i++) {
+			pMatrix.getRow(i, lRow);
+			for (double lValue:lRow) {
+				pOutput.writeDouble(lValue);
+			}
+		}
+		for (int lLabel:pIndex) {
+			pOutput.writeInt(lLabel);
+		}
+		pOutput.flush();
+	}
+	
+	public static void writeJob(DataOutputStream pOutput, long pJob, String pFeatures, int pIndexLabel, String[] pParameters) throws IOException {
+		pOutput.writeByte(JOB);
+		pOutput.writeLong(pJob);
+		pOutput.writeUTF(pFeatures);
+		pOutput.writeInt(pIndexLabel);
+		pOutput.writeInt(pParameters.length);
+		for (String lParameters:pParameters) {
+			pOutput.writeUTF(lParameters);
+		}
+		pOutput.flush();
+	}
+	
+	/** CANCEL: the job is done or given up, the worker stops it and reports nothing. */
+	public static void writeCancel(DataOutputStream pOutput, long pJob) throws IOException {
+		pOutput.writeByte(CANCEL);
+		pOutput.writeLong(pJob);
+		pOutput.flush();
+	}
+	
+	public static void writeResult(DataOutputStream pOutput, long pJob, SVMResult pResult) throws IOException {
+		pOutput.writeByte(RESULT);
+		pOutput.writeLong(pJob);
+		pOutput.writeUTF(pResult.getParameters() != null ? pResult.getParameters().toString() : "null");
+		pOutput.writeDouble(pResult.getPrecision());
+		pOutput.writeDouble(pResult.getRecall());
+		pOutput.flush();
+	}
+	
+}
@@ -0,0 +1,282 @@
+package org.geneticsvm;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Remote evaluation process of a GeneticSVM study started with -coordinator. It receives the data once,
+ * keeps it resident and trains (feature mask, parameter list, label) jobs on its slots.
+ */
+public class EvaluationWorker {
+
+	public static final long CONNECT_RETRY = 1000;
+	public static final int CONNECT_ATTEMPTS = 60;
+
+	private String name;
+	private int slots;
+	private File tmpDirectory;
+	private int kernelCacheSize;
+	private Socket socket;
+	private DataInputStream input;
+	private DataOutputStream output;
+	private String backend;
+	private long timeout;
+	private FoldSplit foldSplit;
+	private DataMatrix matrix;
+	private int[] index;
+	private SVMLightWorkerPool workerPool;
+	private KernelCache kernelCache;
+	private EvaluationMetrics metrics = new EvaluationMetrics();
+	private boolean fifo;
+	private ScratchSpace scratch;
+	private BlockingQueue<Integer> freeSlots;
+	private ExecutorService executor;
+	private Map<Long, Future<?>> queued = new HashMap<Long, Future<?>>();
+	private Map<Long, ComputeCreatureThread> running = new HashMap<Long, ComputeCreatureThread>();
+	private Set<Long> cancelled = new HashSet<Long>();
+	
+	public EvaluationWorker(String pName, int pSlots, File pTmpDirectory, boolean pFifo, int pKernelCacheSize) {
+		name = pName;
+		slots = pSlots;
+		tmpDirectory = pTmpDirectory;
+		fifo = pFifo;
+		kernelCacheSize = pKernelCacheSize;
+	}
+	
+	private static void printSytnax() {
+		System.out.println("Syntax: EvaluationWorker -c <Coordinator host:port> [-mt <Multithreading>] [-tmp <Temp>] [-fifo] [-n <Name>] [-kc <Kernel Cache MB>]");
+		System.out.println("  -c Address of a GeneticSVM study started with -coordinator");
+		System.out.println("  -mt Multithreading (Default: Number of CPU Cores Threads)");
+		System.out.println("  -tmp Scratch directory of svm_learn, a subdirectory per run is deleted at exit (Default: /dev/shm if available, else tmp)");
+		System.out.println("  -fifo Stream training data to svm_learn through named pipes instead of scratch files");
+		System.out.println("  -n Name of this worker on the dashboard (Default: host name)");
+		System.out.println("  -kc Size of the kernel matrix cache of the smo backend in MB (Default: 256, 0 = disabled)");
+		System.exit(0);
+	}
+	
+	public static void main(String[] args) throws Exception {
+		String lCoordinator = null;
+		int lThreads = Runtime.getRuntime().availableProcessors();
+		File lTmpDirectory = null;
+		boolean lFifo = false;
+		String lName = InetAddress.getLocalHost().getHostName();
+		int lKernelCacheSize = 256;
+		for (int i=0; i<args.length; i++) {
+			if (args[i].equals("-c")) {
+				lCoordinator = args[++i];
+			}
+			else if (args[i].equals("-mt")) {
+				lThreads = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-tmp")) {
+				lTmpDirectory = new File(args[++i]);
+			}
+			else if (args[i].equals("-fifo")) {
+				lFifo = true;
+			}
+			else if (args[i].equals("-n")) {
+				lName = args[++i];
+			}
+			else if (args[i].equals("-kc")) {
+				lKernelCacheSize = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("--help") || args[i].equals("-h")) {
+				printSytnax();
+			}
+			else {
+				System.err.println("Unknown Parameter "+args[i]);
+				System.err.println("Type 'EvaluationWorker --help' for help");
+			}
+		}
+		if (lCoordinator == null) printSytnax();
+		if (lThreads < 1) {
+			System.err.println("Number of threads < 1 is invalid");
+			System.exit(-1);
+		}
+		new EvaluationWorker(lName, lThreads, lTmpDirectory, lFifo, lKernelCacheSize).run(IslandTransport.parseAddress(lCoordinator));
+	}
+	
+	public void run(InetSocketAddress pCoordinator) throws IOException, InterruptedException {
+		connect(pCoordinator);
+		try {
+			readSetup();
+			startHeartbeat();
+			System.out.println("Worker "+name+" ready with "+slots+" slots, "+matrix+" matrix resident");
+			while (true) {
+				byte lType;
+				try {
+					lType = input.readByte();
+				}
+				catch (EOFException e) {
+					System.out.println("Coordinator closed the connection");
+					break;
+				}
+				if (lType == EvaluationProtocol.CANCEL) {
+					cancel(input.readLong());
+					continue;
+				}
+				if (lType != EvaluationProtocol.JOB) throw new IOException("Unexpected message "+lType);
+				long lJob = input.readLong();
+				String lFeatures = input.readUTF();
+				int lIndexLabel = input.readInt();
+				String[] lParameters = new String[input.readInt()];
+				for (int i=0; i<lParameters.length; i++) {
+					lParameters[i] = input.readUTF();
+				}
+				submit(lJob, lFeatures, lIndexLabel, lParameters);
+			}
+		}
+		finally {
+			if (executor != null) executor.shutdownNow();
+			if (workerPool != null) workerPool.shutdown();
+			if (scratch != null) scratch.close();
+			socket.close();
+		}
+	}
+	
+	private void connect(InetSocketAddress pCoordinator) throws IOException, InterruptedException {
+		for (int lAttempt=1; ; lAttempt++) {
+			try {
+				socket = new Socket();
+				socket.connect(pCoordinator, 5000);
+				break;
+			}
+			catch (IOException e) {
+				if (lAttempt == CONNECT_ATTEMPTS) throw e;
+				Thread.sleep(CONNECT_RETRY);
+			}
+		}
+		socket.setTcpNoDelay(true);
+		input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		synchronized (output) {
+			output.writeByte(EvaluationProtocol.HELLO);
+			output.writeUTF(name);
+			output.writeInt(slots);
+			output.flush();
+		}
+	}
+	
+	private void readSetup() throws IOException {
+		if (input.readByte() != EvaluationProtocol.SETUP) throw new IOException("Expected setup from coordinator");
+		backend = input.readUTF();
+		timeout = input.readLong();
+		int lFolds = input.readInt();
+		long lSeed = input.readLong();
+		// Dense on the wire, kept sparse here if it is
+		int lRows = input.readInt();
+		int lColumns = input.readInt();
+		MatrixLoader lLoader = new MatrixLoader();
+		for (int i=0; i<lRows; i++) {
+			for (int k=0; k<lColumns; k++) {
+				lLoader.add(input.readDouble());
+			}
+			lLoader.endRow();
+		}
+		matrix = lLoader.toMatrix(MatrixLoader.DOUBLE);
+		index = new int[matrix.getRowCount()];
+		for (int i=0; i<index.length; i++) {
+			index[i] = input.readInt();
+		}
+		if (lFolds > 0) foldSplit = new FoldSplit(index, lFolds, lSeed);
+		if (backend.equals(SVMBackend.SVMLIGHT)) scratch = new ScratchSpace(tmpDirectory, fifo);
+		if (backend.equals(SVMBackend.SVMLIGHT)) workerPool = SVMLightWorkerPool.create(slots, timeout, metrics);
+		if (backend.equals(SVMBackend.SMO) && (kernelCacheSize > 0)) kernelCache = new KernelCache(kernelCacheSize*1024L*1024L);
+		freeSlots = new ArrayBlockingQueue<Integer>(slots);
+		for (int i=0; i<slots; i++) {
+			freeSlots.add(i);
+		}
+		executor = Executors.newFixedThreadPool(slots);
+	}
+	
+	private void startHeartbeat() {
+		Thread lThread = new Thread("Worker Heartbeat") {
+			public void run() {
+				try {
+					while (!socket.isClosed()) {
+						synchronized (output) {
+							output.writeByte(EvaluationProtocol.HEARTBEAT);
+							output.flush();
+						}
+						Thread.sleep(EvaluationProtocol.HEARTBEAT_INTERVAL);
+					}
+				}
+				catch (Exception e) {
+					// Connection gone, the main loop notices as well
+				}
+			}
+		};
+		lThread.setDaemon(true);
+		lThread.start();
+	}
+	
+	/** Stops a job the coordinator no longer needs, whether it is still queued or already training. */
+	private synchronized void cancel(long pJob) {
+		Future<?> lFuture = queued.remove(pJob);
+		// A job that never started is simply dropped, one that ended already has been reported
+		if ((lFuture != null) && lFuture.cancel(false)) return;
+		ComputeCreatureThread lThread = running.remove(pJob);
+		if (lThread != null) lThread.kill();
+		if ((lFuture != null) || (lThread != null)) cancelled.add(pJob);
+	}
+	
+	/** Registers a job as training, false if it was cancelled before. */
+	private synchronized boolean start(long pJob, ComputeCreatureThread pThread) {
+		queued.remove(pJob);
+		if (cancelled.contains(pJob)) return false;
+		running.put(pJob, pThread);
+		return true;
+	}
+	
+	/** Whether the result of a finished job is still wanted. */
+	private synchronized boolean end(long pJob) {
+		queued.remove(pJob);
+		running.remove(pJob);
+		return !cancelled.remove(pJob);
+	}
+	
+	private synchronized void submit(final long pJob, final String pFeatures, final int pIndexLabel, final String[] pParameters) {
+		queued.put(pJob, executor.submit(new Runnable() {
+			public void run() {
+				int lSlot = -1;
+				try {
+					lSlot = freeSlots.take();
+					List<SVMParameters> lParameters = new ArrayList<SVMParameters>();
+					for (String lString:pParameters) {
+						lParameters.add(SVMParameters.fromString(lString));
+					}
+					Creature lCreature = new Creature(pFeatures);
+					SVMBackend lBackend = SVMBackend.create(backend, scratch, lSlot, workerPool != null ? workerPool.getWorker(lSlot) : null, kernelCache, metrics);
+					ComputeCreatureThread lThread = new ComputeCreatureThread(lCreature, lParameters, index, new int[]{pIndexLabel}, matrix, lBackend, foldSplit, timeout, null);
+					if (start(pJob, lThread)) lThread.run();
+					if (!end(pJob)) return;
+					if (lCreature.getIndexLabelsBestResults() == null) throw new IOException("Timeout after "+(timeout/1000)+"s");
+					synchronized (output) {
+						EvaluationProtocol.writeResult(output, pJob, lCreature.getIndexLabelsBestResults()[0]);
+					}
+				}
+				catch (Exception e) {
+					if (!end(pJob)) return;
+					e.printStackTrace();
+					try {
+						synchronized (output) {
+							output.writeByte(EvaluationProtocol.FAILED);
+							output.writeLong(pJob);
+							output.writeUTF(String.valueOf(e.getMessage()));
+							output.flush();
+						}
+					}
+					catch (IOException e2) {
+						// Connection gone, the coordinator re-dispatches the job
+					}
+				}
+				finally {
+					if (lSlot >= 0) freeSlots.add(lSlot);
+				}
+			}
+		}));
+	}
+	
+}
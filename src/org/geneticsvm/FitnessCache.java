@@ -0,0 +1,249 @@
+package org.geneticsvm;
+
+import java.io.*;
+import java.util.*;
+
+public class FitnessCache {
+
+	private static final long MAGIC = 0x47535646434143L; // "GSVFCAC"
+	
+	private long gridHash;
+	private Map<String, SVMParameters> grid;
+	private Map<Creature, SVMResult[]> memory;
+	private File file;
+	private RandomAccessFile randomAccessFile;
+	private Map<Long, List<Long>> diskIndex;
+	private long hits = 0;
+	private long diskHits = 0;
+	private long misses = 0;
+	
+	/** Results read from the file are given the instances of pGrid, so their parameters compare by identity. */
+	public FitnessCache(final int pCapacity, File pFile, long pGridHash, List<SVMParameters> pGrid) throws IOException {
+		gridHash = pGridHash;
+		grid = new HashMap<String, SVMParameters>();
+		for (SVMParameters lParameters:pGrid) {
+			grid.put(lParameters.toString(), lParameters);
+		}
+		memory = new LinkedHashMap<Creature, SVMResult[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			protected boolean removeEldestEntry(Map.Entry<Creature, SVMResult[]> pEldest) {
+				return size() > pCapacity;
+			}
+		};
+		file = pFile;
+		if (file != null) {
+			openFile();
+		}
+	}
+	
+	private void openFile() throws IOException {
+		diskIndex = new HashMap<Long, List<Long>>();
+		randomAccessFile = new RandomAccessFile(file, "rw");
+		if (randomAccessFile.length() == 0) {
+			randomAccessFile.writeLong(MAGIC);
+			return;
+		}
+		if (randomAccessFile.readLong() != MAGIC) {
+			randomAccessFile.close();
+			throw new IOException("Not a fitness cache file: "+file.getAbsolutePath());
+		}
+		DataInputStream lInput = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		long lOffset = 8;
+		long lValidLength = 8;
+		try {
+			lInput.skipBytes(8);
+			while (true) {
+				long lRecordOffset = lOffset;
+				int lLength = lInput.readInt();
+				if (lInput.skip(lLength) != lLength) break;
+				lOffset += 4+lLength;
+				lValidLength = lOffset;
+				// Peek the keys at the start of the record
+				RecordHeader lHeader = readHeader(lRecordOffset);
+				if (lHeader.gridHash == gridHash) {
+					List<Long> lOffsets = diskIndex.get(lHeader.maskHash);
+					if (lOffsets == null) {
+						lOffsets = new ArrayList<Long>(1);
+						diskIndex.put(lHeader.maskHash, lOffsets);
+					}
+					lOffsets.add(lRecordOffset);
+				}
+			}
+		}
+		catch (EOFException e) {
+			// Truncated trailing record of an interrupted run
+		}
+		finally {
+			lInput.close();
+		}
+		randomAccessFile.setLength(lValidLength);
+	}
+	
+	private static class RecordHeader {
+		long gridHash;
+		long maskHash;
+	}
+	
+	private RecordHeader readHeader(long pOffset) throws IOException {
+		randomAccessFile.seek(pOffset+4);
+		RecordHeader lResult = new RecordHeader();
+		lResult.gridHash = randomAccessFile.readLong();
+		lResult.maskHash = randomAccessFile.readLong();
+		return lResult;
+	}
+	
+	public static long hash(Creature pCreature) {
+		long lResult = hash(0xcbf29ce484222325L, pCreature.getLength());
+		for (long lWord:pCreature.getBits()) {
+			lResult = hash(lResult, lWord);
+		}
+		return lResult;
+	}
+	
+	public static long hash(String pString) {
+		long lResult = 0xcbf29ce484222325L;
+		for (int i=0; i<pString.length(); i++) {
+			lResult ^= pString.charAt(i);
+			lResult *= 0x100000001b3L;
+		}
+		return lResult;
+	}
+	
+	public static long hash(long pHash, long pValue) {
+		for (int i=0; i<8; i++) {
+			pHash ^= (pValue >>> (i*8)) & 0xff;
+			pHash *= 0x100000001b3L;
+		}
+		return pHash;
+	}
+	
+	private static SVMResult[] copy(SVMResult[] pResults) {
+		SVMResult[] lResult = new SVMResult[pResults.length];
+		for (int i=0; i<pResults.length; i++) {
+			lResult[i] = new SVMResult(pResults[i].getIndexLabel(), pResults[i].getParameters(), pResults[i].getPrecision(), pResults[i].getRecall());
+		}
+		return lResult;
+	}
+	
+	public synchronized SVMResult[] get(Creature pCreature) {
+		SVMResult[] lResult = memory.get(pCreature);
+		if (lResult != null) {
+			hits++;
+			return copy(lResult);
+		}
+		if (diskIndex != null) {
+			try {
+				lResult = readFromDisk(pCreature);
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+			if (lResult != null) {
+				diskHits++;
+				memory.put(new Creature(pCreature.getBits(), pCreature.getLength()), lResult);
+				return copy(lResult);
+			}
+		}
+		misses++;
+		return null;
+	}
+	
+	public synchronized void put(Creature pCreature, SVMResult[] pResults) {
+		if (pResults == null) return;
+		if (memory.containsKey(pCreature)) return;
+		// Key by a result-free copy so the cache does not retain the creature itself
+		memory.put(new Creature(pCreature.getBits(), pCreature.getLength()), copy(pResults));
+		if (diskIndex != null) {
+			try {
+				// Recomputed after an eviction from memory, the file already holds it
+				if (findOnDisk(pCreature) < 0) writeToDisk(pCreature, pResults);
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/** Offset of the record of the creature's mask, -1 if there is none; leaves the file after the mask. */
+	private long findOnDisk(Creature pCreature) throws IOException {
+		List<Long> lOffsets = diskIndex.get(hash(pCreature));
+		if (lOffsets == null) return -1;
+		for (long lOffset:lOffsets) {
+			randomAccessFile.seek(lOffset+4+16);
+			if (pCreature.equals(readMask(randomAccessFile))) return lOffset;
+		}
+		return -1;
+	}
+	
+	private SVMResult[] readFromDisk(Creature pCreature) throws IOException {
+		if (findOnDisk(pCreature) < 0) return null;
+		SVMResult[] lResult = new SVMResult[randomAccessFile.readInt()];
+		for (int i=0; i<lResult.length; i++) {
+			int lLabel = randomAccessFile.readInt();
+			String lString = randomAccessFile.readUTF();
+			SVMParameters lParameters = grid.get(lString);
+			// Same grid hash but unknown parameters, recompute rather than return a foreign instance
+			if ((lParameters == null) && (SVMParameters.fromString(lString) != null)) return null;
+			double lPrecision = randomAccessFile.readDouble();
+			double lRecall = randomAccessFile.readDouble();
+			lResult[i] = new SVMResult(lLabel, lParameters, lPrecision, lRecall);
+		}
+		return lResult;
+	}
+	
+	private static Creature readMask(DataInput pInput) throws IOException {
+		int lLength = pInput.readInt();
+		long[] lBits = new long[Creature.words(lLength)];
+		for (int i=0; i<lBits.length; i++) {
+			lBits[i] = pInput.readLong();
+		}
+		return new Creature(lBits, lLength);
+	}
+	
+	private void writeToDisk(Creature pCreature, SVMResult[] pResults) throws IOException {
+		ByteArrayOutputStream lBytes = new ByteArrayOutputStream();
+		DataOutputStream lOutput = new DataOutputStream(lBytes);
+		lOutput.writeLong(gridHash);
+		lOutput.writeLong(hash(pCreature));
+		lOutput.writeInt(pCreature.getLength());
+		for (long lWord:pCreature.getBits()) {
+			lOutput.writeLong(lWord);
+		}
+		lOutput.writeInt(pResults.length);
+		for (SVMResult lResult:pResults) {
+			lOutput.writeInt(lResult.getIndexLabel());
+			lOutput.writeUTF(lResult.getParameters() != null ? lResult.getParameters().toString() : "null");
+			lOutput.writeDouble(lResult.getPrecision());
+			lOutput.writeDouble(lResult.getRecall());
+		}
+		lOutput.close();
+		long lOffset = randomAccessFile.length();
+		randomAccessFile.seek(lOffset);
+		randomAccessFile.writeInt(lBytes.size());
+		randomAccessFile.write(lBytes.toByteArray());
+		List<Long> lOffsets = diskIndex.get(hash(pCreature));
+		if (lOffsets == null) {
+			lOffsets = new ArrayList<Long>(1);
+			diskIndex.put(hash(pCreature), lOffsets);
+		}
+		lOffsets.add(lOffset);
+	}
+	
+	public synchronized String getStatistics() {
+		return "Fitness Cache: "+hits+" hits, "+diskHits+" disk hits, "+misses+" misses, "+memory.size()+" entries in memory"+(diskIndex != null ? ", "+diskIndex.size()+" masks on disk" : "");
+	}
+	
+	public synchronized void close() {
+		if (randomAccessFile != null) {
+			try {
+				randomAccessFile.close();
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+			randomAccessFile = null;
+			diskIndex = null;
+		}
+	}
+	
+}
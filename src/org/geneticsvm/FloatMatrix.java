@@ -0,0 +1,75 @@
+package org.geneticsvm;
+
+/** All rows in one float array, half the memory of double values at about 7 significant digits. */
+public class FloatMatrix implements DataMatrix {
+
+	private int rows;
+	private int columns;
+	private float[] values;
+	private double density = -1;
+
+	public FloatMatrix(DataMatrix pSource) {
+		rows = pSource.getRowCount();
+		columns = pSource.getColumnCount();
+		values = new float[MatrixLoader.getCells(rows, columns)];
+		double[] lRow = new double[columns];
+		for (int i=0; i<rows; i++) {
+			pSource.getRow(i, lRow);
+			for (int k=0; k<columns; k++) {
+				values[i*columns+k] = (float)lRow[k];
+			}
+		}
+	}
+
+	public int getRowCount() {
+		return rows;
+	}
+
+	public int getColumnCount() {
+		return columns;
+	}
+
+	public double get(int pRow, int pColumn) {
+		return values[pRow*columns+pColumn];
+	}
+
+	public void getRow(int pRow, double[] pTarget) {
+		int lOffset = pRow*columns;
+		for (int k=0; k<columns; k++) {
+			pTarget[k] = values[lOffset+k];
+		}
+	}
+
+	public int project(int pRow, int[] pColumns, int[] pPositions, double[] pValues) {
+		int lOffset = pRow*columns;
+		int lResult = 0;
+		for (int m=0; m<pColumns.length; m++) {
+			float lValue = values[lOffset+pColumns[m]];
+			if (lValue != 0) {
+				pPositions[lResult] = m;
+				pValues[lResult++] = lValue;
+			}
+		}
+		return lResult;
+	}
+
+	public synchronized double getDensity() {
+		if (density < 0) {
+			long lNonZeros = 0;
+			for (float lValue:values) {
+				if (lValue != 0) lNonZeros++;
+			}
+			density = values.length > 0 ? lNonZeros/(double)values.length : 0;
+		}
+		return density;
+	}
+
+	public long getBytes() {
+		return 4L*values.length;
+	}
+
+	public String toString() {
+		return MatrixLoader.describe(this, "float");
+	}
+
+}
@@ -0,0 +1,63 @@
+package org.geneticsvm;
+
+import java.util.*;
+
+public class FoldSplit {
+
+	public static final long DEFAULT_SEED = 4711;
+	
+	private int folds;
+	private long seed;
+	private int[] fold;
+	
+	public FoldSplit(int[] pIndex, int pFolds, long pSeed) {
+		folds = pFolds;
+		seed = pSeed;
+		fold = new int[pIndex.length];
+		// Stratified: shuffle the rows of every label and deal them round robin into the folds
+		Map<Integer, List<Integer>> lRowsByLabel = new TreeMap<Integer, List<Integer>>();
+		for (int i=0; i<pIndex.length; i++) {
+			List<Integer> lRows = lRowsByLabel.get(pIndex[i]);
+			if (lRows == null) {
+				lRows = new ArrayList<Integer>();
+				lRowsByLabel.put(pIndex[i], lRows);
+			}
+			lRows.add(i);
+		}
+		Random lRandom = new Random(pSeed);
+		int lNext = 0;
+		for (List<Integer> lRows:lRowsByLabel.values()) {
+			Collections.shuffle(lRows, lRandom);
+			for (int lRow:lRows) {
+				fold[lRow] = lNext;
+				lNext = (lNext+1) % folds;
+			}
+		}
+	}
+	
+	public int getFolds() {
+		return folds;
+	}
+	
+	public long getSeed() {
+		return seed;
+	}
+	
+	public int getFold(int pRow) {
+		return fold[pRow];
+	}
+	
+	public boolean[] getTestRows(TrainingSet pTrainingSet, int pFold) {
+		int[] lRows = pTrainingSet.getRows();
+		boolean[] lResult = new boolean[lRows.length];
+		for (int i=0; i<lRows.length; i++) {
+			lResult[i] = fold[lRows[i]] == pFold;
+		}
+		return lResult;
+	}
+	
+	public String toString() {
+		return folds+"-fold (seed "+seed+")";
+	}
+	
+}
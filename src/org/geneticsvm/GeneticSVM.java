@@ -1,24 +1,45 @@
 package org.geneticsvm;
 
 import java.io.*;
+import java.util.*;
 
 public class GeneticSVM {
 
 	public static void printSytnax() {
-		System.out.println("Syntax: GeneticSVM -p <Parameter-File> -i <Index-File> -d <Data-File> [-f Feature File] -o <output> [-tmp <Temp>] [-m <maximumPopulation>] [-t <turns>] [-mt <Multithreading>] [-pr <Permutation Rate>] [-to timeout]");
-		System.out.println("Syntax: GeneticSVM -r <Result-File> [-f Feature File] -o <output> [-tmp <Temp>] [-m <maximumPopulation>] [-t <turns>] [-mt <Multithreading>] [-pr <Permutation Rate>] [-to timeout]");
-		System.out.println("  -r Resume from Result File. Replaces Parameters -p, -i, -d -f from file if not specified in command line");
+		System.out.println("Syntax: GeneticSVM -p <Parameter-File> -i <Index-File> -d <Data-File> [-f Feature File] -o <output> [-tmp <Temp>] [-fifo] [-ms <Matrix Storage>] [-m <maximumPopulation>] [-t <turns>] [-mt <Multithreading>] [-pr <Permutation Rate>] [-to timeout] [-b <Backend>] [-cv <Folds>] [-kc <Kernel Cache MB>] [-ik <Incremental Kernel Fraction>] [-race <Top>] [-rm <Racing Margin>] [-islands <Islands>] [-island <Island>] [-it <Island Transport>] [-mi <Migration Interval>] [-mn <Migrants>] [-coordinator <Port>] [-cache <Cache-File>] [-cs <Cache Size>] [-sel <Selection>] [-elite <Elite>] [-xo <Crossover>] [-target <F-Measure>]");
+		System.out.println("Syntax: GeneticSVM -r <Result-File> [-f Feature File] -o <output> [-tmp <Temp>] [-fifo] [-ms <Matrix Storage>] [-m <maximumPopulation>] [-t <turns>] [-mt <Multithreading>] [-pr <Permutation Rate>] [-to timeout] [-b <Backend>] [-cv <Folds>] [-kc <Kernel Cache MB>] [-ik <Incremental Kernel Fraction>] [-race <Top>] [-rm <Racing Margin>] [-islands <Islands>] [-island <Island>] [-it <Island Transport>] [-mi <Migration Interval>] [-mn <Migrants>] [-coordinator <Port>] [-cache <Cache-File>] [-cs <Cache Size>] [-sel <Selection>] [-elite <Elite>] [-xo <Crossover>] [-target <F-Measure>]");
+		System.out.println("  -r Resume from Result File or the checkpoint <Result File>.checkpoint written after every turn. Replaces Parameters -p, -i, -d -f from file if not specified in command line");
 		System.out.println("  -p Parameter-File");
 		System.out.println("  -i Index File");
 		System.out.println("  -d Matrix Data File");
 		System.out.println("  -f Feature File (optional Restriction of Features)");
 		System.out.println("  -o Output File");
-		System.out.println("  -tmp Tmp-Directory (Default: tmp)");
+		System.out.println("  -tmp Scratch directory of svm_learn, a subdirectory per run is deleted at exit (Default: /dev/shm if available, else tmp)");
+		System.out.println("  -fifo Stream training data to svm_learn through named pipes instead of scratch files");
+		System.out.println("  -ms Storage of matrices that are not sparse: double, float (half the memory) or int16 (a quarter, 65536 levels per column); mapped keeps any matrix outside the heap in its memory-mapped cache file (Default: double)");
 		System.out.println("  -m Maximum Population (Default: 10)");
 		System.out.println("  -t Number of Turns (Default: 10)");
 		System.out.println("  -mt Multithreading (Default: Number of CPU Cores Threads)");
 		System.out.println("  -pr Permutation Rate [0,1] (Default: 0.1)");
 		System.out.println("  -to timeout for computation of a creature in s (Default: 0 = no timeout)");
+		System.out.println("  -cache Fitness Cache File, reused across runs with the same parameters and data (Default: in-memory only)");
+		System.out.println("  -cs Number of creatures kept in the in-memory Fitness Cache (Default: 10000, 0 = disabled)");
+		System.out.println("  -b SVM Backend: svmlight|smo (Default: svmlight, smo = in-process solver without svm_learn)");
+		System.out.println("  -cv Stratified k-fold cross-validation with a fixed seed instead of leave-one-out (Default: 0 = leave-one-out)");
+		System.out.println("  -kc Size of the kernel matrix cache of the smo backend in MB (Default: 256, 0 = disabled)");
+		System.out.println("  -race Score creatures on a coarse C grid first and give the full grid only to those that can still reach the top <Top> (Default: 0 = full grid for all)");
+		System.out.println("  -rm F-Measure points per label a creature may gain from the coarse to the full grid when racing (Default: 10)");
+		System.out.println("  -islands Number of independent populations exchanging their best creatures (Default: 1)");
+		System.out.println("  -island Island run by this process if the islands are separate processes (0 to Islands-1)");
+		System.out.println("  -it Island Transport: queue (all islands in this process), dir:<shared directory> or tcp:<host:port>,<host:port>,... with one address per island (Default: queue)");
+		System.out.println("  -mi Turns between migrations of the islands (Default: 5)");
+		System.out.println("  -mn Number of best creatures migrating to the next island (Default: 2)");
+		System.out.println("  -coordinator Evaluate all creatures on EvaluationWorker processes connecting to this port instead of in this process");
+		System.out.println("  -sel Selection of parents: order (each creature mutates itself), rank (linear ranking) or tournament[:<size>] (Default: order)");
+		System.out.println("  -elite Number of best creatures kept unchanged in every turn, at least 1 (Default: 3)");
+		System.out.println("  -xo Crossover of two parents before mutation: none, uniform or kpoint[:<points>] (Default: none)");
+		System.out.println("  -target Report the creature evaluations and trainings needed until the best creature reaches this F-Measure in percent (Default: 0 = off)");
+		System.out.println("  -ik Patch the cached dot products of the parent when at most this fraction of an offspring's features changed [0,1] (Default: 0 = always recompute)");
 		System.exit(0);
 	}
 	
@@ -31,12 +52,32 @@ public class GeneticSVM {
 		File lFeatureFile = null;
 		File lResumeFile = null;
 		File lOutputFile = null;
-		File lTmpDirectory = new File(System.getProperty("user.dir")+File.separator+"tmp");
+		File lTmpDirectory = null;
+		boolean lFifo = false;
+		String lStorage = MatrixLoader.DOUBLE;
 		int lMaxPopulation = 10;
 		int lTurns = 10;
 		int lThreads = Runtime.getRuntime().availableProcessors();
 		long lTimeOut = 0;
 		double lPermutationRate = 0.1;
+		String lBackend = SVMBackend.SVMLIGHT;
+		int lFolds = 0;
+		int lKernelCacheSize = 256;
+		double lIncrementalKernel = 0;
+		int lRaceTop = 0;
+		double lRaceMargin = 10;
+		File lCacheFile = null;
+		int lCacheSize = 10000;
+		int lIslands = 1;
+		int lIsland = -1;
+		String lIslandTransport = IslandTransport.QUEUE;
+		int lMigrationInterval = 5;
+		int lMigrants = 2;
+		int lCoordinatorPort = 0;
+		String lSelection = Selection.ORDER;
+		int lElite = 3;
+		String lCrossover = Crossover.NONE;
+		double lTarget = 0;
 		// Parse Parameters
 		for (int i=0; i<args.length; i++) {
 			if (args[i].equals("-p")) {
@@ -60,6 +101,12 @@ public class GeneticSVM {
 			else if (args[i].equals("-tmp")) {
 				lTmpDirectory = new File(args[++i]);
 			}
+			else if (args[i].equals("-fifo")) {
+				lFifo = true;
+			}
+			else if (args[i].equals("-ms")) {
+				lStorage = args[++i];
+			}
 			else if (args[i].equals("-m")) {
 				lMaxPopulation = Integer.parseInt(args[++i]);
 			}
@@ -75,6 +122,60 @@ public class GeneticSVM {
 			else if (args[i].equals("-to")) {
 				lTimeOut = Long.parseLong(args[++i]);
 			}
+			else if (args[i].equals("-b")) {
+				lBackend = args[++i];
+			}
+			else if (args[i].equals("-cv")) {
+				lFolds = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-kc")) {
+				lKernelCacheSize = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-ik")) {
+				lIncrementalKernel = Double.parseDouble(args[++i]);
+			}
+			else if (args[i].equals("-race")) {
+				lRaceTop = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-rm")) {
+				lRaceMargin = Double.parseDouble(args[++i]);
+			}
+			else if (args[i].equals("-islands")) {
+				lIslands = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-island")) {
+				lIsland = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-it")) {
+				lIslandTransport = args[++i];
+			}
+			else if (args[i].equals("-mi")) {
+				lMigrationInterval = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-mn")) {
+				lMigrants = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-coordinator")) {
+				lCoordinatorPort = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-sel")) {
+				lSelection = args[++i];
+			}
+			else if (args[i].equals("-elite")) {
+				lElite = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-xo")) {
+				lCrossover = args[++i];
+			}
+			else if (args[i].equals("-target")) {
+				lTarget = Double.parseDouble(args[++i]);
+			}
+			else if (args[i].equals("-cache")) {
+				lCacheFile = new File(args[++i]);
+			}
+			else if (args[i].equals("-cs")) {
+				lCacheSize = Integer.parseInt(args[++i]);
+			}
 			else if (args[i].equals("--help")) {
 				printSytnax();
 			}
@@ -87,18 +188,104 @@ public class GeneticSVM {
 			}
 		}
 		//
-		System.out.println("Using up to "+lThreads+" Threads ("+Runtime.getRuntime().availableProcessors()+" CPU Cores available)");
-		GeneticSVMStudy lGeneticSVMStudy = new GeneticSVMStudy(lParameterFile, lIndexFile, lDataFile, lFeatureFile, lResumeFile, lOutputFile, lTmpDirectory, lMaxPopulation, lTurns, lThreads, lPermutationRate, lTimeOut);
-		lGeneticSVMStudy.start();
-		while (lGeneticSVMStudy.getState() != Thread.State.TERMINATED) {
-			try {
-				Thread.sleep(500);
+		if ((lIslands < 1) || (lMigrationInterval < 1) || (lMigrants < 0)) {
+			System.err.println("Islands and Migration Interval must be >= 1, Migrants >= 0");
+			System.exit(-1);
+		}
+		boolean lInProcess = lIslandTransport.equals(IslandTransport.QUEUE);
+		if ((lIslands > 1) && (!lInProcess) && ((lIsland < 0) || (lIsland >= lIslands))) {
+			System.err.println("Island of this process (-island) must be in range of [0,"+(lIslands-1)+"]");
+			System.exit(-1);
+		}
+		if ((lCoordinatorPort > 0) && (lIslands > 1) && lInProcess) {
+			System.err.println("A coordinator (-coordinator) needs one process per island (-it dir: or tcp:)");
+			System.exit(-1);
+		}
+		if (!MatrixLoader.isStorage(lStorage)) {
+			System.err.println("Unknown matrix storage (-ms): "+lStorage);
+			System.exit(-1);
+		}
+		// The best creature must survive each turn, its F-Measure never drops
+		if ((lElite < 1) || (lElite > lMaxPopulation)) {
+			System.err.println("Number of elite creatures (-elite) must be in range of [1,"+lMaxPopulation+"]");
+			System.exit(-1);
+		}
+		Selection lSelectionOperator = null;
+		Crossover lCrossoverOperator = null;
+		try {
+			lSelectionOperator = Selection.create(lSelection);
+			lCrossoverOperator = Crossover.create(lCrossover);
+		}
+		catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(-1);
+		}
+		List<GeneticSVMStudy> lStudies = new ArrayList<GeneticSVMStudy>();
+		// Suffix of the files of each study, in-process islands write their own
+		List<String> lSuffixes = new ArrayList<String>();
+		try {
+			if (lIslands == 1) {
+				System.out.println("Using up to "+lThreads+" Threads ("+Runtime.getRuntime().availableProcessors()+" CPU Cores available)");
+				lStudies.add(new GeneticSVMStudy(lParameterFile, lIndexFile, lDataFile, lFeatureFile, lResumeFile, lOutputFile, lTmpDirectory, lMaxPopulation, lTurns, lThreads, lPermutationRate, lTimeOut, lBackend));
+				lSuffixes.add("");
+			}
+			else if (lInProcess) {
+				// All islands in this process, sharing the threads
+				int lIslandThreads = Math.max(1, lThreads/lIslands);
+				System.out.println("Running "+lIslands+" Islands with up to "+lIslandThreads+" Threads each ("+Runtime.getRuntime().availableProcessors()+" CPU Cores available)");
+				QueueIslandTransport[] lTransports = QueueIslandTransport.create(lIslands);
+				for (int i=0; i<lIslands; i++) {
+					String lSuffix = ".island"+i;
+					GeneticSVMStudy lStudy = new GeneticSVMStudy(lParameterFile, lIndexFile, lDataFile, lFeatureFile, lResumeFile != null ? getIslandFile(lResumeFile, lSuffix) : null, new File(lOutputFile.getPath()+lSuffix), lTmpDirectory, lMaxPopulation, lTurns, lIslandThreads, lPermutationRate, lTimeOut, lBackend);
+					lStudy.setIslandTransport(lTransports[i], lMigrationInterval, lMigrants);
+					lStudies.add(lStudy);
+					lSuffixes.add(lSuffix);
+				}
 			}
-			catch (InterruptedException e) {
-				e.printStackTrace();
+			else {
+				System.out.println("Running Island "+lIsland+" of "+lIslands+" with up to "+lThreads+" Threads ("+Runtime.getRuntime().availableProcessors()+" CPU Cores available)");
+				GeneticSVMStudy lStudy = new GeneticSVMStudy(lParameterFile, lIndexFile, lDataFile, lFeatureFile, lResumeFile, lOutputFile, lTmpDirectory, lMaxPopulation, lTurns, lThreads, lPermutationRate, lTimeOut, lBackend);
+				lStudy.setIslandTransport(IslandTransport.create(lIslandTransport, lIsland, lIslands), lMigrationInterval, lMigrants);
+				lStudies.add(lStudy);
+				lSuffixes.add("");
+			}
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+			System.exit(-1);
+		}
+		for (int i=0; i<lStudies.size(); i++) {
+			GeneticSVMStudy lStudy = lStudies.get(i);
+			if (lCoordinatorPort > 0) lStudy.setCoordinator(lCoordinatorPort);
+			lStudy.setFitnessCache(lCacheFile != null ? new File(lCacheFile.getPath()+lSuffixes.get(i)) : null, lCacheSize);
+			lStudy.setKernelCache(lKernelCacheSize, lIncrementalKernel);
+			lStudy.setRacing(lRaceTop, lRaceMargin);
+			lStudy.setOperators(lSelectionOperator, lCrossoverOperator, lElite);
+			lStudy.setTarget(lTarget);
+			lStudy.setFolds(lFolds);
+			lStudy.setFifo(lFifo);
+			lStudy.setStorage(lStorage);
+			lStudy.start();
+		}
+		try {
+			for (GeneticSVMStudy lStudy:lStudies) {
+				lStudy.join();
 			}
 		}
+		catch (InterruptedException e) {
+			e.printStackTrace();
+		}
 		System.out.println("All Done - Operation took "+(System.currentTimeMillis()-lStart)+"ms");
 	}
 	
+	/** Report or checkpoint of one in-process island, written as <output><suffix>[.checkpoint]. */
+	private static File getIslandFile(File pFile, String pSuffix) {
+		String lPath = pFile.getPath();
+		String lCheckpoint = ".checkpoint";
+		if (lPath.endsWith(lCheckpoint)) {
+			return GeneticSVMStudy.getCheckpointFile(new File(lPath.substring(0, lPath.length()-lCheckpoint.length())+pSuffix));
+		}
+		return new File(lPath+pSuffix);
+	}
+	
 }
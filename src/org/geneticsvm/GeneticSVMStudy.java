@@ -5,6 +5,8 @@ import java.util.*;
 
 public class GeneticSVMStudy extends Thread {
 
+	public static final int RACE_STRIDE = 4;
+
 	private File parameterFile;
 	private File indexFile;
 	private File dataFile;
@@ -17,16 +19,120 @@ public class GeneticSVMStudy extends Thread {
 	private double permutationRate;
 	private int[] index;
 	private int[] indexLabels;
-	private double[][] matrix;
+	private DataMatrix matrix;
 	private List<SVMParameters> parameters;
 	private Set<Creature> population;
 	private int elapsedTurns;
 	private long timeout;
+	private String backend;
+	private int folds;
+	private long foldSeed = FoldSplit.DEFAULT_SEED;
+	private FoldSplit foldSplit;
+	private SVMLightWorkerPool workerPool;
+	private int kernelCacheSize;
+	private double incrementalKernel;
+	private int raceTop;
+	private double raceMargin;
+	private String raceStatistics;
+	private IslandTransport islandTransport;
+	private int migrationInterval;
+	private int migrants;
+	private int coordinatorPort;
+	private EvaluationCoordinator coordinator;
+	private KernelCache kernelCache;
+	private File cacheFile;
+	private int cacheSize;
+	private FitnessCache fitnessCache;
+	private WorkStealingExecutor<ComputeCreatureThread> executor;
+	private SVMBackendPool backends;
 	private File resumeFile;
+	private Checkpoint checkpoint;
+	private long gridHash;
 	private List<Creature> presetPopulation = null;
 	private String features = null;
 	private PrintWriter writer;
+	private StudyEventLog events;
+	private long turnStart;
+	private EvaluationMetrics metrics = new EvaluationMetrics();
+	private EvaluationMetrics.Snapshot turnMetrics;
+	private boolean fifo;
+	private String storage = MatrixLoader.DOUBLE;
+	private ScratchSpace scratch;
+	private long turnWritten;
+	private long turnStreamed;
+	private Selection selection = new OrderSelection();
+	private Crossover crossover;
+	private int elite = 3;
+	private double target;
+	private long evaluations;
+	private long trainings;
+	private int targetTurn = -1;
+	private long targetEvaluations;
+	private long targetTrainings;
 	private double lastTurnsBestF = 0; // For Debugging
+	private Random random = new Random();
+	
+	/** Island mode: exchange the best pMigrants creatures with the other islands every pMigrationInterval turns. */
+	public void setIslandTransport(IslandTransport pIslandTransport, int pMigrationInterval, int pMigrants) {
+		islandTransport = pIslandTransport;
+		migrationInterval = pMigrationInterval;
+		migrants = pMigrants;
+	}
+	
+	/** Selection of parents, crossover (null = mutation only) and number of best creatures kept unchanged. */
+	public void setOperators(Selection pSelection, Crossover pCrossover, int pElite) {
+		selection = pSelection;
+		crossover = pCrossover;
+		elite = pElite;
+	}
+	
+	/** Reports the number of evaluations until the best creature reaches pTarget (0 = off). */
+	public void setTarget(double pTarget) {
+		target = pTarget;
+	}
+	
+	/** Distributed mode: train nothing in this process and hand all evaluations to EvaluationWorkers connecting to pPort. */
+	public void setCoordinator(int pPort) {
+		coordinatorPort = pPort;
+	}
+	
+	/** Streams training data to svm_learn through named pipes instead of scratch files. */
+	public void setFifo(boolean pFifo) {
+		fifo = pFifo;
+	}
+	
+	/** Stratified k-fold cross-validation instead of leave-one-out (0 = leave-one-out). */
+	public void setFolds(int pFolds) {
+		folds = pFolds;
+	}
+	
+	/** Seed of the stratified fold assignment. */
+	public void setFoldSeed(long pSeed) {
+		foldSeed = pSeed;
+	}
+	
+	/** Storage of the data matrix unless it is sparse, see MatrixLoader. */
+	public void setStorage(String pStorage) {
+		storage = pStorage;
+	}
+	
+	/** Fitness cache of pCacheSize entries in memory, persisted to pCacheFile unless it is null. */
+	public void setFitnessCache(File pCacheFile, int pCacheSize) {
+		cacheFile = pCacheFile;
+		cacheSize = pCacheSize;
+	}
+	
+	/** Kernel cache of the SMO backend in MB (0 = off), patching offspring that differ in at most pIncrementalKernel of their features. */
+	public void setKernelCache(int pKernelCacheSize, double pIncrementalKernel) {
+		kernelCacheSize = pKernelCacheSize;
+		incrementalKernel = pIncrementalKernel;
+	}
+	
+	/** Racing: only creatures that can still reach the top pRaceTop within pRaceMargin are fully evaluated (0 = off). */
+	public void setRacing(int pRaceTop, double pRaceMargin) {
+		raceTop = pRaceTop;
+		raceMargin = pRaceMargin;
+	}
 	
 	private void checkFiles() {
 		if (parameterFile == null) {
@@ -61,7 +167,7 @@ public class GeneticSVMStudy extends Thread {
 		}
 	}
 	
-	public GeneticSVMStudy(File pParameterFile, File pIndexFile, File pDataFile, File pFeatureFile, File pResumeFile, File pOutputFile, File pTmpDirectory, int pMaxPopulation, int pTurns, int pThreads, double pPermutationRate, long pTimeout) {
+	public GeneticSVMStudy(File pParameterFile, File pIndexFile, File pDataFile, File pFeatureFile, File pResumeFile, File pOutputFile, File pTmpDirectory, int pMaxPopulation, int pTurns, int pThreads, double pPermutationRate, long pTimeout, String pBackend) {
 		parameterFile = pParameterFile;
 		indexFile = pIndexFile;
 		dataFile = pDataFile;
@@ -72,6 +178,7 @@ public class GeneticSVMStudy extends Thread {
 		threads = pThreads;
 		permutationRate = pPermutationRate;
 		timeout = pTimeout * 1000;
+		backend = pBackend;
 		featureFile = pFeatureFile;
 		resumeFile = pResumeFile;
 	}
@@ -85,6 +192,26 @@ public class GeneticSVMStudy extends Thread {
 			System.err.println("Number of turns < 1 is invalid");
 			System.exit(-1);
 		}
+		if ((folds == 1) || (folds < 0) || (folds > index.length)) {
+			System.err.println("Number of cross-validation folds must be 0 (leave-one-out) or in range of [2,"+index.length+"]");
+			System.exit(-1);
+		}
+		if (kernelCacheSize < 0) {
+			System.err.println("Kernel Cache Size < 0 is invalid");
+			System.exit(-1);
+		}
+		if (raceTop < 0) {
+			System.err.println("Racing Top < 0 is invalid");
+			System.exit(-1);
+		}
+		if (raceMargin < 0) {
+			System.err.println("Racing Margin < 0 is invalid");
+			System.exit(-1);
+		}
+		if ((incrementalKernel < 0) || (incrementalKernel > 1)) {
+			System.err.println("Incremental Kernel fraction must be in range of [0,1]");
+			System.exit(-1);
+		}
 		if (threads < 1) {
 			System.err.println("Number of threads < 1 is invalid");
 			System.exit(-1);
@@ -93,12 +220,16 @@ public class GeneticSVMStudy extends Thread {
 			System.err.println("Number of threads > number of CPU Cores ("+Runtime.getRuntime().availableProcessors()+") not recommended");
 			System.exit(-1);
 		}
+		if ((!backend.equals(SVMBackend.SVMLIGHT)) && (!backend.equals(SVMBackend.SMO))) {
+			System.err.println("Unknown SVM Backend: "+backend);
+			System.exit(-1);
+		}
 		if ((permutationRate<0) || (permutationRate>1.0)) {
 			System.err.println("Permutation rate must be in range of [0,1]");
 			System.exit(-1);
 		}
-		int lFeatures = matrix[0].length;
-		int lRows = matrix.length;
+		int lFeatures = matrix.getColumnCount();
+		int lRows = matrix.getRowCount();
 		if (index.length != lRows) {
 			System.err.println("Number of rows of data matrix ("+lRows+") and index ("+index.length+") differ!");
 			System.exit(-1);
@@ -124,88 +255,278 @@ public class GeneticSVMStudy extends Thread {
 			parseParameters();
 			checkSanity();
 			prepareDirectories();
+			if (folds > 0) {
+				foldSplit = new FoldSplit(index, folds, foldSeed);
+				System.out.println("Using stratified "+foldSplit+" cross-validation instead of leave-one-out");
+			}
+			gridHash = computeGridHash();
+			if (presetPopulation != null) restoreResults();
+			if (coordinatorPort > 0) coordinator = new EvaluationCoordinator(coordinatorPort, backend, foldSplit, matrix, index, timeout);
+			else if (backend.equals(SVMBackend.SVMLIGHT)) workerPool = SVMLightWorkerPool.create(threads, timeout, metrics);
+			if (backend.equals(SVMBackend.SMO) && (kernelCacheSize > 0) && (coordinator == null)) kernelCache = new KernelCache(kernelCacheSize*1024L*1024L, incrementalKernel);
+			if ((cacheSize > 0) || (cacheFile != null)) fitnessCache = new FitnessCache(cacheSize, cacheFile, gridHash, parameters);
+			backends = new SVMBackendPool(backend, threads, scratch, workerPool, kernelCache, metrics);
+			executor = new WorkStealingExecutor<ComputeCreatureThread>(threads, timeout, metrics);
 			createInitialPopulation();
+			metrics.register(outputFile.getName());
 			// Compute
-			writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(outputFile), "UTF-8"));
-			writer.println("Genetic SVM Study Report");
-			writer.println("parameterFile: "+parameterFile.getAbsolutePath());
-			writer.println("indexFile: "+indexFile.getAbsolutePath());
-			writer.println("dataFile: "+dataFile.getAbsolutePath());
-			if (featureFile != null) writer.println("featureFile: "+featureFile.getAbsolutePath());
-			for (elapsedTurns=0; elapsedTurns<turns; elapsedTurns++) {
+			int lStartTurn = 0;
+			boolean lAppend = false;
+			if (checkpoint != null) {
+				lStartTurn = checkpoint.getTurn();
+				lastTurnsBestF = checkpoint.getLastTurnsBestF();
+				random = checkpoint.getRandom();
+				evaluations = checkpoint.getEvaluations();
+				trainings = checkpoint.getTrainings();
+				targetTurn = checkpoint.getTargetTurn();
+				targetEvaluations = checkpoint.getTargetEvaluations();
+				targetTrainings = checkpoint.getTargetTrainings();
+				lAppend = outputFile.length() > 0;
+				System.out.println("Resuming after turn "+lStartTurn+" of "+turns);
+			}
+			writer = new PrintWriter(new AsyncWriter(outputFile, lAppend));
+			events = new StudyEventLog(StudyEventLog.getFile(outputFile), lAppend);
+			if (!lAppend) {
+				writer.println("Genetic SVM Study Report");
+				writer.println("parameterFile: "+parameterFile.getAbsolutePath());
+				writer.println("indexFile: "+indexFile.getAbsolutePath());
+				writer.println("dataFile: "+dataFile.getAbsolutePath());
+				if (featureFile != null) writer.println("featureFile: "+featureFile.getAbsolutePath());
+			}
+			for (elapsedTurns=lStartTurn; elapsedTurns<turns; elapsedTurns++) {
 				System.out.println("Computing Turn: "+(elapsedTurns+1)+"/"+turns);
+				turnStart = System.currentTimeMillis();
+				turnMetrics = metrics.snapshot();
+				if (scratch != null) {
+					turnWritten = scratch.getWritten();
+					turnStreamed = scratch.getStreamed();
+				}
 				// Evaluate Population
-				ComputeCreatureThread[] lPool = new ComputeCreatureThread[threads];
-				int lFinished = 0;
-				for (Creature lCreature:population) {
-					int lID = -1;
-					while (lID == -1) {
-						for (int i=0; i<lPool.length; i++) {
-							if (lPool[i] == null) {
-								lID = i;
-							}
-							else if (lPool[i].getState() == Thread.State.TERMINATED) {
-								if (!lPool[i].isTimeout()) {
-									lFinished++;
-									System.out.println("  "+lFinished+"/"+population.size()+" "+lPool[i].getCreatue().getFMeasure()+" "+(lPool[i].getCreatue().getFeaturesCount()*100.0)/matrix[0].length+"%");
-									lPool[i] = null;
-									lID = i;
-								}
-								else {
-									lFinished++;
-									System.out.println("  "+lFinished+"/"+population.size()+" "+lPool[i].getCreatue().getFMeasure()+" "+(lPool[i].getCreatue().getFeaturesCount()*100.0)/matrix[0].length+"% [Aborted because of timeout. "+(lPool[i].getCreatue().isKeep()?"Keeping":"not Keeping")+"]");
-									lPool[i] = null;
-									lID = i;
-								}
-							}
-							else {
-								if (lPool[i].isTimeout()) {
-									lPool[i].kill();
-								}
-							}
-						}
-						if (lID == -1) {
-							Thread.sleep(500);
-						}
-					}
-					lPool[lID] = new ComputeCreatureThread(lCreature, parameters, index, indexLabels, matrix, tmpDirectory, lID, timeout);
-					lPool[lID].start();
+				if (raceTop > 0) {
+					race();
 				}
-				boolean lAllDone = false;
-				while (!lAllDone) {
-					lAllDone = true;
-					for (int i=0; i<lPool.length; i++) {
-						if (lPool[i] != null) {
-							if (lPool[i].getState() == Thread.State.TERMINATED) {
-								if (!lPool[i].isTimeout()) {
-									lFinished++;
-									System.out.println("  "+lFinished+"/"+population.size()+" "+lPool[i].getCreatue().getFMeasure()+" "+(lPool[i].getCreatue().getFeaturesCount()*100.0)/matrix[0].length+"%");
-									lPool[i] = null;
-								}
-								else {
-									lFinished++;
-									System.out.println("  "+lFinished+"/"+population.size()+" "+lPool[i].getCreatue().getFMeasure()+" "+(lPool[i].getCreatue().getFeaturesCount()*100.0)/matrix[0].length+"% [Aborted because of timeout. "+(lPool[i].getCreatue().isKeep()?"Keeping":"not Keeping")+"]");
-									lPool[i] = null;
-								}
-							}
-							else {	
-								if (lPool[i].isTimeout()) {
-									lPool[i].kill();
-								}
-								lAllDone = false;
-							}
-						}
-					}
+				else {
+					evaluate(population, null, false);
 				}
 				evaluateAndMutate();
 			}
+			if ((target > 0) && (targetTurn < 0)) {
+				String lStatistics = "Target F-Measure "+target+" not reached after "+evaluations+" creature evaluations ("+trainings+" trainings)";
+				System.out.println(lStatistics);
+				writer.println(lStatistics);
+			}
+			else if (target > 0) {
+				String lStatistics = "Target F-Measure "+target+" reached in turn "+targetTurn+" after "+targetEvaluations+" creature evaluations ("+targetTrainings+" trainings)";
+				System.out.println(lStatistics);
+				writer.println(lStatistics);
+			}
 		}
 		catch (Exception e) {
 			e.printStackTrace();
 		}
 		finally {
+			if (executor != null) executor.shutdown();
 			if (writer != null) writer.close();
+			if (events != null) events.close();
+			if (coordinator != null) {
+				System.out.println(coordinator.getStatistics());
+				try {
+					coordinator.close();
+				}
+				catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			if (islandTransport != null) {
+				try {
+					islandTransport.close();
+				}
+				catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			if (fitnessCache != null) {
+				System.out.println(fitnessCache.getStatistics());
+				fitnessCache.close();
+			}
+			if (kernelCache != null) System.out.println(kernelCache.getStatistics());
+			if (backend.equals(SVMBackend.SMO) && (coordinator == null)) System.out.println(SMOBackend.getStatistics());
+			if (workerPool != null) {
+				System.out.println("svm_learn Worker Statistics");
+				workerPool.printStatistics(System.out);
+				workerPool.shutdown();
+			}
+			if (scratch != null) scratch.close();
+		}
+	}
+	
+	/** Evaluates the creatures on the selected parameters and returns those whose results were computed in this run. */
+	private List<Creature> evaluate(Collection<Creature> pCreatures, final boolean[] pSelection, final boolean pResume) throws InterruptedException {
+		// Creatures carried over with results for the whole grid (survivors, resumed creatures) are not trained again
+		List<Creature> lPending = new ArrayList<Creature>();
+		for (Creature lCreature:pCreatures) {
+			if (pResume || (!lCreature.isEvaluated())) lPending.add(lCreature);
+		}
+		List<Creature> lResult = coordinator != null ? evaluateRemote(lPending, pSelection, pResume) : evaluateLocal(lPending, pSelection, pResume);
+		int lSelected = parameters.size();
+		if (pSelection != null) {
+			lSelected = 0;
+			for (boolean lSelectedParameters:pSelection) {
+				if (lSelectedParameters) lSelected++;
+			}
+		}
+		// The second racing pass completes creatures already counted in the first
+		if (!pResume) evaluations += lResult.size();
+		trainings += (long)lResult.size()*lSelected*indexLabels.length;
+		return lResult;
+	}
+	
+	private List<Creature> evaluateLocal(List<Creature> pCreatures, final boolean[] pSelection, final boolean pResume) throws InterruptedException {
+		// Creatures are split into (parameters, label) parts, idle threads steal parts of the long-running ones
+		for (Creature lCreature:pCreatures) {
+			ComputeCreatureThread lThread = new ComputeCreatureThread(lCreature, parameters, index, indexLabels, matrix, backends, foldSplit, timeout, fitnessCache);
+			lThread.setParameterSelection(pSelection, pResume);
+			executor.submit(lThread);
+		}
+		List<Creature> lResult = new ArrayList<Creature>();
+		int lFinished = 0;
+		while (executor.getPending() > 0) {
+			ComputeCreatureThread lThread = executor.take();
+			lFinished++;
+			if (lThread == null) {
+				System.out.println("  "+lFinished+"/"+pCreatures.size()+" [Failed]");
+				continue;
+			}
+			if ((!lThread.isCached()) && (!lThread.isTimeout()) && (lThread.getCreatue().getIndexLabelsBestResults() != null)) {
+				lResult.add(lThread.getCreatue());
+			}
+			if (!lThread.isTimeout()) {
+				System.out.println("  "+lFinished+"/"+pCreatures.size()+" "+lThread.getCreatue().getFMeasure()+" "+(lThread.getCreatue().getFeaturesCount()*100.0)/matrix.getColumnCount()+"%");
+			}
+			else {
+				System.out.println("  "+lFinished+"/"+pCreatures.size()+" "+lThread.getCreatue().getFMeasure()+" "+(lThread.getCreatue().getFeaturesCount()*100.0)/matrix.getColumnCount()+"% [Aborted because of timeout. "+(lThread.getCreatue().isKeep()?"Keeping":"not Keeping")+"]");
+			}
+		}
+		return lResult;
+	}
+	
+	private List<Creature> evaluateRemote(Collection<Creature> pCreatures, boolean[] pSelection, boolean pResume) throws InterruptedException {
+		List<Creature> lCreatures = new ArrayList<Creature>();
+		for (Creature lCreature:pCreatures) {
+			lCreature.setKeep(false);
+			if ((fitnessCache != null) && (!pResume)) {
+				SVMResult[] lCachedResults = fitnessCache.get(lCreature);
+				if (lCachedResults != null) {
+					lCreature.setIndexLabelsBestResults(lCachedResults);
+					lCreature.setEvaluated(true);
+					continue;
+				}
+			}
+			lCreatures.add(lCreature);
 		}
+		SVMResult[][] lResults = coordinator.evaluate(lCreatures, parameters, pSelection, indexLabels);
+		List<Creature> lResult = new ArrayList<Creature>();
+		for (int i=0; i<lCreatures.size(); i++) {
+			Creature lCreature = lCreatures.get(i);
+			SVMResult[] lNewResults = lResults[i];
+			if (lNewResults == null) {
+				System.out.println("  "+(i+1)+"/"+lCreatures.size()+" [Failed]");
+				if (!pResume) lCreature.setIndexLabelsBestResults(null);
+				continue;
+			}
+			SVMResult[] lOldResults = lCreature.getIndexLabelsBestResults();
+			if (pResume && (lOldResults != null)) {
+				// Same rule as ComputeCreatureThread: better F-measure wins, ties go to the parameters listed first
+				for (int k=0; k<lNewResults.length; k++) {
+					SVMResult lOld = lOldResults[k];
+					SVMResult lNew = lNewResults[k];
+					if (lOld.getParameters() == null) continue;
+					if ((lNew.getParameters() == null) || (lOld.getFMeasure() > lNew.getFMeasure()) || ((lOld.getFMeasure() == lNew.getFMeasure()) && (parameters.indexOf(lOld.getParameters()) < parameters.indexOf(lNew.getParameters())))) {
+						lNewResults[k] = lOld;
+					}
+				}
+			}
+			lCreature.setIndexLabelsBestResults(lNewResults);
+			lCreature.setEvaluated((pSelection == null) || pResume);
+			if ((fitnessCache != null) && ((pSelection == null) || pResume)) {
+				fitnessCache.put(lCreature, lNewResults);
+			}
+			lResult.add(lCreature);
+			System.out.println("  "+(i+1)+"/"+lCreatures.size()+" "+lCreature.getFMeasure()+" "+(lCreature.getFeaturesCount()*100.0)/matrix.getColumnCount()+"%");
+		}
+		return lResult;
+	}
+	
+	/**
+	 * Successive halving over the parameter grid: every creature is scored on a coarse grid first, and only creatures
+	 * whose optimistic fitness (coarse F-measure per label plus raceMargin) can still reach the top raceTop get the rest.
+	 * The coarse F-measure is a lower bound of the full one, so dropped creatures keep it as their fitness.
+	 */
+	private void race() throws InterruptedException {
+		boolean[] lCoarse = getCoarseGrid();
+		boolean[] lFine = new boolean[lCoarse.length];
+		int lFineCount = 0;
+		for (int i=0; i<lCoarse.length; i++) {
+			lFine[i] = !lCoarse[i];
+			if (lFine[i]) lFineCount++;
+		}
+		System.out.println("  Racing on "+(lCoarse.length-lFineCount)+" of "+lCoarse.length+" parameter sets");
+		List<Creature> lCandidates = evaluate(population, lCoarse, false);
+		// Fitness of rank raceTop among exact values and lower bounds
+		double[] lLowerBounds = new double[population.size()];
+		int k = 0;
+		for (Creature lCreature:population) {
+			lLowerBounds[k++] = lCreature.getFMeasure();
+		}
+		Arrays.sort(lLowerBounds);
+		double lThreshold = lLowerBounds[Math.max(0, lLowerBounds.length-raceTop)];
+		List<Creature> lSurvivors = new ArrayList<Creature>();
+		for (Creature lCandidate:lCandidates) {
+			double lOptimistic = 0;
+			for (SVMResult lResult:lCandidate.getIndexLabelsBestResults()) {
+				lOptimistic += Math.min(100, lResult.getFMeasure()+raceMargin);
+			}
+			lOptimistic /= lCandidate.getIndexLabelsBestResults().length;
+			if (lOptimistic >= lThreshold) lSurvivors.add(lCandidate);
+		}
+		if (lSurvivors.size() > 0) {
+			System.out.println("  Full grid for "+lSurvivors.size()+" of "+lCandidates.size()+" creatures");
+			evaluate(lSurvivors, lFine, true);
+		}
+		long lSaved = (long)(lCandidates.size()-lSurvivors.size())*lFineCount*indexLabels.length;
+		long lTotal = (long)lCandidates.size()*lCoarse.length*indexLabels.length;
+		String lStatistics = "Racing: "+(lCandidates.size()-lSurvivors.size())+" of "+lCandidates.size()+" evaluated creatures dropped after the coarse grid (threshold "+lThreshold+"), "+lSaved+" of "+lTotal+" trainings saved ("+(lTotal > 0 ? (lSaved*100)/lTotal : 0)+"%)";
+		System.out.println("  "+lStatistics);
+		raceStatistics = lStatistics;
+		events.race(elapsedTurns+1, lCandidates.size(), lCandidates.size()-lSurvivors.size(), lThreshold, lSaved, lTotal);
+	}
+	
+	private boolean[] getCoarseGrid() {
+		// Every RACE_STRIDE-th C value of each kernel function, at least one per kernel function
+		Map<String, List<Integer>> lKernels = new LinkedHashMap<String, List<Integer>>();
+		for (int i=0; i<parameters.size(); i++) {
+			SVMParameters lParameters = parameters.get(i);
+			String lKey = lParameters.getKernel()+" "+lParameters.getD()+" "+lParameters.getGamma();
+			List<Integer> lList = lKernels.get(lKey);
+			if (lList == null) {
+				lList = new ArrayList<Integer>();
+				lKernels.put(lKey, lList);
+			}
+			lList.add(i);
+		}
+		boolean[] lResult = new boolean[parameters.size()];
+		for (List<Integer> lList:lKernels.values()) {
+			Collections.sort(lList, new Comparator<Integer>() {
+				public int compare(Integer a, Integer b) {
+					return Double.compare(parameters.get(a).getTradeOff(), parameters.get(b).getTradeOff());
+				}
+			});
+			int lOffset = Math.min(RACE_STRIDE, lList.size())/2;
+			for (int i=0; i<lList.size(); i++) {
+				if (i % RACE_STRIDE == lOffset) lResult[lList.get(i)] = true;
+			}
+		}
+		return lResult;
 	}
 	
 	private void evaluateAndMutate() throws IOException {
@@ -224,20 +545,40 @@ public class GeneticSVMStudy extends Thread {
 				}
 				lMed += lCreatures.get(i).getFMeasure();
 				lMedCount++;
-				StringBuffer lBuffer = new StringBuffer(lCreatures.get(i).getFMeasure()+"\t"+lCreatures.get(i).toString()+"\t"+(lCreatures.get(i).getFeaturesCount()*100.0)/matrix[0].length+"%");					
+				StringBuilder lBuffer = new StringBuilder(lCreatures.get(i).getFMeasure()+"\t"+lCreatures.get(i).toString()+"\t"+(lCreatures.get(i).getFeaturesCount()*100.0)/matrix.getColumnCount()+"%");					
 				for (int k=0; k<lCreatures.get(i).getIndexLabelsBestResults().length; k++) {
 					lBuffer.append("\n");
 					SVMResult lResult = lCreatures.get(i).getIndexLabelsBestResults()[k];
 					lBuffer.append("\t"+"[ Label = "+lResult.getIndexLabel()+" fMeasure = "+lResult.getFMeasure()+" Precision = "+lResult.getPrecision()+" Recall = "+lResult.getRecall()+" Parameters = "+(lResult.getParameters() != null ? lResult.getParameters().toString():"null")+" ]");
 				}
 				writer.println(lBuffer.toString());
+				events.creature(elapsedTurns+1, i+1, lCreatures.get(i));
 				if (i == 0) {
 					System.out.println("  "+lBuffer.toString());
 				}
 			}
 		}
 		writer.println("Average F-Measure of turn: "+(lMed/lMedCount));
+		if (raceStatistics != null) writer.println(raceStatistics);
 		System.out.println("  Average F-Measure of turn: "+(lMed/lMedCount));
+		writer.println("Evaluations: "+evaluations+" creatures, "+trainings+" trainings");
+		if ((target > 0) && (targetTurn < 0) && (lNewBestF >= target)) {
+			targetTurn = elapsedTurns+1;
+			targetEvaluations = evaluations;
+			targetTrainings = trainings;
+			String lStatistics = "Target F-Measure "+target+" reached in turn "+targetTurn+" after "+evaluations+" creature evaluations ("+trainings+" trainings)";
+			System.out.println("  "+lStatistics);
+			writer.println(lStatistics);
+		}
+		EvaluationMetrics.Snapshot lPhases = metrics.snapshot().minus(turnMetrics);
+		writer.println(lPhases);
+		System.out.println("  "+lPhases);
+		metrics.setLastTurn("Turn "+(elapsedTurns+1)+" "+lPhases);
+		if (scratch != null) {
+			String lScratch = scratch.getStatistics(turnWritten, turnStreamed);
+			writer.println(lScratch);
+			System.out.println("  "+lScratch);
+		}
 		writer.flush();
 		
 		// Sanity Check
@@ -245,6 +586,7 @@ public class GeneticSVMStudy extends Thread {
 			System.err.println("Error: Best F-Measure of current turn worse than of previous turn");
 			writer.flush();
 			writer.close();
+			events.close();
 			System.exit(-1);
 		}
 		else {
@@ -252,31 +594,80 @@ public class GeneticSVMStudy extends Thread {
 		}
 		
 		// Mutate				
+		List<Creature> lNewCreatures = new ArrayList<Creature>();
 		population.clear();
-		// Keep the best 3 as they are
-		for (int i=0; i<Math.min(lCreatures.size(), 3); i++) {
+		// Keep the best as they are
+		for (int i=0; i<Math.min(lCreatures.size(), elite); i++) {
 			population.add(lCreatures.get(i));
 		}
-		for (int i=0; i<lCreatures.size()-3; i++) {
+		for (int i=0; i<lCreatures.size()-elite; i++) {
 			if (lCreatures.get(i).isKeep()) {
 				population.add(lCreatures.get(i));
 			}
 			else {
-				Creature lOffspring = lCreatures.get(i).createOffspring(permutationRate);
+				Creature lOffspring = breed(lCreatures, i);
 				while (population.contains(lOffspring)) {
-					lOffspring = lCreatures.get(i).createOffspring(permutationRate);
+					lOffspring = breed(lCreatures, i);
 				}
 				population.add(lOffspring);
+				lNewCreatures.add(lOffspring);
 			}
 		}
 		int lSpace = maxPopulation - population.size();
 		for (int i=0; i<lSpace; i++) {
-			Creature lOffspring = new Creature(Math.random()+0.001, matrix[0].length);
+			Creature lOffspring = new Creature(random.nextDouble()+0.001, matrix.getColumnCount(), random);
 			while (population.contains(lOffspring)) {
-				lOffspring = lCreatures.get(i).createOffspring(permutationRate);
+				lOffspring = lCreatures.get(i).createOffspring(permutationRate, random);
 			}
 			population.add(lOffspring);
+			lNewCreatures.add(lOffspring);
 		}
+		if ((islandTransport != null) && ((elapsedTurns+1) % migrationInterval == 0)) {
+			migrate(lCreatures, lNewCreatures);
+		}
+		events.turn(elapsedTurns+1, lCreatures.size(), lNewBestF, lMed/lMedCount, System.currentTimeMillis()-turnStart, evaluations, trainings, lPhases);
+		Checkpoint lCheckpoint = new Checkpoint(parameterFile, indexFile, dataFile, featureFile, gridHash, elapsedTurns+1, lastTurnsBestF, random, population);
+		lCheckpoint.setEvaluations(evaluations, trainings);
+		lCheckpoint.setTarget(targetTurn, targetEvaluations, targetTrainings);
+		lCheckpoint.write(getCheckpointFile(outputFile));
+	}
+	
+	private Creature breed(List<Creature> pRanked, int pSlot) {
+		Creature lParent = selection.select(pRanked, pSlot, random);
+		if (crossover == null) return lParent.createOffspring(permutationRate, random);
+		// The mate is chosen like a parent for a random slot, but never the parent itself
+		Creature lMate = lParent;
+		for (int i=0; (i<10) && (lMate == lParent); i++) {
+			lMate = selection.select(pRanked, random.nextInt(pRanked.size()), random);
+		}
+		return lParent.createOffspring(lMate, crossover, permutationRate, random);
+	}
+	
+	/** The checkpoint written next to a report after every turn. */
+	public static File getCheckpointFile(File pReport) {
+		return new File(pReport.getPath()+".checkpoint");
+	}
+	
+	private void migrate(List<Creature> pRanked, List<Creature> pNewCreatures) throws IOException {
+		List<Creature> lEmigrants = new ArrayList<Creature>();
+		for (int i=0; (i<pRanked.size()) && (lEmigrants.size()<migrants); i++) {
+			if (pRanked.get(i).getIndexLabelsBestResults() != null) lEmigrants.add(pRanked.get(i));
+		}
+		islandTransport.emigrate(lEmigrants);
+		// Immigrants take the places of the latest new creatures (random ones first, then offspring of the weakest)
+		int lAccepted = 0;
+		List<Creature> lImmigrants = islandTransport.immigrate();
+		for (Creature lImmigrant:lImmigrants) {
+			if ((pNewCreatures.size() == 0) || (lImmigrant.getLength() != matrix.getColumnCount()) || population.contains(lImmigrant)) continue;
+			population.remove(pNewCreatures.remove(pNewCreatures.size()-1));
+			population.add(lImmigrant);
+			lAccepted++;
+		}
+		String lStatistics = "Migration: sent "+lEmigrants.size()+", received "+lImmigrants.size()+", accepted "+lAccepted;
+		System.out.println("  "+lStatistics);
+		writer.println(lStatistics);
+		writer.flush();
+		events.migration(elapsedTurns+1, lEmigrants.size(), lImmigrants.size(), lAccepted);
 	}
 	
 	private void parseIndex() throws IOException {
@@ -305,41 +696,8 @@ public class GeneticSVMStudy extends Thread {
 	}
 	
 	private void parseMatrix() throws IOException {
-		BufferedReader lReader = new BufferedReader(new InputStreamReader(new FileInputStream(dataFile),"UTF-8"));
-		String lLine = null;
-		List<List<Double>> lEntries = new Vector<List<Double>>();
-		while ((lLine = lReader.readLine()) != null) {
-			lLine = lLine.trim();
-			if (lLine.length() == 0) continue;
-			if (lLine.startsWith("#")) continue;
-			lLine = lLine.replace('\t', ' ');
-			lLine = lLine.replaceAll("[ ]{2,}", " ").trim();
-			String[] lFields = lLine.split(" ");
-			List<Double> lCurrentLine = new Vector<Double>();
-			for (int i=0; i<lFields.length; i++) {
-				if (features == null) {
-					lCurrentLine.add(Double.parseDouble(lFields[i]));
-				}
-				else {
-					if (features.charAt(i) == '1') {
-						lCurrentLine.add(Double.parseDouble(lFields[i]));
-					}
-				}
-			}
-			if (lEntries.size()>0) {
-				if (lEntries.get(0).size() != lCurrentLine.size()) {
-					throw new IOException("Data Matrix contains rows of differing size");
-				}
-			}
-			lEntries.add(lCurrentLine);
-		}
-		lReader.close();
-		matrix = new double[lEntries.size()][lEntries.get(0).size()];
-		for (int i=0; i<lEntries.size(); i++) {
-			for (int k=0; k<lEntries.get(0).size(); k++) {
-				matrix[i][k] = lEntries.get(i).get(k);
-			}
-		}
+		matrix = MatrixLoader.load(dataFile, features, storage);
+		System.out.println("Data Matrix: "+matrix);
 	}
 	
 	private void parseParameters() throws IOException {
@@ -374,21 +732,43 @@ public class GeneticSVMStudy extends Thread {
 		lReader.close();
 	}
 	
+	private long computeGridHash() {
+		// Everything except the feature mask that determines the result of a creature
+		long lResult = FitnessCache.hash(backend);
+		if (foldSplit != null) {
+			lResult = FitnessCache.hash(lResult, foldSplit.getFolds());
+			lResult = FitnessCache.hash(lResult, foldSplit.getSeed());
+		}
+		for (SVMParameters lParameters:parameters) {
+			lResult = FitnessCache.hash(lResult, FitnessCache.hash(lParameters.toString()));
+		}
+		for (int i=0; i<index.length; i++) {
+			lResult = FitnessCache.hash(lResult, index[i]);
+		}
+		lResult = FitnessCache.hash(lResult, matrix.getRowCount());
+		lResult = FitnessCache.hash(lResult, matrix.getColumnCount());
+		// The data file by its identity, as the matrix cache header records it, plus how its columns were selected and stored
+		lResult = FitnessCache.hash(lResult, dataFile.length());
+		lResult = FitnessCache.hash(lResult, dataFile.lastModified());
+		lResult = FitnessCache.hash(lResult, FitnessCache.hash(features != null ? features : ""));
+		lResult = FitnessCache.hash(lResult, FitnessCache.hash(storage));
+		return lResult;
+	}
+	
 	private void prepareDirectories() throws IOException {
-		tmpDirectory.mkdirs();
-		for (int i=0; i<threads; i++) {
-			File lFile = new File(tmpDirectory.getAbsolutePath()+File.separator+Integer.toString(i));
-			lFile.mkdirs();
-		}
+		// Only svm_learn in this process needs scratch files
+		if ((!backend.equals(SVMBackend.SVMLIGHT)) || (coordinatorPort > 0)) return;
+		scratch = new ScratchSpace(tmpDirectory, fifo);
+		System.out.println("Scratch space: "+scratch);
 	}
 	
 	private void createInitialPopulation() throws IOException {
 		if (presetPopulation == null) {
 			population = new HashSet<Creature>();
 			// Ensure that the entire feature-set is included!
-			population.add(new Creature(1, matrix[0].length));
+			population.add(new Creature(1, matrix.getColumnCount(), random));
 			for (int i=0; i<maxPopulation-1; i++) {
-				population.add(new Creature(Math.random()+0.001, matrix[0].length));
+				population.add(new Creature(random.nextDouble()+0.001, matrix.getColumnCount(), random));
 			}
 		}
 		else {
@@ -418,16 +798,42 @@ public class GeneticSVMStudy extends Thread {
 		features = lResult.toString();
 	}
 	
+	
 	private void parseResumeFile() throws IOException {
 		if (!resumeFile.canRead()) {
 			System.err.println("Resume file specified but not accessible");
 			System.exit(-1);
 		}
+		File lCheckpointFile = Checkpoint.isCheckpoint(resumeFile) ? resumeFile : getCheckpointFile(resumeFile);
+		if (Checkpoint.isCheckpoint(lCheckpointFile)) {
+			System.out.println("Resuming from checkpoint "+lCheckpointFile.getPath());
+			checkpoint = Checkpoint.read(lCheckpointFile);
+			if (parameterFile == null) parameterFile = checkpoint.getParameterFile();
+			if (indexFile == null) indexFile = checkpoint.getIndexFile();
+			if (dataFile == null) dataFile = checkpoint.getDataFile();
+			if (featureFile == null) featureFile = checkpoint.getFeatureFile();
+			presetPopulation = checkpoint.getPopulation();
+			return;
+		}
+		// Report without checkpoint: the creatures of the last turn with their results
 		BufferedReader lReader = new BufferedReader(new InputStreamReader(new FileInputStream(resumeFile), "UTF-8"));
 		String lLine = null;
-		StringBuffer lBuffer = new StringBuffer();
+		List<SVMResult> lResults = new ArrayList<SVMResult>();
+		Creature lCreature = null;
 		while ((lLine = lReader.readLine()) != null) {
-			lBuffer.append(lLine+"\n");
+			if ((presetPopulation != null) && lLine.trim().startsWith("[")) {
+				int lLabel = Integer.parseInt(lLine.substring(lLine.indexOf("Label = ")+8, lLine.indexOf(" fMeasure")));
+				double lPrecision = Double.parseDouble(lLine.substring(lLine.indexOf("Precision = ")+12, lLine.indexOf(" Recall")));
+				double lRecall = Double.parseDouble(lLine.substring(lLine.indexOf("Recall = ")+9, lLine.indexOf(" Parameters")));
+				SVMParameters lParameters = SVMParameters.fromString(lLine.substring(lLine.indexOf("Parameters = ")+13, lLine.lastIndexOf("]")-1));
+				lResults.add(new SVMResult(lLabel, lParameters, lPrecision, lRecall));
+				continue;
+			}
+			if (lCreature != null) {
+				lCreature.setIndexLabelsBestResults(lResults.toArray(new SVMResult[lResults.size()]));
+				lCreature.setEvaluated(true);
+				lCreature = null;
+			}
 			if (lLine.startsWith("parameterFile: ")) {
 				parameterFile = new File(lLine.substring(lLine.indexOf(" ")+1));
 			}
@@ -440,45 +846,62 @@ public class GeneticSVMStudy extends Thread {
 			else if (lLine.startsWith("featureFile: ")) {
 				featureFile = new File(lLine.substring(lLine.indexOf(" ")+1));
 			}
-		}
-		lReader.close();
-		String lString = lBuffer.toString();
-		if (lString.indexOf("Turn: ")>-1) {
-			presetPopulation = new Vector<Creature>();
-			lString = lString.substring(lString.lastIndexOf("Turn: "));
-			String[] lFields = lString.split("\n");
-			for (int i=0; i<lFields.length; i++) {
-				if (lFields[i].length()>0) {
-					if (Character.isDigit(lFields[i].charAt(0))) {
-						lBuffer = new StringBuffer();
-						String lFoo = lFields[i].split("\t")[1];
-						for (int k=0; k<lFoo.length(); k++) {
-							if ((lFoo.charAt(k)=='0') || (lFoo.charAt(k)=='1')) {
-								lBuffer.append(lFoo.charAt(k));
-							}
-						}
-						Creature lCreature = new Creature(lBuffer.toString());
-						presetPopulation.add(lCreature);
-						int k = 0;
-						for (k=i+1; k<lFields.length; k++) {
-							if (!lFields[k].trim().startsWith("[")) {
-								break;
-							}
-						}
-						SVMResult[] lResults = new SVMResult[k-i-1];
-						for (int m=i+1; m<k; m++) {
-							int lLabel = Integer.parseInt(lFields[m].substring(lFields[m].indexOf("Label = ")+8, lFields[m].indexOf(" fMeasure")));
-							double lPrecision = Double.parseDouble(lFields[m].substring(lFields[m].indexOf("Precision = ")+12, lFields[m].indexOf(" Recall")));
-							double lRecall = Double.parseDouble(lFields[m].substring(lFields[m].indexOf("Recall = ")+9, lFields[m].indexOf(" Parameters")));
-							SVMParameters lParameters = SVMParameters.fromString(lFields[m].substring(lFields[m].indexOf("Parameters = ")+13, lFields[m].lastIndexOf("]")-1));
-							lResults[m-(i+1)] = new SVMResult(lLabel, lParameters, lPrecision, lRecall);
-						}
+			else if (lLine.startsWith("Turn: ")) {
+				presetPopulation = new ArrayList<Creature>();
+			}
+			else if ((presetPopulation != null) && (lLine.length() > 0) && Character.isDigit(lLine.charAt(0))) {
+				StringBuilder lBuffer = new StringBuilder();
+				String lFeatures = lLine.split("\t")[1];
+				for (int k=0; k<lFeatures.length(); k++) {
+					if ((lFeatures.charAt(k)=='0') || (lFeatures.charAt(k)=='1')) {
+						lBuffer.append(lFeatures.charAt(k));
 					}
 				}
+				lCreature = new Creature(lBuffer.toString());
+				presetPopulation.add(lCreature);
+				lResults.clear();
 			}
 		}
-		if (presetPopulation.size() == 0) {
+		lReader.close();
+		if (lCreature != null) {
+			lCreature.setIndexLabelsBestResults(lResults.toArray(new SVMResult[lResults.size()]));
+			lCreature.setEvaluated(true);
+		}
+		if ((presetPopulation != null) && (presetPopulation.size() == 0)) {
 			presetPopulation = null;
 		}
 	}
+	
+	/**
+	 * Maps the parameters of resumed results onto the parameter grid of this run, so ties are broken in grid order.
+	 * Results computed for another grid or other data are dropped and their creatures evaluated again.
+	 */
+	private void restoreResults() {
+		Map<String, SVMParameters> lGrid = new HashMap<String, SVMParameters>();
+		for (SVMParameters lParameters:parameters) {
+			lGrid.put(lParameters.toString(), lParameters);
+		}
+		boolean lSameGrid = (checkpoint == null) || (checkpoint.getGridHash() == gridHash);
+		if (!lSameGrid) System.err.println("Warning: Parameters, index or data changed since the checkpoint, evaluating all creatures again");
+		int lRestored = 0;
+		for (Creature lCreature:presetPopulation) {
+			SVMResult[] lResults = lCreature.getIndexLabelsBestResults();
+			boolean lValid = lSameGrid && (lResults != null) && (lResults.length == indexLabels.length);
+			for (int i=0; lValid && (i<lResults.length); i++) {
+				lValid = lResults[i].getIndexLabel() == indexLabels[i];
+				if (lResults[i].getParameters() == null) continue;
+				SVMParameters lParameters = lGrid.get(lResults[i].getParameters().toString());
+				if (lParameters == null) lValid = false;
+				lResults[i].setParameters(lParameters);
+			}
+			if (!lValid) {
+				lCreature.setIndexLabelsBestResults(null);
+				lCreature.setEvaluated(false);
+			}
+			else if (lCreature.isEvaluated()) {
+				lRestored++;
+			}
+		}
+		System.out.println("Restored results of "+lRestored+" of "+presetPopulation.size()+" creatures");
+	}
 }
@@ -0,0 +1,61 @@
+package org.geneticsvm;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+/**
+ * Exchange of creatures between the islands of an island-model study. The islands form a ring,
+ * every island sends its migrants to the next one and picks up whatever has arrived from the previous one.
+ */
+public interface IslandTransport {
+
+	public static final String QUEUE = "queue";
+	public static final String DIRECTORY = "dir:";
+	public static final String TCP = "tcp:";
+	
+	public void emigrate(List<Creature> pMigrants) throws IOException;
+	
+	/** Creatures received since the last call, never blocks. */
+	public List<Creature> immigrate() throws IOException;
+	
+	public void close() throws IOException;
+	
+	/**
+	 * @param pSpec dir:&lt;shared directory&gt; or tcp:&lt;host:port&gt;,&lt;host:port&gt;,... with one address per island
+	 */
+	public static IslandTransport create(String pSpec, int pIsland, int pIslands) throws IOException {
+		if (pSpec.startsWith(DIRECTORY)) {
+			return new DirectoryIslandTransport(new File(pSpec.substring(DIRECTORY.length())), pIsland, pIslands);
+		}
+		if (pSpec.startsWith(TCP)) {
+			String[] lAddresses = pSpec.substring(TCP.length()).split(",");
+			if (lAddresses.length != pIslands) throw new IOException("Expected "+pIslands+" addresses in "+pSpec);
+			return new SocketIslandTransport(parseAddress(lAddresses[pIsland]), parseAddress(lAddresses[(pIsland+1) % pIslands]));
+		}
+		throw new IOException("Unknown island transport: "+pSpec);
+	}
+	
+	static InetSocketAddress parseAddress(String pAddress) {
+		int lColon = pAddress.lastIndexOf(':');
+		return new InetSocketAddress(pAddress.substring(0, lColon), Integer.parseInt(pAddress.substring(lColon+1)));
+	}
+	
+	static void write(DataOutputStream pOutput, List<Creature> pMigrants) throws IOException {
+		pOutput.writeInt(pMigrants.size());
+		for (Creature lCreature:pMigrants) {
+			pOutput.writeUTF(lCreature.getFeatures());
+		}
+		pOutput.flush();
+	}
+	
+	static List<Creature> read(DataInputStream pInput) throws IOException {
+		int lCount = pInput.readInt();
+		List<Creature> lResult = new ArrayList<Creature>(lCount);
+		for (int i=0; i<lCount; i++) {
+			lResult.add(new Creature(pInput.readUTF()));
+		}
+		return lResult;
+	}
+	
+}
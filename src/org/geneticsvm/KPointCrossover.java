@@ -0,0 +1,46 @@
+package org.geneticsvm;
+
+import java.util.*;
+
+/** Cuts both masks at the same k random positions and takes the segments alternately from each parent. */
+public class KPointCrossover implements Crossover {
+
+	private int points;
+	
+	public KPointCrossover(int pPoints) {
+		points = pPoints;
+	}
+	
+	public long[] cross(long[] pFirst, long[] pSecond, int pLength, Random pRandom) {
+		// Distinct cut positions in [1, pLength-1]
+		TreeSet<Integer> lCuts = new TreeSet<Integer>();
+		int lPoints = Math.min(points, pLength-1);
+		while (lCuts.size() < lPoints) {
+			lCuts.add(1+pRandom.nextInt(pLength-1));
+		}
+		long[] lFromSecond = new long[pFirst.length];
+		Iterator<Integer> lIterator = lCuts.iterator();
+		while (lIterator.hasNext()) {
+			int lFrom = lIterator.next();
+			int lTo = lIterator.hasNext() ? lIterator.next() : pLength;
+			setRange(lFromSecond, lFrom, lTo);
+		}
+		long[] lResult = new long[pFirst.length];
+		for (int i=0; i<lResult.length; i++) {
+			lResult[i] = (pFirst[i] & ~lFromSecond[i]) | (pSecond[i] & lFromSecond[i]);
+		}
+		return lResult;
+	}
+	
+	static void setRange(long[] pBits, int pFrom, int pTo) {
+		for (int i=pFrom; i<pTo; ) {
+			int lWord = i >>> 6;
+			int lEnd = Math.min(pTo, (lWord+1) << 6);
+			int lCount = lEnd-i;
+			long lMask = lCount == 64 ? -1L : ((1L << lCount)-1) << (i & 63);
+			pBits[lWord] |= lMask;
+			i = lEnd;
+		}
+	}
+	
+}
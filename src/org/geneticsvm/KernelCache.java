@@ -0,0 +1,142 @@
+package org.geneticsvm;
+
+import java.util.*;
+
+public class KernelCache {
+
+	// Rounding errors add up over generations, so recompute after this many patches
+	public static final int MAX_PATCHES = 8;
+
+	private long capacity;
+	private double maxPatchFraction;
+	private long size = 0;
+	private LinkedHashMap<Key, KernelMatrix> entries = new LinkedHashMap<Key, KernelMatrix>(16, 0.75f, true);
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long patched = 0;
+	
+	public KernelCache(long pCapacity) {
+		this(pCapacity, 0);
+	}
+	
+	/**
+	 * @param pMaxPatchFraction dot products of an offspring are patched from its parent's when at most
+	 * this fraction of its features differ (0 = always compute them from scratch)
+	 */
+	public KernelCache(long pCapacity, double pMaxPatchFraction) {
+		capacity = pCapacity;
+		maxPatchFraction = pMaxPatchFraction;
+	}
+	
+	private static class Key {
+		
+		int[] rows;
+		int[] columns;
+		int kernel;
+		double parameter;
+		int hashCode;
+		
+		Key(int[] pRows, int[] pColumns, SVMParameters pParameters) {
+			rows = pRows;
+			columns = pColumns;
+			// Only the parameters that change the kernel function, not the trade-off
+			kernel = pParameters == null ? SVMParameters.KERNEL_LIN : pParameters.getKernel();
+			if (kernel == SVMParameters.KERNEL_POL) parameter = pParameters.getD();
+			if (kernel == SVMParameters.KERNEL_RBF) parameter = pParameters.getGamma();
+			hashCode = 31*(31*Arrays.hashCode(rows)+Arrays.hashCode(columns))+kernel*17+Double.hashCode(parameter);
+		}
+		
+		public int hashCode() {
+			return hashCode;
+		}
+		
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) return false;
+			Key lKey = (Key)o;
+			return (lKey.hashCode == hashCode) && (lKey.kernel == kernel) && (lKey.parameter == parameter) && Arrays.equals(lKey.columns, columns) && Arrays.equals(lKey.rows, rows);
+		}
+		
+	}
+	
+	public KernelMatrix get(TrainingSet pTrainingSet, SVMParameters pParameters) {
+		Key lKey = new Key(pTrainingSet.getRows(), pTrainingSet.getColumns(), pParameters);
+		KernelMatrix lResult = lookup(lKey);
+		if (lResult != null) return lResult;
+		// The dot products are the expensive part and shared by all kernels of the same training set
+		Key lDotKey = new Key(pTrainingSet.getRows(), pTrainingSet.getColumns(), null);
+		KernelMatrix lDotProducts = lKey.kernel == SVMParameters.KERNEL_LIN ? null : lookup(lDotKey);
+		if (lDotProducts == null) {
+			lDotProducts = patch(pTrainingSet);
+			if (lDotProducts == null) lDotProducts = KernelMatrix.computeDotProducts(pTrainingSet);
+			store(lDotKey, lDotProducts);
+		}
+		if (lKey.kernel == SVMParameters.KERNEL_LIN) return lDotProducts;
+		lResult = lDotProducts.derive(pParameters);
+		store(lKey, lResult);
+		return lResult;
+	}
+	
+	private KernelMatrix patch(TrainingSet pTrainingSet) {
+		int[] lParentColumns = pTrainingSet.getParentColumns();
+		if ((maxPatchFraction <= 0) || (lParentColumns == null)) return null;
+		KernelMatrix lParent;
+		synchronized (this) {
+			// Peek without touching the statistics, a missing parent is not a cache miss
+			lParent = entries.get(new Key(pTrainingSet.getRows(), lParentColumns, null));
+		}
+		if ((lParent == null) || (lParent.getPatches() >= MAX_PATCHES)) return null;
+		// Both column lists are sorted, so the symmetric difference is a merge
+		int[] lColumns = pTrainingSet.getColumns();
+		int lMaxDelta = (int)(maxPatchFraction*lColumns.length);
+		int[] lAdded = new int[lColumns.length];
+		int[] lRemoved = new int[lParentColumns.length];
+		int lAddedCount = 0;
+		int lRemovedCount = 0;
+		int i = 0;
+		int k = 0;
+		while ((i < lColumns.length) || (k < lParentColumns.length)) {
+			if ((k == lParentColumns.length) || ((i < lColumns.length) && (lColumns[i] < lParentColumns[k]))) {
+				lAdded[lAddedCount++] = lColumns[i++];
+			}
+			else if ((i == lColumns.length) || (lParentColumns[k] < lColumns[i])) {
+				lRemoved[lRemovedCount++] = lParentColumns[k++];
+			}
+			else {
+				i++;
+				k++;
+			}
+			if (lAddedCount+lRemovedCount > lMaxDelta) return null;
+		}
+		KernelMatrix lResult = lParent.patch(pTrainingSet, Arrays.copyOf(lAdded, lAddedCount), Arrays.copyOf(lRemoved, lRemovedCount));
+		synchronized (this) {
+			patched++;
+		}
+		return lResult;
+	}
+	
+	private synchronized KernelMatrix lookup(Key pKey) {
+		KernelMatrix lResult = entries.get(pKey);
+		if (lResult != null) hits++;
+		else misses++;
+		return lResult;
+	}
+	
+	private synchronized void store(Key pKey, KernelMatrix pMatrix) {
+		if (pMatrix.getBytes() > capacity) return;
+		KernelMatrix lOld = entries.put(pKey, pMatrix);
+		if (lOld != null) size -= lOld.getBytes();
+		size += pMatrix.getBytes();
+		Iterator<KernelMatrix> lIterator = entries.values().iterator();
+		while ((size > capacity) && lIterator.hasNext()) {
+			size -= lIterator.next().getBytes();
+			lIterator.remove();
+			evictions++;
+		}
+	}
+	
+	public synchronized String getStatistics() {
+		return "Kernel Cache: "+hits+" hits, "+misses+" misses, "+evictions+" evictions, "+patched+" patched from parents, "+entries.size()+" matrices using "+(size/1024)+"KB of "+(capacity/1024)+"KB";
+	}
+	
+}
@@ -0,0 +1,145 @@
+package org.geneticsvm;
+
+import java.nio.*;
+import java.util.*;
+
+public class KernelMatrix {
+
+	private int rows;
+	private DoubleBuffer doubles;
+	private FloatBuffer floats;
+	private int patches = 0;
+	
+	private KernelMatrix(int pRows, boolean pDoublePrecision) {
+		rows = pRows;
+		// Symmetric, so only the lower triangle is kept (off-heap)
+		long lEntries = ((long)pRows*(pRows+1))/2;
+		if (lEntries*(pDoublePrecision ? 8 : 4) > Integer.MAX_VALUE) throw new IllegalArgumentException("Kernel matrix too large: "+pRows+" rows");
+		ByteBuffer lBuffer = ByteBuffer.allocateDirect((int)lEntries*(pDoublePrecision ? 8 : 4)).order(ByteOrder.nativeOrder());
+		if (pDoublePrecision) {
+			doubles = lBuffer.asDoubleBuffer();
+		}
+		else {
+			floats = lBuffer.asFloatBuffer();
+		}
+	}
+	
+	/** Dot products of all row pairs, from the non-zero values of each row only. */
+	public static KernelMatrix computeDotProducts(TrainingSet pTrainingSet) {
+		int lRows = pTrainingSet.getRowCount();
+		int lColumns = pTrainingSet.getColumnCount();
+		int[][] lPositions = new int[lRows][];
+		double[][] lValues = new double[lRows][];
+		int[] lRowPositions = new int[lColumns];
+		double[] lRowValues = new double[lColumns];
+		for (int i=0; i<lRows; i++) {
+			int lCount = pTrainingSet.project(i, lRowPositions, lRowValues);
+			lPositions[i] = Arrays.copyOf(lRowPositions, lCount);
+			lValues[i] = Arrays.copyOf(lRowValues, lCount);
+		}
+		// Kept in double precision, all other kernels are derived from it
+		KernelMatrix lResult = new KernelMatrix(lRows, true);
+		for (int i=0; i<lRows; i++) {
+			for (int k=0; k<=i; k++) {
+				lResult.set(i, k, dot(lPositions[i], lValues[i], lPositions[k], lValues[k]));
+			}
+		}
+		return lResult;
+	}
+	
+	/** Merge of two rows by their ascending positions. */
+	private static double dot(int[] pPositions1, double[] pValues1, int[] pPositions2, double[] pValues2) {
+		double lResult = 0;
+		int i = 0;
+		int k = 0;
+		while ((i < pPositions1.length) && (k < pPositions2.length)) {
+			if (pPositions1[i] < pPositions2[k]) {
+				i++;
+			}
+			else if (pPositions1[i] > pPositions2[k]) {
+				k++;
+			}
+			else {
+				lResult += pValues1[i++]*pValues2[k++];
+			}
+		}
+		return lResult;
+	}
+	
+	/**
+	 * Dot products of the same rows after adding and removing a few columns, in O(n^2*delta)
+	 * instead of O(n^2*d). The columns are indices into the full matrix.
+	 */
+	public KernelMatrix patch(TrainingSet pTrainingSet, int[] pAdded, int[] pRemoved) {
+		DataMatrix lMatrix = pTrainingSet.getMatrix();
+		int[] lRows = pTrainingSet.getRows();
+		int lDelta = pAdded.length+pRemoved.length;
+		double[][] lData = new double[rows][lDelta];
+		for (int i=0; i<rows; i++) {
+			for (int m=0; m<pAdded.length; m++) {
+				lData[i][m] = lMatrix.get(lRows[i], pAdded[m]);
+			}
+			for (int m=0; m<pRemoved.length; m++) {
+				lData[i][pAdded.length+m] = lMatrix.get(lRows[i], pRemoved[m]);
+			}
+		}
+		KernelMatrix lResult = new KernelMatrix(rows, true);
+		lResult.patches = patches+1;
+		for (int i=0; i<rows; i++) {
+			for (int k=0; k<=i; k++) {
+				double lSum = get(i, k);
+				for (int m=0; m<pAdded.length; m++) {
+					lSum += lData[i][m]*lData[k][m];
+				}
+				for (int m=pAdded.length; m<lDelta; m++) {
+					lSum -= lData[i][m]*lData[k][m];
+				}
+				lResult.set(i, k, lSum);
+			}
+		}
+		return lResult;
+	}
+	
+	/** Number of patches applied since the last full computation. */
+	public int getPatches() {
+		return patches;
+	}
+	
+	public KernelMatrix derive(SVMParameters pParameters) {
+		KernelMatrix lResult = new KernelMatrix(rows, false);
+		for (int i=0; i<rows; i++) {
+			for (int k=0; k<=i; k++) {
+				lResult.set(i, k, SMOBackend.kernel(pParameters, get(i, k), get(i, i), get(k, k)));
+			}
+		}
+		return lResult;
+	}
+	
+	private static int offset(int pRow, int pColumn) {
+		return pRow >= pColumn ? ((pRow*(pRow+1)) >>> 1)+pColumn : ((pColumn*(pColumn+1)) >>> 1)+pRow;
+	}
+	
+	public double get(int pRow, int pColumn) {
+		int lOffset = offset(pRow, pColumn);
+		return doubles != null ? doubles.get(lOffset) : floats.get(lOffset);
+	}
+	
+	void set(int pRow, int pColumn, double pValue) {
+		int lOffset = offset(pRow, pColumn);
+		if (doubles != null) {
+			doubles.put(lOffset, pValue);
+		}
+		else {
+			floats.put(lOffset, (float)pValue);
+		}
+	}
+	
+	public int getRows() {
+		return rows;
+	}
+	
+	public long getBytes() {
+		return doubles != null ? 8L*doubles.capacity() : 4L*floats.capacity();
+	}
+	
+}
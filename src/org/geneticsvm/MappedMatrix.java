@@ -0,0 +1,101 @@
+package org.geneticsvm;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * Rows read in place from the memory-mapped matrix cache (.bin) of MatrixLoader, outside the heap. All threads
+ * share the same pages, and the page cache of the operating system decides which rows stay resident.
+ */
+public class MappedMatrix implements DataMatrix {
+
+	private int rows;
+	private int fileColumns;
+	private int[] columns;
+	private int rowsPerChunk;
+	private DoubleBuffer[] chunks;
+	private double density = -1;
+
+	/** Maps the values of a matrix cache, restricted to the ascending pColumns of the file, null for all. */
+	MappedMatrix(FileChannel pChannel, int pRows, int pColumns, int[] pSelected) throws IOException {
+		rows = pRows;
+		fileColumns = pColumns;
+		columns = pSelected;
+		// Chunks of whole rows, a single mapping is limited to 2GB
+		long lRowBytes = (long)pColumns*8;
+		rowsPerChunk = (int)Math.max(1, Integer.MAX_VALUE/Math.max(1, lRowBytes));
+		chunks = new DoubleBuffer[(int)(((long)pRows+rowsPerChunk-1)/rowsPerChunk)];
+		for (int c=0; c<chunks.length; c++) {
+			long lFirst = (long)c*rowsPerChunk;
+			int lCount = (int)Math.min(rowsPerChunk, pRows-lFirst);
+			chunks[c] = pChannel.map(FileChannel.MapMode.READ_ONLY, MatrixLoader.HEADER_SIZE+lFirst*lRowBytes, lCount*lRowBytes).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+		}
+	}
+
+	public int getRowCount() {
+		return rows;
+	}
+
+	public int getColumnCount() {
+		return columns != null ? columns.length : fileColumns;
+	}
+
+	private int column(int pColumn) {
+		return columns != null ? columns[pColumn] : pColumn;
+	}
+
+	// Absolute gets only, they leave the buffers' positions alone and are safe across threads
+	public double get(int pRow, int pColumn) {
+		return chunks[pRow/rowsPerChunk].get((pRow%rowsPerChunk)*fileColumns+column(pColumn));
+	}
+
+	public void getRow(int pRow, double[] pTarget) {
+		DoubleBuffer lChunk = chunks[pRow/rowsPerChunk];
+		int lOffset = (pRow%rowsPerChunk)*fileColumns;
+		for (int k=0; k<getColumnCount(); k++) {
+			pTarget[k] = lChunk.get(lOffset+column(k));
+		}
+	}
+
+	public int project(int pRow, int[] pColumns, int[] pPositions, double[] pValues) {
+		DoubleBuffer lChunk = chunks[pRow/rowsPerChunk];
+		int lOffset = (pRow%rowsPerChunk)*fileColumns;
+		int lResult = 0;
+		for (int m=0; m<pColumns.length; m++) {
+			double lValue = lChunk.get(lOffset+column(pColumns[m]));
+			if (lValue != 0) {
+				pPositions[lResult] = m;
+				pValues[lResult++] = lValue;
+			}
+		}
+		return lResult;
+	}
+
+	/** Reads the whole mapping once. */
+	public synchronized double getDensity() {
+		if (density < 0) {
+			long lNonZeros = 0;
+			double[] lRow = new double[getColumnCount()];
+			for (int i=0; i<rows; i++) {
+				getRow(i, lRow);
+				for (double lValue:lRow) {
+					if (lValue != 0) lNonZeros++;
+				}
+			}
+			long lCells = (long)rows*getColumnCount();
+			density = lCells > 0 ? lNonZeros/(double)lCells : 0;
+		}
+		return density;
+	}
+
+	/** Bytes mapped, none of them on the heap. */
+	public long getBytes() {
+		return 8L*rows*fileColumns;
+	}
+
+	public String toString() {
+		return MatrixLoader.describe(this, "mapped");
+	}
+
+}
@@ -0,0 +1,488 @@
+package org.geneticsvm;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+public class MatrixLoader {
+
+	public static final long MAGIC = 0x47535653564d4d31L; // "GSVSVMM1"
+	public static final int HEADER_SIZE = 40;
+	public static final String SIDECAR_SUFFIX = ".bin";
+	
+	private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+	
+	/** Matrices with fewer non-zero values than this fraction are kept as sparse rows. */
+	public static final double SPARSE_DENSITY = 0.25;
+	
+	// Storage of matrices that are not sparse
+	public static final String DOUBLE = "double";
+	public static final String FLOAT = "float";
+	public static final String INT16 = "int16";
+	// Any matrix, mapped from the matrix cache instead of loaded into the heap
+	public static final String MAPPED = "mapped";
+	
+	// Non-zero values only, as compressed sparse rows
+	private int rows;
+	private int columns;
+	private int[] rowOffsets = new int[1 << 10];
+	private int[] valueColumns = new int[1 << 16];
+	private double[] values = new double[1 << 16];
+	private int size = 0;
+	private int currentColumn = 0;
+	// Set while parsing straight into a matrix cache
+	private FileChannel output;
+	private ByteBuffer outputBuffer;
+	
+	public static DataMatrix load(File pFile, String pFeatures) throws IOException {
+		return load(pFile, pFeatures, DOUBLE);
+	}
+	
+	/**
+	 * Loads the matrix restricted to the features (null for all), storing it as DOUBLE, FLOAT or INT16 unless sparse,
+	 * or MAPPED from the matrix cache, which is then parsed without holding the values.
+	 */
+	public static DataMatrix load(File pFile, String pFeatures, String pStorage) throws IOException {
+		if (!isStorage(pStorage)) throw new IllegalArgumentException("Unknown matrix storage: "+pStorage);
+		File lSidecar = getSidecar(pFile);
+		if (isSidecarValid(pFile, lSidecar)) {
+			try {
+				return pStorage.equals(MAPPED) ? mapSidecar(lSidecar, pFeatures) : loadSidecar(lSidecar, pFeatures, pStorage);
+			}
+			catch (IOException e) {
+				System.err.println("Ignoring unreadable matrix cache "+lSidecar.getAbsolutePath()+": "+e.getMessage());
+			}
+		}
+		MatrixLoader lLoader = new MatrixLoader();
+		if (pStorage.equals(MAPPED)) {
+			File lParsed = lLoader.parseSidecar(pFile, lSidecar);
+			try {
+				return mapSidecar(lParsed, pFeatures);
+			}
+			finally {
+				// A mapping outlives its file
+				if (!lParsed.equals(lSidecar)) lParsed.delete();
+			}
+		}
+		lLoader.parse(pFile);
+		try {
+			lLoader.writeSidecar(pFile, lSidecar);
+		}
+		catch (IOException e) {
+			System.err.println("Could not write matrix cache "+lSidecar.getAbsolutePath()+": "+e.getMessage());
+		}
+		return lLoader.toMatrix(pFeatures, pStorage);
+	}
+	
+	public static boolean isStorage(String pStorage) {
+		return pStorage.equals(DOUBLE) || pStorage.equals(FLOAT) || pStorage.equals(INT16) || pStorage.equals(MAPPED);
+	}
+	
+	/** Number of values of a matrix in one array. */
+	static int getCells(int pRows, int pColumns) {
+		long lResult = (long)pRows*pColumns;
+		if (lResult > Integer.MAX_VALUE-8) throw new IllegalArgumentException("Data matrix too large for one array: "+pRows+"x"+pColumns);
+		return (int)lResult;
+	}
+	
+	/** Size, layout and memory of a matrix for the log. */
+	static String describe(DataMatrix pMatrix, String pLayout) {
+		return String.format(Locale.US, "%dx%d %s, %.1f%% non-zero, %.2fMB", pMatrix.getRowCount(), pMatrix.getColumnCount(), pLayout, pMatrix.getDensity()*100, pMatrix.getBytes()/(1024.0*1024.0));
+	}
+	
+	public static File getSidecar(File pFile) {
+		return new File(pFile.getAbsolutePath()+SIDECAR_SUFFIX);
+	}
+	
+	private static boolean isSidecarValid(File pFile, File pSidecar) throws IOException {
+		if (!pSidecar.canRead()) return false;
+		DataInputStream lInput = new DataInputStream(new BufferedInputStream(new FileInputStream(pSidecar), HEADER_SIZE));
+		try {
+			ByteBuffer lHeader = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			lInput.readFully(lHeader.array());
+			if (lHeader.getLong(0) != MAGIC) return false;
+			long lSize = (long)lHeader.getInt(12)*lHeader.getInt(16)*8;
+			return (lHeader.getLong(24) == pFile.length()) && (lHeader.getLong(32) == pFile.lastModified()) && (pSidecar.length() == HEADER_SIZE+lSize);
+		}
+		catch (EOFException e) {
+			return false;
+		}
+		finally {
+			lInput.close();
+		}
+	}
+	
+	private static int[] getColumns(String pFeatures, int pColumns) throws IOException {
+		if (pFeatures == null) return null;
+		if (pFeatures.length() != pColumns) {
+			throw new IOException("Feature File contains "+pFeatures.length()+" features but Data Matrix has "+pColumns+" columns");
+		}
+		return new Creature(pFeatures).getFeatureIndices();
+	}
+	
+	private static ByteBuffer readHeader(FileChannel pChannel) throws IOException {
+		ByteBuffer lResult = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		while (lResult.hasRemaining()) {
+			if (pChannel.read(lResult) < 0) throw new EOFException();
+		}
+		return lResult;
+	}
+	
+	private static void putHeader(ByteBuffer pBuffer, int pRows, int pColumns, File pFile) {
+		pBuffer.putLong(MAGIC);
+		pBuffer.putInt(1);
+		pBuffer.putInt(pRows);
+		pBuffer.putInt(pColumns);
+		pBuffer.putInt(0);
+		pBuffer.putLong(pFile.length());
+		pBuffer.putLong(pFile.lastModified());
+	}
+	
+	private static DataMatrix mapSidecar(File pSidecar, String pFeatures) throws IOException {
+		FileChannel lChannel = FileChannel.open(pSidecar.toPath(), StandardOpenOption.READ);
+		try {
+			// The mappings stay valid after closing the channel
+			ByteBuffer lHeader = readHeader(lChannel);
+			int lColumns = lHeader.getInt(16);
+			return new MappedMatrix(lChannel, lHeader.getInt(12), lColumns, getColumns(pFeatures, lColumns));
+		}
+		finally {
+			lChannel.close();
+		}
+	}
+	
+	private static DataMatrix loadSidecar(File pSidecar, String pFeatures, String pStorage) throws IOException {
+		FileChannel lChannel = FileChannel.open(pSidecar.toPath(), StandardOpenOption.READ);
+		try {
+			ByteBuffer lHeader = readHeader(lChannel);
+			int lRows = lHeader.getInt(12);
+			int lColumns = lHeader.getInt(16);
+			int[] lSelected = getColumns(pFeatures, lColumns);
+			MatrixLoader lLoader = new MatrixLoader();
+			// Map in chunks of whole rows, a single mapping is limited to 2GB
+			long lRowBytes = (long)lColumns*8;
+			int lRowsPerChunk = (int)Math.max(1, Integer.MAX_VALUE/Math.max(1, lRowBytes));
+			for (int lFirst=0; lFirst<lRows; lFirst+=lRowsPerChunk) {
+				int lCount = Math.min(lRowsPerChunk, lRows-lFirst);
+				DoubleBuffer lBuffer = lChannel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE+lFirst*lRowBytes, lCount*lRowBytes).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+				for (int i=0; i<lCount; i++) {
+					int lOffset = i*lColumns;
+					if (lSelected == null) {
+						for (int k=0; k<lColumns; k++) {
+							lLoader.add(lBuffer.get(lOffset+k));
+						}
+					}
+					else {
+						for (int k=0; k<lSelected.length; k++) {
+							lLoader.add(lBuffer.get(lOffset+lSelected[k]));
+						}
+					}
+					lLoader.endRow();
+				}
+			}
+			return lLoader.toMatrix(pStorage);
+		}
+		finally {
+			lChannel.close();
+		}
+	}
+	
+	private void writeSidecar(File pFile, File pSidecar) throws IOException {
+		File lTemp = createTemp(pSidecar);
+		FileChannel lChannel = FileChannel.open(lTemp.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer lBuffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			putHeader(lBuffer, rows, columns, pFile);
+			// Dense, zeros included
+			for (int i=0; i<rows; i++) {
+				int lNext = rowOffsets[i];
+				for (int k=0; k<columns; k++) {
+					if (lBuffer.remaining() < 8) {
+						lBuffer.flip();
+						while (lBuffer.hasRemaining()) lChannel.write(lBuffer);
+						lBuffer.clear();
+					}
+					if ((lNext < rowOffsets[i+1]) && (valueColumns[lNext] == k)) {
+						lBuffer.putDouble(values[lNext++]);
+					}
+					else {
+						lBuffer.putDouble(0);
+					}
+				}
+			}
+			lBuffer.flip();
+			while (lBuffer.hasRemaining()) lChannel.write(lBuffer);
+		}
+		catch (IOException e) {
+			lTemp.delete();
+			throw e;
+		}
+		finally {
+			lChannel.close();
+		}
+		if (!install(pFile, lTemp, pSidecar)) {
+			lTemp.delete();
+			throw new IOException("Could not replace "+pSidecar.getAbsolutePath());
+		}
+	}
+	
+	/** Temporary file of its own next to the matrix cache, concurrent loaders (islands) each write their own. */
+	private static File createTemp(File pSidecar) throws IOException {
+		return Files.createTempFile(pSidecar.getAbsoluteFile().getParentFile().toPath(), pSidecar.getName(), ".tmp").toFile();
+	}
+	
+	/**
+	 * Renames the written cache into place. If that fails but another loader installed an up to date cache
+	 * meanwhile, the temporary file is deleted and that one is used; false if there is no valid cache.
+	 */
+	private static boolean install(File pFile, File pTemp, File pSidecar) throws IOException {
+		try {
+			Files.move(pTemp.toPath(), pSidecar.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return true;
+		}
+		catch (IOException e) {
+			if (!isSidecarValid(pFile, pSidecar)) return false;
+			pTemp.delete();
+			return true;
+		}
+	}
+	
+	/**
+	 * Parses the text matrix straight into the matrix cache, the header is written once the size is known.
+	 * Returns the cache, or the temporary file if it could not be installed as the cache.
+	 */
+	private File parseSidecar(File pFile, File pSidecar) throws IOException {
+		File lTemp = createTemp(pSidecar);
+		output = FileChannel.open(lTemp.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		boolean lComplete = false;
+		try {
+			outputBuffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			outputBuffer.position(HEADER_SIZE);
+			parse(pFile);
+			flushOutput();
+			ByteBuffer lHeader = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			putHeader(lHeader, rows, columns, pFile);
+			lHeader.flip();
+			while (lHeader.hasRemaining()) output.write(lHeader, lHeader.position());
+			lComplete = true;
+		}
+		finally {
+			output.close();
+			output = null;
+			if (!lComplete) lTemp.delete();
+		}
+		if (install(pFile, lTemp, pSidecar)) return pSidecar;
+		System.err.println("Could not write matrix cache "+pSidecar.getAbsolutePath()+", mapping "+lTemp.getAbsolutePath()+" instead");
+		return lTemp;
+	}
+	
+	private void flushOutput() throws IOException {
+		outputBuffer.flip();
+		while (outputBuffer.hasRemaining()) output.write(outputBuffer);
+		outputBuffer.clear();
+	}
+	
+	private DataMatrix toMatrix(String pFeatures, String pStorage) throws IOException {
+		int[] lSelected = getColumns(pFeatures, columns);
+		if (lSelected != null) select(lSelected);
+		return toMatrix(pStorage);
+	}
+	
+	/** Drops all columns but the selected ones, which must be ascending. */
+	private void select(int[] pSelected) {
+		int[] lMap = new int[columns];
+		Arrays.fill(lMap, -1);
+		for (int k=0; k<pSelected.length; k++) {
+			lMap[pSelected[k]] = k;
+		}
+		int lSize = 0;
+		int lStart = 0;
+		for (int i=0; i<rows; i++) {
+			int lEnd = rowOffsets[i+1];
+			for (int k=lStart; k<lEnd; k++) {
+				int lColumn = lMap[valueColumns[k]];
+				if (lColumn >= 0) {
+					valueColumns[lSize] = lColumn;
+					values[lSize++] = values[k];
+				}
+			}
+			lStart = lEnd;
+			rowOffsets[i+1] = lSize;
+		}
+		columns = pSelected.length;
+		size = lSize;
+	}
+	
+	/** Sparse rows below SPARSE_DENSITY, the given storage otherwise. */
+	DataMatrix toMatrix(String pStorage) {
+		values = Arrays.copyOf(values, size);
+		valueColumns = Arrays.copyOf(valueColumns, size);
+		SparseMatrix lSparse = new SparseMatrix(columns, Arrays.copyOf(rowOffsets, rows+1), valueColumns, values);
+		if (size < SPARSE_DENSITY*rows*columns) return lSparse;
+		if (pStorage.equals(FLOAT)) return new FloatMatrix(lSparse);
+		if (pStorage.equals(INT16)) return new QuantizedMatrix(lSparse);
+		double[][] lResult = new double[rows][columns];
+		for (int i=0; i<rows; i++) {
+			lSparse.getRow(i, lResult[i]);
+		}
+		return new DenseMatrix(lResult);
+	}
+	
+	/** Adds the next value of the current row. */
+	void add(double pValue) throws IOException {
+		if (output != null) {
+			if (outputBuffer.remaining() < 8) flushOutput();
+			outputBuffer.putDouble(pValue);
+		}
+		else if (pValue != 0) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, values.length*2);
+				valueColumns = Arrays.copyOf(valueColumns, valueColumns.length*2);
+			}
+			valueColumns[size] = currentColumn;
+			values[size++] = pValue;
+		}
+		currentColumn++;
+	}
+	
+	void endRow() throws IOException {
+		if (currentColumn == 0) return;
+		if (rows == 0) {
+			columns = currentColumn;
+		}
+		else if (currentColumn != columns) {
+			throw new IOException("Data Matrix contains rows of differing size");
+		}
+		rows++;
+		if (rows == rowOffsets.length) rowOffsets = Arrays.copyOf(rowOffsets, rowOffsets.length*2);
+		rowOffsets[rows] = size;
+		currentColumn = 0;
+	}
+	
+	private void parse(File pFile) throws IOException {
+		InputStream lInput = new FileInputStream(pFile);
+		try {
+			byte[] lBuffer = new byte[1 << 16];
+			byte[] lToken = new byte[64];
+			int lTokenLength = 0;
+			boolean lLineStart = true;
+			boolean lComment = false;
+			int lRead;
+			while ((lRead = lInput.read(lBuffer)) > 0) {
+				for (int i=0; i<lRead; i++) {
+					byte b = lBuffer[i];
+					if (b == '\n') {
+						if (lTokenLength > 0) add(parseDouble(lToken, 0, lTokenLength));
+						lTokenLength = 0;
+						endRow();
+						lLineStart = true;
+						lComment = false;
+					}
+					else if (lComment) {
+						continue;
+					}
+					else if ((b == ' ') || (b == '\t') || (b == '\r')) {
+						if (lTokenLength > 0) add(parseDouble(lToken, 0, lTokenLength));
+						lTokenLength = 0;
+					}
+					else if (lLineStart && (b == '#')) {
+						lComment = true;
+					}
+					else {
+						lLineStart = false;
+						if (lTokenLength == lToken.length) {
+							byte[] lLonger = new byte[lToken.length*2];
+							System.arraycopy(lToken, 0, lLonger, 0, lToken.length);
+							lToken = lLonger;
+						}
+						lToken[lTokenLength++] = b;
+					}
+				}
+			}
+			if (lTokenLength > 0) add(parseDouble(lToken, 0, lTokenLength));
+			endRow();
+		}
+		finally {
+			lInput.close();
+		}
+		if (rows == 0) {
+			throw new IOException("Data Matrix is empty");
+		}
+	}
+	
+	public static double parseDouble(byte[] pBuffer, int pStart, int pEnd) {
+		// Exact fast path for decimals with at most 15 significant digits and small exponents,
+		// everything else is handed to Double.parseDouble
+		int i = pStart;
+		boolean lNegative = false;
+		if ((i < pEnd) && ((pBuffer[i] == '-') || (pBuffer[i] == '+'))) {
+			lNegative = pBuffer[i] == '-';
+			i++;
+		}
+		long lMantissa = 0;
+		int lDigits = 0;
+		int lExponent = 0;
+		boolean lAnyDigit = false;
+		while ((i < pEnd) && (pBuffer[i] >= '0') && (pBuffer[i] <= '9')) {
+			lAnyDigit = true;
+			if ((lMantissa != 0) || (pBuffer[i] != '0')) {
+				if (++lDigits > 15) return fallback(pBuffer, pStart, pEnd);
+				lMantissa = lMantissa*10+(pBuffer[i]-'0');
+			}
+			i++;
+		}
+		if ((i < pEnd) && (pBuffer[i] == '.')) {
+			i++;
+			while ((i < pEnd) && (pBuffer[i] >= '0') && (pBuffer[i] <= '9')) {
+				lAnyDigit = true;
+				if ((lMantissa != 0) || (pBuffer[i] != '0')) {
+					if (++lDigits > 15) return fallback(pBuffer, pStart, pEnd);
+					lMantissa = lMantissa*10+(pBuffer[i]-'0');
+				}
+				lExponent--;
+				i++;
+			}
+		}
+		if (!lAnyDigit) return fallback(pBuffer, pStart, pEnd);
+		if ((i < pEnd) && ((pBuffer[i] == 'e') || (pBuffer[i] == 'E'))) {
+			i++;
+			boolean lNegativeExponent = false;
+			if ((i < pEnd) && ((pBuffer[i] == '-') || (pBuffer[i] == '+'))) {
+				lNegativeExponent = pBuffer[i] == '-';
+				i++;
+			}
+			int lValue = 0;
+			int lStart = i;
+			while ((i < pEnd) && (pBuffer[i] >= '0') && (pBuffer[i] <= '9')) {
+				if (lValue > 10000) return fallback(pBuffer, pStart, pEnd);
+				lValue = lValue*10+(pBuffer[i]-'0');
+				i++;
+			}
+			if (i == lStart) return fallback(pBuffer, pStart, pEnd);
+			lExponent += lNegativeExponent ? -lValue : lValue;
+		}
+		if (i != pEnd) return fallback(pBuffer, pStart, pEnd);
+		double lResult;
+		if (lMantissa == 0) {
+			lResult = 0;
+		}
+		else if ((lExponent >= 0) && (lExponent < POWERS_OF_TEN.length)) {
+			lResult = lMantissa*POWERS_OF_TEN[lExponent];
+		}
+		else if ((lExponent < 0) && (-lExponent < POWERS_OF_TEN.length)) {
+			lResult = lMantissa/POWERS_OF_TEN[-lExponent];
+		}
+		else {
+			return fallback(pBuffer, pStart, pEnd);
+		}
+		return lNegative ? -lResult : lResult;
+	}
+	
+	private static double fallback(byte[] pBuffer, int pStart, int pEnd) {
+		return Double.parseDouble(new String(pBuffer, pStart, pEnd-pStart, StandardCharsets.ISO_8859_1));
+	}
+	
+}
@@ -0,0 +1,12 @@
+package org.geneticsvm;
+
+import java.util.*;
+
+/** Every creature breeds one offspring in rank order, the original scheme of GeneticSVM. */
+public class OrderSelection implements Selection {
+
+	public Creature select(List<Creature> pRanked, int pSlot, Random pRandom) {
+		return pRanked.get(pSlot);
+	}
+	
+}
@@ -0,0 +1,110 @@
+package org.geneticsvm;
+
+import java.util.*;
+
+/**
+ * All rows in one short array, a quarter of the memory of double values: every column is quantized to 65536
+ * levels between its minimum and maximum (offset+level*scale), with 0 kept exact so zeros stay sparse.
+ */
+public class QuantizedMatrix implements DataMatrix {
+
+	public static final int LEVELS = 1 << 16;
+
+	private int rows;
+	private int columns;
+	private short[] levels;
+	private double[] offsets;
+	private double[] scales;
+	private double density = -1;
+
+	public QuantizedMatrix(DataMatrix pSource) {
+		rows = pSource.getRowCount();
+		columns = pSource.getColumnCount();
+		levels = new short[MatrixLoader.getCells(rows, columns)];
+		offsets = new double[columns];
+		scales = new double[columns];
+		double[] lMinimum = new double[columns];
+		double[] lMaximum = new double[columns];
+		Arrays.fill(lMinimum, Double.POSITIVE_INFINITY);
+		Arrays.fill(lMaximum, Double.NEGATIVE_INFINITY);
+		double[] lRow = new double[columns];
+		for (int i=0; i<rows; i++) {
+			pSource.getRow(i, lRow);
+			for (int k=0; k<columns; k++) {
+				lMinimum[k] = Math.min(lMinimum[k], lRow[k]);
+				lMaximum[k] = Math.max(lMaximum[k], lRow[k]);
+			}
+		}
+		for (int k=0; k<columns; k++) {
+			scales[k] = (lMaximum[k]-lMinimum[k])/(LEVELS-1);
+			offsets[k] = lMinimum[k];
+			if ((scales[k] > 0) && (lMinimum[k] < 0) && (lMaximum[k] >= 0)) {
+				// Shift the grid by less than half a step so that one level is exactly 0
+				offsets[k] = -(Math.round(-lMinimum[k]/scales[k])*scales[k]);
+			}
+		}
+		for (int i=0; i<rows; i++) {
+			pSource.getRow(i, lRow);
+			for (int k=0; k<columns; k++) {
+				long lLevel = scales[k] > 0 ? Math.round((lRow[k]-offsets[k])/scales[k]) : 0;
+				levels[i*columns+k] = (short)Math.max(0, Math.min(LEVELS-1, lLevel));
+			}
+		}
+	}
+
+	private double value(int pOffset, int pColumn) {
+		return offsets[pColumn]+(levels[pOffset] & 0xFFFF)*scales[pColumn];
+	}
+
+	public int getRowCount() {
+		return rows;
+	}
+
+	public int getColumnCount() {
+		return columns;
+	}
+
+	public double get(int pRow, int pColumn) {
+		return value(pRow*columns+pColumn, pColumn);
+	}
+
+	public void getRow(int pRow, double[] pTarget) {
+		int lOffset = pRow*columns;
+		for (int k=0; k<columns; k++) {
+			pTarget[k] = value(lOffset+k, k);
+		}
+	}
+
+	public int project(int pRow, int[] pColumns, int[] pPositions, double[] pValues) {
+		int lOffset = pRow*columns;
+		int lResult = 0;
+		for (int m=0; m<pColumns.length; m++) {
+			double lValue = value(lOffset+pColumns[m], pColumns[m]);
+			if (lValue != 0) {
+				pPositions[lResult] = m;
+				pValues[lResult++] = lValue;
+			}
+		}
+		return lResult;
+	}
+
+	public synchronized double getDensity() {
+		if (density < 0) {
+			long lNonZeros = 0;
+			for (int i=0; i<levels.length; i++) {
+				if (value(i, i % columns) != 0) lNonZeros++;
+			}
+			density = levels.length > 0 ? lNonZeros/(double)levels.length : 0;
+		}
+		return density;
+	}
+
+	public long getBytes() {
+		return 2L*levels.length+16L*columns;
+	}
+
+	public String toString() {
+		return MatrixLoader.describe(this, "int16");
+	}
+
+}
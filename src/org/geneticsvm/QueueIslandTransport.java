@@ -0,0 +1,45 @@
+package org.geneticsvm;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/** Islands running as threads of one JVM. */
+public class QueueIslandTransport implements IslandTransport {
+
+	private BlockingQueue<Creature> inbox;
+	private BlockingQueue<Creature> next;
+	
+	private QueueIslandTransport(BlockingQueue<Creature> pInbox, BlockingQueue<Creature> pNext) {
+		inbox = pInbox;
+		next = pNext;
+	}
+	
+	public static QueueIslandTransport[] create(int pIslands) {
+		List<BlockingQueue<Creature>> lQueues = new ArrayList<BlockingQueue<Creature>>();
+		for (int i=0; i<pIslands; i++) {
+			lQueues.add(new LinkedBlockingQueue<Creature>());
+		}
+		QueueIslandTransport[] lResult = new QueueIslandTransport[pIslands];
+		for (int i=0; i<pIslands; i++) {
+			lResult[i] = new QueueIslandTransport(lQueues.get(i), lQueues.get((i+1) % pIslands));
+		}
+		return lResult;
+	}
+	
+	public void emigrate(List<Creature> pMigrants) {
+		for (Creature lCreature:pMigrants) {
+			// Copies without results, islands never share mutable creatures
+			next.add(new Creature(lCreature.getBits().clone(), lCreature.getLength()));
+		}
+	}
+	
+	public List<Creature> immigrate() {
+		List<Creature> lResult = new ArrayList<Creature>();
+		inbox.drainTo(lResult);
+		return lResult;
+	}
+	
+	public void close() {
+	}
+	
+}
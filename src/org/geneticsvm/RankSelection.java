@@ -0,0 +1,18 @@
+package org.geneticsvm;
+
+import java.util.*;
+
+/** Linear ranking: the creature of rank r out of n is chosen with a probability proportional to n-r. */
+public class RankSelection implements Selection {
+
+	public Creature select(List<Creature> pRanked, int pSlot, Random pRandom) {
+		long lSize = pRanked.size();
+		long lTicket = (long)(pRandom.nextDouble()*(lSize*(lSize+1)/2));
+		for (int i=0; i<pRanked.size(); i++) {
+			lTicket -= lSize-i;
+			if (lTicket < 0) return pRanked.get(i);
+		}
+		return pRanked.get(pRanked.size()-1);
+	}
+	
+}
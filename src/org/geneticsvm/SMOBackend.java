@@ -0,0 +1,249 @@
+package org.geneticsvm;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class SMOBackend implements SVMBackend {
+
+	public static final double EPSILON = 0.001;
+	public static final double RHO = 2.0;
+	
+	private Set<SMOSolver> solvers = ConcurrentHashMap.newKeySet();
+	private volatile boolean killed = false;
+	private KernelCache kernelCache;
+	private EvaluationMetrics metrics;
+	// Last solution per label, kernel and fold (-1 = all rows) of the current training set
+	private Map<String, SMOModel> path = new ConcurrentHashMap<String, SMOModel>();
+	private TrainingSet pathTrainingSet;
+	private SVMResult[] parentResults;
+	
+	private static final AtomicLong coldSolves = new AtomicLong();
+	private static final AtomicLong coldIterations = new AtomicLong();
+	private static final AtomicLong warmSolves = new AtomicLong();
+	private static final AtomicLong warmIterations = new AtomicLong();
+	
+	public SMOBackend() {
+		this(null, new EvaluationMetrics());
+	}
+	
+	public SMOBackend(KernelCache pKernelCache, EvaluationMetrics pMetrics) {
+		kernelCache = pKernelCache;
+		metrics = pMetrics;
+	}
+	
+	public EvaluationMetrics getMetrics() {
+		return metrics;
+	}
+	
+	public void kill() {
+		killed = true;
+		for (SMOSolver lSolver:solvers) {
+			lSolver.cancel();
+		}
+	}
+	
+	public void setParentResults(SVMResult[] pResults) {
+		parentResults = pResults;
+	}
+	
+	public static String getStatistics() {
+		long lColdSolves = coldSolves.get();
+		long lWarmSolves = warmSolves.get();
+		return "SMO Solver: "+(lColdSolves+lWarmSolves)+" solves, "+lWarmSolves+" warm-started"
+			+", "+(lColdSolves > 0 ? coldIterations.get()/lColdSolves : 0)+" iterations/cold solve"
+			+", "+(lWarmSolves > 0 ? warmIterations.get()/lWarmSolves : 0)+" iterations/warm solve"
+			+", "+(coldIterations.get()+warmIterations.get())+" iterations in total";
+	}
+	
+	private static String getPathKey(int pIndexLabel, SVMParameters pParameters, int pFold) {
+		return pIndexLabel+" "+pParameters.getKernel()+" "+pParameters.getD()+" "+pParameters.getGamma()+" "+pFold;
+	}
+	
+	private synchronized void startPath(TrainingSet pTrainingSet) {
+		if (pathTrainingSet != pTrainingSet) {
+			path.clear();
+			pathTrainingSet = pTrainingSet;
+		}
+	}
+	
+	private double[] getInitialAlpha(int pIndexLabel, SVMParameters pParameters, int pFold, int pRows, double pC) {
+		String lKey = getPathKey(pIndexLabel, pParameters, pFold);
+		SMOModel lModel = path.get(lKey);
+		if ((lModel == null) && (pFold < 0) && (parentResults != null)) {
+			// Best model of the parent for this label, if it used the same kernel function
+			for (SVMResult lResult:parentResults) {
+				if ((lResult != null) && (lResult.getIndexLabel() == pIndexLabel) && (lResult.getModel() != null) && (lResult.getParameters() != null) && getPathKey(pIndexLabel, lResult.getParameters(), pFold).equals(lKey)) {
+					lModel = lResult.getModel();
+				}
+			}
+		}
+		if ((lModel == null) || (lModel.getAlpha().length != pRows)) return null;
+		return lModel.scaleTo(pC);
+	}
+	
+	static double[] withoutRow(double[] pAlpha, int[] pLabels, int pRow, double pC) {
+		double[] lResult = pAlpha.clone();
+		double lRest = lResult[pRow];
+		lResult[pRow] = 0;
+		// Keep sum of y*alpha = 0: shift the weight to support vectors of the same class first,
+		// then to the other examples of that class, then take it from the other class
+		for (int lPass=0; (lPass<2) && (lRest > 0); lPass++) {
+			for (int i=0; (i<lResult.length) && (lRest > 0); i++) {
+				if ((i == pRow) || (pLabels[i] != pLabels[pRow]) || ((lPass == 0) && (lResult[i] == 0))) continue;
+				double lStep = Math.min(lRest, pC-lResult[i]);
+				lResult[i] += lStep;
+				lRest -= lStep;
+			}
+		}
+		for (int i=0; (i<lResult.length) && (lRest > 0); i++) {
+			if (pLabels[i] == pLabels[pRow]) continue;
+			double lStep = Math.min(lRest, lResult[i]);
+			lResult[i] -= lStep;
+			lRest -= lStep;
+		}
+		return lRest > 1e-12 ? null : lResult;
+	}
+	
+	public static double kernel(SVMParameters pParameters, double pDot, double pSquaredNormA, double pSquaredNormB) {
+		switch (pParameters.getKernel()) {
+			case SVMParameters.KERNEL_POL: return Math.pow(pDot+1, pParameters.getD());
+			case SVMParameters.KERNEL_RBF: return Math.exp(-pParameters.getGamma()*(pSquaredNormA+pSquaredNormB-2*pDot));
+			case SVMParameters.KERNEL_SIG: return Math.tanh(pDot+1);
+			default: return pDot;
+		}
+	}
+	
+	public static KernelMatrix computeKernel(TrainingSet pTrainingSet, SVMParameters pParameters) {
+		KernelMatrix lDotProducts = KernelMatrix.computeDotProducts(pTrainingSet);
+		return pParameters.getKernel() == SVMParameters.KERNEL_LIN ? lDotProducts : lDotProducts.derive(pParameters);
+	}
+	
+	private KernelMatrix getKernel(TrainingSet pTrainingSet, SVMParameters pParameters) {
+		long lStart = System.nanoTime();
+		try {
+			if (kernelCache == null) return computeKernel(pTrainingSet, pParameters);
+			return kernelCache.get(pTrainingSet, pParameters);
+		}
+		finally {
+			metrics.since(EvaluationMetrics.KERNEL, lStart);
+		}
+	}
+	
+	public static double getTradeOff(KernelMatrix pKernel, SVMParameters pParameters) {
+		if (pParameters.getTradeOff() != 0) return pParameters.getTradeOff();
+		// svmlight default: [avg. x*x]^-1
+		double lSum = 0;
+		for (int i=0; i<pKernel.getRows(); i++) {
+			lSum += pKernel.get(i, i);
+		}
+		return lSum > 0 ? pKernel.getRows()/lSum : 1;
+	}
+	
+	public SVMResult leaveOneOut(TrainingSet pTrainingSet, int pIndexLabel, SVMParameters pParameters) throws IOException {
+		killed = false;
+		startPath(pTrainingSet);
+		KernelMatrix lKernel = getKernel(pTrainingSet, pParameters);
+		int lRows = lKernel.getRows();
+		int[] lLabels = new int[lRows];
+		int lPositives = 0;
+		for (int i=0; i<lRows; i++) {
+			lLabels[i] = pTrainingSet.getLabel(i, pIndexLabel);
+			if (lLabels[i] == 1) lPositives++;
+		}
+		double lC = getTradeOff(lKernel, pParameters);
+		int[] lAll = new int[lRows];
+		for (int i=0; i<lRows; i++) lAll[i] = i;
+		SMOSolver lFullSolver = new SMOSolver(lKernel, lLabels, lC, EPSILON);
+		solve(lFullSolver, lAll, getInitialAlpha(pIndexLabel, pParameters, -1, lRows, lC));
+		double[] lAlpha = lFullSolver.getAlpha();
+		SMOModel lModel = new SMOModel(lC, lAlpha);
+		path.put(getPathKey(pIndexLabel, pParameters, -1), lModel);
+		// Estimate R^2 the way svmlight does (maximal distance to the first example)
+		double lRDeltaSquared = 0;
+		for (int i=0; i<lRows; i++) {
+			lRDeltaSquared = Math.max(lRDeltaSquared, lKernel.get(i, i)-2*lKernel.get(i, 0)+lKernel.get(0, 0));
+		}
+		int lErrorsPositive = 0;
+		int lErrorsNegative = 0;
+		int[] lHeldOutActive = new int[lRows-1];
+		for (int lHeldOut=0; lHeldOut<lRows; lHeldOut++) {
+			double lXi = Math.max(0, 1-lLabels[lHeldOut]*lFullSolver.decision(lHeldOut));
+			if (RHO*lAlpha[lHeldOut]*lRDeltaSquared+lXi < 1.0) {
+				// Guaranteed not to produce a leave-one-out error
+				continue;
+			}
+			int k = 0;
+			for (int i=0; i<lRows; i++) {
+				if (i != lHeldOut) lHeldOutActive[k++] = i;
+			}
+			SMOSolver lSolver = new SMOSolver(lKernel, lLabels, lC, EPSILON);
+			solve(lSolver, lHeldOutActive, withoutRow(lAlpha, lLabels, lHeldOut, lC));
+			if (lSolver.decision(lHeldOut)*lLabels[lHeldOut] <= 0) {
+				if (lLabels[lHeldOut] == 1) lErrorsPositive++;
+				else lErrorsNegative++;
+			}
+		}
+		SVMResult lResult = SVMResult.fromConfusion(pIndexLabel, pParameters, lPositives-lErrorsPositive, lErrorsNegative, lErrorsPositive);
+		lResult.setModel(lModel);
+		return lResult;
+	}
+	
+	public int[] crossValidateFold(TrainingSet pTrainingSet, int pIndexLabel, SVMParameters pParameters, FoldSplit pFoldSplit, int pFold) throws IOException {
+		killed = false;
+		startPath(pTrainingSet);
+		KernelMatrix lKernel = getKernel(pTrainingSet, pParameters);
+		int lRows = lKernel.getRows();
+		int[] lLabels = new int[lRows];
+		for (int i=0; i<lRows; i++) {
+			lLabels[i] = pTrainingSet.getLabel(i, pIndexLabel);
+		}
+		double lC = getTradeOff(lKernel, pParameters);
+		boolean[] lTest = pFoldSplit.getTestRows(pTrainingSet, pFold);
+		int lTrainCount = 0;
+		for (int i=0; i<lRows; i++) {
+			if (!lTest[i]) lTrainCount++;
+		}
+		int[] lConfusion = new int[3];
+		if (lTrainCount == lRows) return lConfusion;
+		int[] lActive = new int[lTrainCount];
+		int k = 0;
+		for (int i=0; i<lRows; i++) {
+			if (!lTest[i]) lActive[k++] = i;
+		}
+		SMOSolver lSolver = new SMOSolver(lKernel, lLabels, lC, EPSILON);
+		solve(lSolver, lActive, getInitialAlpha(pIndexLabel, pParameters, pFold, lRows, lC));
+		path.put(getPathKey(pIndexLabel, pParameters, pFold), new SMOModel(lC, lSolver.getAlpha()));
+		for (int i=0; i<lRows; i++) {
+			if (!lTest[i]) continue;
+			boolean lPredicted = lSolver.decision(i) > 0;
+			if (lPredicted && (lLabels[i] == 1)) lConfusion[0]++;
+			else if (lPredicted) lConfusion[1]++;
+			else if (lLabels[i] == 1) lConfusion[2]++;
+		}
+		return lConfusion;
+	}
+	
+	private void solve(SMOSolver pSolver, int[] pActive, double[] pInitialAlpha) throws IOException {
+		solvers.add(pSolver);
+		try {
+			if (killed) throw new IOException("Solver cancelled");
+			long lStart = System.nanoTime();
+			pSolver.solve(pActive, pInitialAlpha);
+			metrics.since(EvaluationMetrics.SOLVE, lStart);
+			if (pInitialAlpha != null) {
+				warmSolves.incrementAndGet();
+				warmIterations.addAndGet(pSolver.getIterations());
+			}
+			else {
+				coldSolves.incrementAndGet();
+				coldIterations.addAndGet(pSolver.getIterations());
+			}
+		}
+		finally {
+			solvers.remove(pSolver);
+		}
+	}
+	
+}
@@ -0,0 +1,35 @@
+package org.geneticsvm;
+
+/**
+ * Dual solution of an SMO training run, kept to warm-start related problems
+ * (the next C value of the grid, offspring of the creature).
+ */
+public class SMOModel {
+
+	private double tradeOff;
+	private double[] alpha;
+	
+	public SMOModel(double pTradeOff, double[] pAlpha) {
+		tradeOff = pTradeOff;
+		alpha = pAlpha;
+	}
+	
+	public double getTradeOff() {
+		return tradeOff;
+	}
+	
+	public double[] getAlpha() {
+		return alpha;
+	}
+	
+	/** Scaling keeps both 0 <= alpha <= C and sum of y*alpha = 0, so the result is a feasible start for pTradeOff. */
+	public double[] scaleTo(double pTradeOff) {
+		double lFactor = pTradeOff/tradeOff;
+		double[] lResult = new double[alpha.length];
+		for (int i=0; i<alpha.length; i++) {
+			lResult[i] = Math.min(pTradeOff, alpha[i]*lFactor);
+		}
+		return lResult;
+	}
+	
+}
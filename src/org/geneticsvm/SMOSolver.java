@@ -0,0 +1,221 @@
+package org.geneticsvm;
+
+import java.io.*;
+
+public class SMOSolver {
+
+	private static final double TAU = 1e-12;
+	private static final long MAX_ITERATIONS = 10000000;
+
+	private KernelMatrix kernel;
+	private int[] labels;
+	private double c;
+	private double epsilon;
+	private double[] alpha;
+	private double[] gradient;
+	private int[] active;
+	private double rho;
+	private long iterations;
+	private volatile boolean cancelled = false;
+	
+	public SMOSolver(KernelMatrix pKernel, int[] pLabels, double pC, double pEpsilon) {
+		kernel = pKernel;
+		labels = pLabels;
+		c = pC;
+		epsilon = pEpsilon;
+	}
+	
+	public void cancel() {
+		cancelled = true;
+	}
+	
+	public double[] getAlpha() {
+		return alpha;
+	}
+	
+	public double getRho() {
+		return rho;
+	}
+	
+	public long getIterations() {
+		return iterations;
+	}
+	
+	public void solve(int[] pActive) throws IOException {
+		solve(pActive, null);
+	}
+	
+	/**
+	 * @param pInitialAlpha feasible starting point (0 <= alpha <= C on the active rows, sum of y*alpha = 0),
+	 * e.g. a previous solution scaled to the new C; null to start from zero
+	 */
+	public void solve(int[] pActive, double[] pInitialAlpha) throws IOException {
+		active = pActive;
+		alpha = new double[labels.length];
+		gradient = new double[labels.length];
+		for (int t:active) {
+			gradient[t] = -1;
+		}
+		if (pInitialAlpha != null) {
+			for (int s:active) {
+				alpha[s] = pInitialAlpha[s];
+				if (alpha[s] == 0) continue;
+				for (int t:active) {
+					gradient[t] += labels[t]*labels[s]*kernel.get(t, s)*alpha[s];
+				}
+			}
+		}
+		iterations = 0;
+		while (iterations < MAX_ITERATIONS) {
+			if ((iterations % 1000 == 0) && cancelled) {
+				throw new IOException("Solver cancelled");
+			}
+			// Select maximal violating pair
+			int i = -1;
+			int j = -1;
+			double lGMax = Double.NEGATIVE_INFINITY;
+			double lGMin = Double.POSITIVE_INFINITY;
+			for (int t:active) {
+				double lValue = -labels[t]*gradient[t];
+				if (isUp(t) && (lValue >= lGMax)) {
+					lGMax = lValue;
+					i = t;
+				}
+				if (isLow(t) && (lValue <= lGMin)) {
+					lGMin = lValue;
+					j = t;
+				}
+			}
+			if ((i == -1) || (j == -1) || (lGMax-lGMin < epsilon)) break;
+			iterations++;
+			update(i, j);
+		}
+		computeRho();
+	}
+	
+	private boolean isUp(int t) {
+		return labels[t] == 1 ? alpha[t] < c : alpha[t] > 0;
+	}
+	
+	private boolean isLow(int t) {
+		return labels[t] == 1 ? alpha[t] > 0 : alpha[t] < c;
+	}
+	
+	private void update(int i, int j) {
+		double lOldAlphaI = alpha[i];
+		double lOldAlphaJ = alpha[j];
+		double lQij = labels[i]*labels[j]*kernel.get(i, j);
+		if (labels[i] != labels[j]) {
+			double lQuad = kernel.get(i, i)+kernel.get(j, j)+2*lQij;
+			if (lQuad <= 0) lQuad = TAU;
+			double lDelta = (-gradient[i]-gradient[j])/lQuad;
+			double lDiff = alpha[i]-alpha[j];
+			alpha[i] += lDelta;
+			alpha[j] += lDelta;
+			if (lDiff > 0) {
+				if (alpha[j] < 0) {
+					alpha[j] = 0;
+					alpha[i] = lDiff;
+				}
+			}
+			else {
+				if (alpha[i] < 0) {
+					alpha[i] = 0;
+					alpha[j] = -lDiff;
+				}
+			}
+			if (lDiff > 0) {
+				if (alpha[i] > c) {
+					alpha[i] = c;
+					alpha[j] = c-lDiff;
+				}
+			}
+			else {
+				if (alpha[j] > c) {
+					alpha[j] = c;
+					alpha[i] = c+lDiff;
+				}
+			}
+		}
+		else {
+			double lQuad = kernel.get(i, i)+kernel.get(j, j)-2*lQij;
+			if (lQuad <= 0) lQuad = TAU;
+			double lDelta = (gradient[i]-gradient[j])/lQuad;
+			double lSum = alpha[i]+alpha[j];
+			alpha[i] -= lDelta;
+			alpha[j] += lDelta;
+			if (lSum > c) {
+				if (alpha[i] > c) {
+					alpha[i] = c;
+					alpha[j] = lSum-c;
+				}
+			}
+			else {
+				if (alpha[j] < 0) {
+					alpha[j] = 0;
+					alpha[i] = lSum;
+				}
+			}
+			if (lSum > c) {
+				if (alpha[j] > c) {
+					alpha[j] = c;
+					alpha[i] = lSum-c;
+				}
+			}
+			else {
+				if (alpha[i] < 0) {
+					alpha[i] = 0;
+					alpha[j] = lSum;
+				}
+			}
+		}
+		double lDeltaI = (alpha[i]-lOldAlphaI)*labels[i];
+		double lDeltaJ = (alpha[j]-lOldAlphaJ)*labels[j];
+		for (int t:active) {
+			gradient[t] += labels[t]*(kernel.get(t, i)*lDeltaI+kernel.get(t, j)*lDeltaJ);
+		}
+	}
+	
+	private void computeRho() {
+		double lUpper = Double.POSITIVE_INFINITY;
+		double lLower = Double.NEGATIVE_INFINITY;
+		double lSum = 0;
+		int lFree = 0;
+		for (int t:active) {
+			double lYG = labels[t]*gradient[t];
+			if (alpha[t] >= c) {
+				if (labels[t] == -1) lUpper = Math.min(lUpper, lYG);
+				else lLower = Math.max(lLower, lYG);
+			}
+			else if (alpha[t] <= 0) {
+				if (labels[t] == 1) lUpper = Math.min(lUpper, lYG);
+				else lLower = Math.max(lLower, lYG);
+			}
+			else {
+				lFree++;
+				lSum += lYG;
+			}
+		}
+		if (lFree > 0) {
+			rho = lSum/lFree;
+		}
+		else if ((lUpper == Double.POSITIVE_INFINITY) || (lLower == Double.NEGATIVE_INFINITY)) {
+			rho = lUpper == Double.POSITIVE_INFINITY ? lLower : lUpper;
+			if (Double.isInfinite(rho)) rho = 0;
+		}
+		else {
+			rho = (lUpper+lLower)/2;
+		}
+	}
+	
+	public double decision(int pRow) {
+		double lResult = -rho;
+		for (int t:active) {
+			if (alpha[t] > 0) {
+				lResult += alpha[t]*labels[t]*kernel.get(t, pRow);
+			}
+		}
+		return lResult;
+	}
+	
+}
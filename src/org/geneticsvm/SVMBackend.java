@@ -0,0 +1,43 @@
+package org.geneticsvm;
+
+import java.io.*;
+
+public interface SVMBackend {
+
+	public static final String SVMLIGHT = "svmlight";
+	public static final String SMO = "smo";
+	
+	public SVMResult leaveOneOut(TrainingSet pTrainingSet, int pIndexLabel, SVMParameters pParameters) throws IOException;
+	
+	/** Trains without one fold and classifies it: {true positives, false positives, false negatives}. */
+	public int[] crossValidateFold(TrainingSet pTrainingSet, int pIndexLabel, SVMParameters pParameters, FoldSplit pFoldSplit, int pFold) throws IOException;
+	
+	/** All folds one after the other, ComputeCreatureThread runs them as parts of its job instead. */
+	public default SVMResult crossValidate(TrainingSet pTrainingSet, int pIndexLabel, SVMParameters pParameters, FoldSplit pFoldSplit) throws IOException {
+		int[] lConfusion = new int[3];
+		for (int f=0; f<pFoldSplit.getFolds(); f++) {
+			int[] lFoldConfusion = crossValidateFold(pTrainingSet, pIndexLabel, pParameters, pFoldSplit, f);
+			for (int i=0; i<3; i++) lConfusion[i] += lFoldConfusion[i];
+		}
+		return SVMResult.fromConfusion(pIndexLabel, pParameters, lConfusion[0], lConfusion[1], lConfusion[2]);
+	}
+	
+	public void kill();
+	
+	/** Metrics of the study this backend trains for. */
+	public EvaluationMetrics getMetrics();
+	
+	/** Results of the parent creature, which backends may use to warm-start training. */
+	public default void setParentResults(SVMResult[] pResults) {
+	}
+	
+	public default SVMResult evaluate(TrainingSet pTrainingSet, int pIndexLabel, SVMParameters pParameters, FoldSplit pFoldSplit) throws IOException {
+		return pFoldSplit == null ? leaveOneOut(pTrainingSet, pIndexLabel, pParameters) : crossValidate(pTrainingSet, pIndexLabel, pParameters, pFoldSplit);
+	}
+	
+	public static SVMBackend create(String pName, ScratchSpace pScratch, int pSlot, SVMLightWorker pWorker, KernelCache pKernelCache, EvaluationMetrics pMetrics) {
+		if (pName.equals(SMO)) return new SMOBackend(pKernelCache, pMetrics);
+		return new SVMLightBackend(pScratch, pSlot, pWorker, pMetrics);
+	}
+	
+}
@@ -0,0 +1,39 @@
+package org.geneticsvm;
+
+/** One backend per executor slot, kept across jobs so a training file written for one part serves the next. */
+public class SVMBackendPool {
+
+	private String name;
+	private ScratchSpace scratch;
+	private SVMLightWorkerPool workerPool;
+	private KernelCache kernelCache;
+	private EvaluationMetrics metrics;
+	private SVMBackend[] backends;
+
+	public SVMBackendPool(String pName, int pSize, ScratchSpace pScratch, SVMLightWorkerPool pWorkerPool, KernelCache pKernelCache, EvaluationMetrics pMetrics) {
+		name = pName;
+		scratch = pScratch;
+		workerPool = pWorkerPool;
+		kernelCache = pKernelCache;
+		metrics = pMetrics;
+		backends = new SVMBackend[pSize];
+	}
+
+	/** Backend of a slot, only ever used by the thread owning the slot. */
+	public SVMBackend get(int pSlot) {
+		if (backends[pSlot] == null) {
+			backends[pSlot] = SVMBackend.create(name, scratch, pSlot, workerPool != null ? workerPool.getWorker(pSlot) : null, kernelCache, metrics);
+		}
+		return backends[pSlot];
+	}
+
+	public EvaluationMetrics getMetrics() {
+		return metrics;
+	}
+
+	/** Whether the C values of a kernel warm-start each other and should be trained in order on one backend. */
+	public boolean isWarmStarting() {
+		return name.equals(SVMBackend.SMO);
+	}
+
+}
@@ -0,0 +1,292 @@
+package org.geneticsvm;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+public class SVMLightBackend implements SVMBackend {
+
+	private ScratchSpace scratch;
+	private int slot;
+	private File workDirectory;
+	private SVMLightWorker worker;
+	private EvaluationMetrics metrics;
+	private Process process = null;
+	private InputStream inputStream;
+	private InputStream errorStream;
+	private OutputStream outputStream;
+	private TrainingSet writtenTrainingSet;
+	private Set<Integer> writtenIndexLabels = new HashSet<Integer>();
+	
+	public SVMLightBackend(ScratchSpace pScratch, int pSlot, SVMLightWorker pWorker, EvaluationMetrics pMetrics) {
+		scratch = pScratch;
+		slot = pSlot;
+		workDirectory = pScratch.getSlotDirectory(pSlot);
+		worker = pWorker;
+		metrics = pMetrics;
+	}
+	
+	public EvaluationMetrics getMetrics() {
+		return metrics;
+	}
+	
+	public static String getSVMLearn() {
+		return File.separatorChar=='/' ? "svm_learn" : "svm_learn.exe";
+	}
+	
+	public static String getSVMClassify() {
+		return File.separatorChar=='/' ? "svm_classify" : "svm_classify.exe";
+	}
+	
+	public void kill() {
+		if (worker != null) {
+			worker.kill();
+		}
+		if (process != null) {
+			if (inputStream != null) {
+				try {
+					inputStream.close();
+				}
+				catch (IOException e) {
+				}
+			}
+			if (outputStream != null) {
+				try {
+					outputStream.close();
+				}
+				catch (IOException e) {
+				}
+			}
+			if (errorStream != null) {
+				try {
+					errorStream.close();
+				}
+				catch (IOException e) {
+				}
+			}
+			process.destroy();
+		}
+	}
+	
+	public SVMResult leaveOneOut(TrainingSet pTrainingSet, int pIndexLabel, SVMParameters pParameters) throws IOException {
+		File lTrainFile;
+		ByteBuffer[] lContent = null;
+		if (scratch.isFifo()) {
+			boolean[] lAll = new boolean[pTrainingSet.getRowCount()];
+			Arrays.fill(lAll, true);
+			lTrainFile = scratch.getFifo(slot, "train.svm");
+			lContent = pTrainingSet.getSVMLight(pIndexLabel, lAll);
+		}
+		else {
+			lTrainFile = writeTrainingFile(pTrainingSet, pIndexLabel);
+		}
+		File lModelFile = new File(workDirectory.getAbsolutePath()+File.separator+"train.model");
+		// Start SVM
+		List<String> lParamList = new Vector<String>();
+		lParamList.add(getSVMLearn());
+		for (String lString:pParameters.getParameterArray()) {
+			lParamList.add(lString);
+		}
+		lParamList.add("-x");
+		lParamList.add("1");
+		lParamList.add(lTrainFile.getAbsolutePath());
+		lParamList.add(lModelFile.getAbsolutePath());
+		List<String> lOutput = new Vector<String>();
+		int lExitCode = execute(lParamList, lOutput, lContent, lTrainFile);
+		lModelFile.delete();
+		if (lExitCode != 0) {
+			for (String lLine:lOutput) {
+				System.err.println(lLine);
+			}
+			throw new IOException("SVM exited with error");
+		}
+		long lParseStart = System.nanoTime();
+		double lPrecision = -1;
+		double lRecall = -1;
+		for (String lLine:lOutput) {
+			if (lLine.startsWith("Leave-one-out estimate of the recall")) {
+				lRecall = parsePercentage(lLine);
+			}
+			if (lLine.startsWith("Leave-one-out estimate of the precision")) {
+				lPrecision = parsePercentage(lLine);
+			}
+		}
+		metrics.since(EvaluationMetrics.PARSE, lParseStart);
+		return new SVMResult(pIndexLabel, pParameters, lPrecision, lRecall);
+	}
+	
+	public int[] crossValidateFold(TrainingSet pTrainingSet, int pIndexLabel, SVMParameters pParameters, FoldSplit pFoldSplit, int pFold) throws IOException {
+		File lTrainFile = scratch.isFifo() ? scratch.getFifo(slot, "fold_train.svm") : new File(workDirectory.getAbsolutePath()+File.separator+"fold_train.svm");
+		File lTestFile = scratch.isFifo() ? scratch.getFifo(slot, "fold_test.svm") : new File(workDirectory.getAbsolutePath()+File.separator+"fold_test.svm");
+		File lModelFile = new File(workDirectory.getAbsolutePath()+File.separator+"fold.model");
+		File lPredictionFile = new File(workDirectory.getAbsolutePath()+File.separator+"fold.predictions");
+		int[] lConfusion = new int[3];
+		boolean[] lTest = pFoldSplit.getTestRows(pTrainingSet, pFold);
+		boolean[] lTrain = new boolean[lTest.length];
+		boolean lAnyTest = false;
+		for (int i=0; i<lTest.length; i++) {
+			lTrain[i] = !lTest[i];
+			lAnyTest |= lTest[i];
+		}
+		if (!lAnyTest) return lConfusion;
+		try {
+			if (!scratch.isFifo()) {
+				long lWriteStart = System.nanoTime();
+				scratch.addWritten(pTrainingSet.writeSVMLight(lTrainFile, pIndexLabel, lTrain));
+				scratch.addWritten(pTrainingSet.writeSVMLight(lTestFile, pIndexLabel, lTest));
+				metrics.since(EvaluationMetrics.WRITE, lWriteStart);
+			}
+			lModelFile.delete();
+			lPredictionFile.delete();
+			List<String> lParamList = new Vector<String>();
+			lParamList.add(getSVMLearn());
+			for (String lString:pParameters.getParameterArray()) {
+				lParamList.add(lString);
+			}
+			lParamList.add(lTrainFile.getAbsolutePath());
+			lParamList.add(lModelFile.getAbsolutePath());
+			List<String> lOutput = new Vector<String>();
+			if (execute(lParamList, lOutput, scratch.isFifo() ? pTrainingSet.getSVMLight(pIndexLabel, lTrain) : null, lTrainFile) != 0) {
+				for (String lLine:lOutput) {
+					System.err.println(lLine);
+				}
+				throw new IOException("SVM exited with error");
+			}
+			lOutput.clear();
+			if (execute(Arrays.asList(getSVMClassify(), lTestFile.getAbsolutePath(), lModelFile.getAbsolutePath(), lPredictionFile.getAbsolutePath()), lOutput, scratch.isFifo() ? pTrainingSet.getSVMLight(pIndexLabel, lTest) : null, lTestFile) != 0) {
+				for (String lLine:lOutput) {
+					System.err.println(lLine);
+				}
+				throw new IOException("SVM classification exited with error");
+			}
+			long lParseStart = System.nanoTime();
+			BufferedReader lReader = new BufferedReader(new InputStreamReader(new FileInputStream(lPredictionFile), "UTF-8"));
+			try {
+				for (int i=0; i<lTest.length; i++) {
+					if (!lTest[i]) continue;
+					String lLine = lReader.readLine();
+					if (lLine == null) throw new IOException("Missing predictions in "+lPredictionFile.getAbsolutePath());
+					boolean lPredicted = Double.parseDouble(lLine.trim()) > 0;
+					boolean lPositive = pTrainingSet.getLabel(i, pIndexLabel) == 1;
+					if (lPredicted && lPositive) lConfusion[0]++;
+					else if (lPredicted) lConfusion[1]++;
+					else if (lPositive) lConfusion[2]++;
+				}
+			}
+			finally {
+				lReader.close();
+				metrics.since(EvaluationMetrics.PARSE, lParseStart);
+			}
+		}
+		finally {
+			// Scratch space may be memory, keep only what the next job reuses
+			lModelFile.delete();
+			lPredictionFile.delete();
+			if (!scratch.isFifo()) {
+				lTrainFile.delete();
+				lTestFile.delete();
+			}
+		}
+		return lConfusion;
+	}
+	
+	private File writeTrainingFile(TrainingSet pTrainingSet, int pIndexLabel) throws IOException {
+		// One file per label, written once per training set and reused for every parameter set
+		File lTrainFile = new File(workDirectory.getAbsolutePath()+File.separator+"train_"+pIndexLabel+".svm");
+		if (writtenTrainingSet != pTrainingSet) {
+			for (int lIndexLabel:writtenIndexLabels) {
+				new File(workDirectory.getAbsolutePath()+File.separator+"train_"+lIndexLabel+".svm").delete();
+			}
+			writtenTrainingSet = pTrainingSet;
+			writtenIndexLabels.clear();
+		}
+		if (writtenIndexLabels.contains(pIndexLabel)) {
+			return lTrainFile;
+		}
+		long lStart = System.nanoTime();
+		scratch.addWritten(pTrainingSet.writeSVMLight(lTrainFile, pIndexLabel, -1));
+		metrics.since(EvaluationMetrics.WRITE, lStart);
+		writtenIndexLabels.add(pIndexLabel);
+		return lTrainFile;
+	}
+	
+	private int execute(List<String> pCommand, List<String> pOutput, ByteBuffer[] pContent, File pInput) throws IOException {
+		// With named pipes the input is streamed while the command runs
+		ScratchSpace.Feeder lFeeder = pContent != null ? scratch.feed(pInput, pContent) : null;
+		try {
+			return execute(pCommand, pOutput);
+		}
+		finally {
+			if (lFeeder != null) lFeeder.finish();
+		}
+	}
+	
+	private int execute(List<String> pCommand, List<String> pOutput) throws IOException {
+		if (worker != null) {
+			return worker.execute(pCommand, pOutput);
+		}
+		String[] lParams = pCommand.toArray(new String[pCommand.size()]);
+		try {
+			long lStart = System.nanoTime();
+			process = Runtime.getRuntime().exec(lParams);
+			metrics.since(EvaluationMetrics.SPAWN, lStart);
+			lStart = System.nanoTime();
+			inputStream = process.getInputStream();
+			errorStream = process.getErrorStream();
+			outputStream = process.getOutputStream();
+			BufferedReader lErrorReader = new BufferedReader(new InputStreamReader(errorStream));
+			BufferedReader lInputReader = new BufferedReader(new InputStreamReader(inputStream));
+			String lLine = null;
+			while ((lLine = lErrorReader.readLine()) != null) {
+				System.err.println(lLine);
+			}
+			while ((lLine = lInputReader.readLine()) != null) {
+				pOutput.add(lLine);
+			}
+			try {
+				int lExitCode = process.waitFor();
+				metrics.since(EvaluationMetrics.SOLVE, lStart);
+				return lExitCode;
+			}
+			catch (InterruptedException e) {
+				throw new IOException("Interrupted while waiting for SVM");
+			}
+		}
+		finally {
+			if (inputStream != null) {
+				try {
+					inputStream.close();
+				}
+				catch (IOException e) {
+				}
+			}
+			if (errorStream != null) {
+				try {
+					errorStream.close();
+				}
+				catch (IOException e) {
+				}
+			}
+			if (outputStream != null) {
+				try {
+					outputStream.close();
+				}
+				catch (IOException e) {
+				}
+			}
+		}
+	}
+	
+	public static double parsePercentage(String pLine) {
+		try {
+			return Double.parseDouble(pLine.substring(pLine.indexOf("=")+1, pLine.indexOf("%")));
+		}
+		catch (NumberFormatException f) {
+			return -1;
+		}
+		catch (IndexOutOfBoundsException f) {
+			return -1;
+		}
+	}
+	
+}
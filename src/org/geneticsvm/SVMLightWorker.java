@@ -0,0 +1,169 @@
+package org.geneticsvm;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class SVMLightWorker {
+
+	private static final String DONE_MARKER = "__GENETICSVM_DONE__";
+	private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable pRunnable) {
+			Thread lThread = new Thread(pRunnable, "SVMLightWorker-Watchdog");
+			lThread.setDaemon(true);
+			return lThread;
+		}
+	});
+	
+	private int workerID;
+	private File workingDirectory;
+	private long timeout;
+	private EvaluationMetrics metrics;
+	private volatile Process process = null;
+	private BufferedReader reader;
+	private Writer writer;
+	private volatile boolean timedOut = false;
+	private long jobs = 0;
+	private long failures = 0;
+	private long restarts = 0;
+	private long busyNanos = 0;
+	private long createTime;
+	
+	/** pTimeout in ms after which a command is killed (0 = no timeout). */
+	public SVMLightWorker(int pWorkerID, File pWorkingDirectory, long pTimeout, EvaluationMetrics pMetrics) {
+		workerID = pWorkerID;
+		workingDirectory = pWorkingDirectory;
+		timeout = pTimeout;
+		metrics = pMetrics;
+		createTime = System.nanoTime();
+	}
+	
+	public static boolean isSupported() {
+		return (File.separatorChar == '/') && new File("/bin/sh").canExecute();
+	}
+	
+	public int getWorkerID() {
+		return workerID;
+	}
+	
+	private void ensureAlive() throws IOException {
+		if ((process != null) && process.isAlive()) return;
+		if (process != null) {
+			restarts++;
+			close();
+		}
+		ProcessBuilder lBuilder = new ProcessBuilder("/bin/sh");
+		lBuilder.directory(workingDirectory);
+		lBuilder.redirectErrorStream(true);
+		Process lProcess = lBuilder.start();
+		reader = new BufferedReader(new InputStreamReader(lProcess.getInputStream(), "UTF-8"));
+		writer = new BufferedWriter(new OutputStreamWriter(lProcess.getOutputStream(), "UTF-8"));
+		process = lProcess;
+	}
+	
+	private static String quote(String pArgument) {
+		return "'"+pArgument.replace("'", "'\\''")+"'";
+	}
+	
+	public synchronized int execute(List<String> pCommand, List<String> pOutput) throws IOException {
+		ensureAlive();
+		long lStart = System.nanoTime();
+		timedOut = false;
+		ScheduledFuture<?> lWatchdog = null;
+		if (timeout > 0) {
+			lWatchdog = WATCHDOG.schedule(new Runnable() {
+				public void run() {
+					timedOut = true;
+					kill();
+				}
+			}, timeout, TimeUnit.MILLISECONDS);
+		}
+		try {
+			StringBuilder lCommand = new StringBuilder();
+			for (String lArgument:pCommand) {
+				lCommand.append(quote(lArgument)).append(' ');
+			}
+			lCommand.append("</dev/null 2>&1; echo \""+DONE_MARKER+" $?\"\n");
+			writer.write(lCommand.toString());
+			writer.flush();
+			// Spawn time lasts until svm_learn prints its first line, the rest is its runtime
+			long lRunning = 0;
+			String lLine = null;
+			while ((lLine = reader.readLine()) != null) {
+				if (lRunning == 0) {
+					lRunning = System.nanoTime();
+					metrics.record(EvaluationMetrics.SPAWN, lRunning-lStart);
+				}
+				// The shell may still report the killed command before it dies itself
+				if (lLine.startsWith(DONE_MARKER) && (!timedOut)) {
+					metrics.since(EvaluationMetrics.SOLVE, lRunning);
+					jobs++;
+					return Integer.parseInt(lLine.substring(DONE_MARKER.length()).trim());
+				}
+				if (!lLine.startsWith(DONE_MARKER)) pOutput.add(lLine);
+			}
+			throw new IOException(timedOut ? "Worker "+workerID+" killed because of timeout" : "Worker "+workerID+" terminated unexpectedly");
+		}
+		catch (IOException e) {
+			failures++;
+			kill();
+			// destroyForcibly does not wait, the next command must not find the dying shell alive
+			Process lProcess = process;
+			try {
+				if (lProcess != null) lProcess.waitFor();
+			}
+			catch (InterruptedException lInterrupted) {
+				Thread.currentThread().interrupt();
+			}
+			// Killing the shell may close its streams under the reader
+			if (timedOut) throw new IOException("Worker "+workerID+" killed because of timeout", e);
+			throw e;
+		}
+		finally {
+			if (lWatchdog != null) lWatchdog.cancel(false);
+			busyNanos += System.nanoTime()-lStart;
+		}
+	}
+	
+	public void kill() {
+		Process lProcess = process;
+		if (lProcess != null) {
+			Iterator<ProcessHandle> lDescendants = lProcess.descendants().iterator();
+			while (lDescendants.hasNext()) {
+				lDescendants.next().destroyForcibly();
+			}
+			lProcess.destroyForcibly();
+		}
+	}
+	
+	private void close() {
+		try {
+			if (writer != null) writer.close();
+		}
+		catch (IOException e) {
+		}
+		try {
+			if (reader != null) reader.close();
+		}
+		catch (IOException e) {
+		}
+		writer = null;
+		reader = null;
+	}
+	
+	public void shutdown() {
+		kill();
+		close();
+		process = null;
+	}
+	
+	public String getStatistics() {
+		double lBusySeconds = busyNanos/1e9;
+		double lLifeSeconds = (System.nanoTime()-createTime)/1e9;
+		return "Worker "+workerID+": "+jobs+" jobs, "+failures+" failures, "+restarts+" restarts, "
+			+String.format(Locale.US, "%.2f", jobs > 0 ? (busyNanos/1e6)/jobs : 0)+"ms/job, "
+			+String.format(Locale.US, "%.2f", lLifeSeconds > 0 ? jobs/lLifeSeconds : 0)+" jobs/s, "
+			+String.format(Locale.US, "%.1f", lLifeSeconds > 0 ? (lBusySeconds*100)/lLifeSeconds : 0)+"% busy";
+	}
+	
+}
@@ -0,0 +1,42 @@
+package org.geneticsvm;
+
+import java.io.*;
+
+public class SVMLightWorkerPool {
+
+	private SVMLightWorker[] workers;
+	
+	/** Workers killing any command running longer than pTimeout ms (0 = no timeout). */
+	public SVMLightWorkerPool(int pSize, long pTimeout, EvaluationMetrics pMetrics) {
+		workers = new SVMLightWorker[pSize];
+		File lWorkingDirectory = new File(System.getProperty("user.dir"));
+		for (int i=0; i<pSize; i++) {
+			workers[i] = new SVMLightWorker(i, lWorkingDirectory, pTimeout, pMetrics);
+		}
+	}
+	
+	public static SVMLightWorkerPool create(int pSize, long pTimeout, EvaluationMetrics pMetrics) {
+		return SVMLightWorker.isSupported() ? new SVMLightWorkerPool(pSize, pTimeout, pMetrics) : null;
+	}
+	
+	public SVMLightWorker getWorker(int pSlot) {
+		return workers[pSlot];
+	}
+	
+	public int size() {
+		return workers.length;
+	}
+	
+	public void printStatistics(PrintStream pStream) {
+		for (SVMLightWorker lWorker:workers) {
+			pStream.println("  "+lWorker.getStatistics());
+		}
+	}
+	
+	public void shutdown() {
+		for (SVMLightWorker lWorker:workers) {
+			lWorker.shutdown();
+		}
+	}
+	
+}
@@ -59,6 +59,22 @@ public class SVMParameters {
 		return new SVMParameters(KERNEL_LIN, pTrainingErrorTradeOff, 0, 0);
 	}
 	
+	public int getKernel() {
+		return kernel;
+	}
+	
+	public double getTradeOff() {
+		return tradeOff;
+	}
+	
+	public int getD() {
+		return d;
+	}
+	
+	public double getGamma() {
+		return gamma;
+	}
+	
 	public String toString() {
 		switch (kernel) {
 			case KERNEL_LIN: return "-t "+kernel+" -c "+tradeOff;
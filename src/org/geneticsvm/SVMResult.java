@@ -6,6 +6,7 @@ public class SVMResult implements Comparable<SVMResult> {
 	private double recall;
 	private SVMParameters parameters;
 	private int indexLabel;
+	private SMOModel model;
 	
 	public SVMResult(int pIndexLabel, SVMParameters pParameters, double pPrecision, double pRecall)  {
 		indexLabel = pIndexLabel;
@@ -14,6 +15,19 @@ public class SVMResult implements Comparable<SVMResult> {
 		recall = pRecall;
 	}
 	
+	public static SVMResult fromConfusion(int pIndexLabel, SVMParameters pParameters, int pTruePositives, int pFalsePositives, int pFalseNegatives) {
+		// Percentages with two decimals like svmlight reports them, -1 where undefined
+		double lPrecision = -1;
+		double lRecall = -1;
+		if (pTruePositives+pFalsePositives > 0) {
+			lPrecision = Math.round((10000.0*pTruePositives)/(pTruePositives+pFalsePositives))/100.0;
+		}
+		if (pTruePositives+pFalseNegatives > 0) {
+			lRecall = Math.round((10000.0*pTruePositives)/(pTruePositives+pFalseNegatives))/100.0;
+		}
+		return new SVMResult(pIndexLabel, pParameters, lPrecision, lRecall);
+	}
+	
 	public void setPrecision(double precision) {
 		this.precision = precision;
 	}
@@ -26,6 +40,15 @@ public class SVMResult implements Comparable<SVMResult> {
 		this.parameters = parameters;
 	}
 
+	/** Solution of the in-process solver on all rows, null for svm_learn and cached results. */
+	public SMOModel getModel() {
+		return model;
+	}
+	
+	public void setModel(SMOModel model) {
+		this.model = model;
+	}
+
 	public SVMParameters getParameters() {
 		return parameters;
 	}
@@ -4,44 +4,46 @@ import java.util.*;
 
 public class Sample implements Comparable<Sample> {
 
-	private String sample;
+	private long[] bits;
+	private int length;
 	private SVMResult[] indexLabelsBestResults;
 	
 	public Sample(String pSample) {
-		sample = pSample;
+		length = pSample.length();
+		bits = new long[Creature.words(length)];
+		for (int i=0; i<length; i++) {
+			if (pSample.charAt(i) == '1') bits[i >>> 6] |= 1L << i;
+		}
 	}
 	
-	public Sample(String pSamplingMode, int pSamplingMin, int[] pIndex) {
+	public Sample(String pSamplingMode, int pSamplingMin, int[] pIndex, Random pRandom) {
+		length = pIndex.length;
+		bits = new long[Creature.words(length)];
 		if (pSamplingMode.equals("rnd")) {
 			Map<Integer,List<Integer>> lMap = new HashMap<Integer,List<Integer>>();
 			for (int i=0; i<pIndex.length; i++) {
 				List<Integer> lList = lMap.get(pIndex[i]);
 				if (lList == null) {
-					lList = new Vector<Integer>();
+					lList = new ArrayList<Integer>();
 					lMap.put(pIndex[i], lList);
 				}
 				lList.add(i);
 			}
 			for (List<Integer> lList:lMap.values()) {
 				int lRemovableCount = Math.max(lList.size() - pSamplingMin, 0);
-				int lRemoveCount = (int)Math.round(Math.random()*lRemovableCount);
+				int lRemoveCount = (int)Math.round(pRandom.nextDouble()*lRemovableCount);
 				for (int i=0; i<lRemoveCount; i++) {
-					lList.remove((int)Math.floor(Math.random()*lList.size()));
+					lList.remove((int)Math.floor(pRandom.nextDouble()*lList.size()));
 				}
 			}
-			StringBuffer lBuffer = new StringBuffer();
-			for (int i=0; i<pIndex.length; i++) lBuffer.append('0');
 			for (List<Integer> lList:lMap.values()) {
 				for (Integer k:lList) {
-					lBuffer.setCharAt(k, '1');
+					bits[k >>> 6] |= 1L << k;
 				}
 			}
-			sample = lBuffer.toString();
 		}
 		else {
-			StringBuffer lBuffer = new StringBuffer();
-			for (int i=0; i<pIndex.length; i++) lBuffer.append('1');
-			sample = lBuffer.toString();
+			for (int i=0; i<length; i++) bits[i >>> 6] |= 1L << i;
 		}
 	}
 
@@ -63,30 +65,54 @@ public class Sample implements Comparable<Sample> {
 	}
 
 	public boolean equals(Object o) {
-		return sample.equals(o.toString());
+		if (o instanceof Sample) {
+			Sample lSample = (Sample)o;
+			return (lSample.length == length) && Arrays.equals(lSample.bits, bits);
+		}
+		return getSample().equals(o.toString());
+	}
+	
+	public boolean isSampled(int pRow) {
+		return (bits[pRow >>> 6] & (1L << pRow)) != 0;
+	}
+	
+	public int[] getSampleIndices() {
+		int[] lResult = new int[getSampleCount()];
+		int k = 0;
+		for (int i=0; i<bits.length; i++) {
+			long lWord = bits[i];
+			while (lWord != 0) {
+				lResult[k++] = (i << 6)+Long.numberOfTrailingZeros(lWord);
+				lWord &= lWord-1;
+			}
+		}
+		return lResult;
 	}
 	
 	public String getSample() {
-		return sample;
+		char[] lResult = new char[length];
+		for (int i=0; i<length; i++) {
+			lResult[i] = isSampled(i) ? '1' : '0';
+		}
+		return new String(lResult);
 	}
 	
 	public String toString() {
-		return sample;
+		return getSample();
 	}
 	
 	public int hashCode() {
-		return sample.hashCode();
+		return Arrays.hashCode(bits);
 	}
 
 	public int compareTo(Sample arg0) {
-		Double l = new Double(getFMeasure());
-		return l.compareTo(arg0.getFMeasure())*(-1);
+		return Double.compare(arg0.getFMeasure(), getFMeasure());
 	}
 	
 	public int getSampleCount() {
 		int lResult = 0;
-		for (int i=0; i<sample.length(); i++) {
-			if (sample.charAt(i) == '1') lResult++;
+		for (long lWord:bits) {
+			lResult += Long.bitCount(lWord);
 		}
 		return lResult;
 	}
@@ -5,7 +5,7 @@ import java.io.File;
 public class SamplingSVM {
 
 	public static void printSytnax() {
-		System.out.println("Syntax: SamplingSVM -m <Sampling Mode> [-smin MinSamples] [-sc Sampling Cycles] -p <Parameter-File> -i <Index-File> -d <Data-File> -f <Feature-File> -o <output> [-tmp <Temp>] [-mt <Multithreading>] [-to timeout]");
+		System.out.println("Syntax: SamplingSVM -m <Sampling Mode> [-smin MinSamples] [-sc Sampling Cycles] -p <Parameter-File> -i <Index-File> -d <Data-File> -f <Feature-File> -o <output> [-tmp <Temp>] [-fifo] [-ms <Matrix Storage>] [-mt <Multithreading>] [-to timeout] [-b <Backend>] [-cv <Folds>] [-kc <Kernel Cache MB>]");
 		System.out.println("  -m Sampling Mode: none|rnd");
 		System.out.println("  -smin Minimum Number of samples in a class (Default: 1)");
 		System.out.println("  -sc Sampling Cycles (Default: 10)");
@@ -14,9 +14,14 @@ public class SamplingSVM {
 		System.out.println("  -d Matrix Data File");
 		System.out.println("  -f Feature File");
 		System.out.println("  -o Output File");
-		System.out.println("  -tmp Tmp-Directory (Default: tmp)");
+		System.out.println("  -tmp Scratch directory of svm_learn, a subdirectory per run is deleted at exit (Default: /dev/shm if available, else tmp)");
+		System.out.println("  -fifo Stream training data to svm_learn through named pipes instead of scratch files");
+		System.out.println("  -ms Storage of matrices that are not sparse: double, float (half the memory) or int16 (a quarter, 65536 levels per column); mapped keeps any matrix outside the heap in its memory-mapped cache file (Default: double)");
 		System.out.println("  -mt Multithreading (Default: Number of CPU Cores Threads)");
 		System.out.println("  -to timeout for computation of a Thread in s (Default: 0 = no timeout)");
+		System.out.println("  -b SVM Backend: svmlight|smo (Default: svmlight, smo = in-process solver without svm_learn)");
+		System.out.println("  -cv Stratified k-fold cross-validation with a fixed seed instead of leave-one-out (Default: 0 = leave-one-out)");
+		System.out.println("  -kc Size of the kernel matrix cache of the smo backend in MB (Default: 256, 0 = disabled)");
 		System.exit(0);
 	}
 	
@@ -31,9 +36,14 @@ public class SamplingSVM {
 		File lDataFile = null;
 		File lFeatureFile = null;
 		File lOutputFile = null;
-		File lTmpDirectory = new File(System.getProperty("user.dir")+File.separator+"tmp");
+		File lTmpDirectory = null;
+		boolean lFifo = false;
+		String lStorage = MatrixLoader.DOUBLE;
 		int lThreads = Runtime.getRuntime().availableProcessors();
 		long lTimeOut = 0;
+		String lBackend = SVMBackend.SVMLIGHT;
+		int lFolds = 0;
+		int lKernelCacheSize = 256;
 		// Parse Parameters
 		for (int i=0; i<args.length; i++) {
 			if (args[i].equals("-m")) {
@@ -63,27 +73,47 @@ public class SamplingSVM {
 			else if (args[i].equals("-tmp")) {
 				lTmpDirectory = new File(args[++i]);
 			}
+			else if (args[i].equals("-fifo")) {
+				lFifo = true;
+			}
+			else if (args[i].equals("-ms")) {
+				lStorage = args[++i];
+			}
 			else if (args[i].equals("-mt")) {
 				lThreads = Integer.parseInt(args[++i]);
 			}			
 			else if (args[i].equals("-to")) {
 				lTimeOut = Long.parseLong(args[++i]);
 			}	
+			else if (args[i].equals("-b")) {
+				lBackend = args[++i];
+			}
+			else if (args[i].equals("-cv")) {
+				lFolds = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-kc")) {
+				lKernelCacheSize = Integer.parseInt(args[++i]);
+			}
 			else {
 				printSytnax();
 			}
 		}
 		//
+		if (!MatrixLoader.isStorage(lStorage)) {
+			System.err.println("Unknown matrix storage (-ms): "+lStorage);
+			System.exit(-1);
+		}
 		System.out.println("Using up to "+lThreads+" Threads ("+Runtime.getRuntime().availableProcessors()+" CPU Cores available)");
-		SamplingSVMStudy lSamplingSVMStudy = new SamplingSVMStudy(lParameterFile, lIndexFile, lDataFile, lFeatureFile, lOutputFile, lTmpDirectory, lSamplingMode, lMinSamples, lSamplingCycles, lThreads, lTimeOut);
+		SamplingSVMStudy lSamplingSVMStudy = new SamplingSVMStudy(lParameterFile, lIndexFile, lDataFile, lFeatureFile, lOutputFile, lTmpDirectory, lSamplingMode, lMinSamples, lSamplingCycles, lThreads, lTimeOut, lBackend, lKernelCacheSize);
+		lSamplingSVMStudy.setFolds(lFolds);
+		lSamplingSVMStudy.setFifo(lFifo);
+		lSamplingSVMStudy.setStorage(lStorage);
 		lSamplingSVMStudy.start();
-		while (lSamplingSVMStudy.getState() != Thread.State.TERMINATED) {
-			try {
-				Thread.sleep(500);
-			}
-			catch (InterruptedException e) {
-				e.printStackTrace();
-			}
+		try {
+			lSamplingSVMStudy.join();
+		}
+		catch (InterruptedException e) {
+			e.printStackTrace();
 		}
 		System.out.println("All Done - Operation took "+(System.currentTimeMillis()-lStart)+"ms");
 	}
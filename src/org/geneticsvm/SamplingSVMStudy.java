@@ -15,15 +15,28 @@ public class SamplingSVMStudy extends Thread {
 	private int[] index;
 	private int[] indexLabels;
 	private SVMParameters[] indexLabelParameters;
-	private double[][] matrix;
+	private DataMatrix matrix;
 	private int elapsedCycles;
 	private long timeout;
+	private String backend;
+	private int folds;
+	private long foldSeed = FoldSplit.DEFAULT_SEED;
+	private FoldSplit foldSplit;
+	private SVMLightWorkerPool workerPool;
+	private boolean fifo;
+	private String storage = MatrixLoader.DOUBLE;
+	private ScratchSpace scratch;
+	private int kernelCacheSize;
+	private KernelCache kernelCache;
+	private EvaluationMetrics metrics = new EvaluationMetrics();
+	private WorkStealingExecutor<ComputeSVMSampleThread> executor;
 	private String samplingMode;
 	private int minSamples;
 	private int samplingCycles;
 	private String features;
+	private Random random = new Random();
 	
-	public SamplingSVMStudy(File pParameterFile, File pIndexFile, File pDataFile, File pFeatureFile, File pOutputFile, File pTmpDirectory, String pSamplingMode, int pMinSamples, int pSamplingCycles, int pThreads, long pTimeout) {
+	public SamplingSVMStudy(File pParameterFile, File pIndexFile, File pDataFile, File pFeatureFile, File pOutputFile, File pTmpDirectory, String pSamplingMode, int pMinSamples, int pSamplingCycles, int pThreads, long pTimeout, String pBackend, int pKernelCacheSize) {
 		parameterFile = pParameterFile;
 		indexFile = pIndexFile;
 		dataFile = pDataFile;
@@ -31,6 +44,8 @@ public class SamplingSVMStudy extends Thread {
 		tmpDirectory = pTmpDirectory;
 		threads = pThreads;
 		timeout = pTimeout * 1000;
+		backend = pBackend;
+		kernelCacheSize = pKernelCacheSize;
 		featureFile = pFeatureFile;
 		samplingMode = pSamplingMode;
 		minSamples = pMinSamples;
@@ -75,10 +90,22 @@ public class SamplingSVMStudy extends Thread {
 			System.err.println("Unknown Sampling Mode: "+samplingMode);
 			System.exit(-1);
 		}
+		if ((!backend.equals(SVMBackend.SVMLIGHT)) && (!backend.equals(SVMBackend.SMO))) {
+			System.err.println("Unknown SVM Backend: "+backend);
+			System.exit(-1);
+		}
 		if (minSamples < 1) {
 			System.err.println("Minimum Number of Samples < 1 is invalid");
 			System.exit(-1);
 		}
+		if ((folds == 1) || (folds < 0) || (folds > index.length)) {
+			System.err.println("Number of cross-validation folds must be 0 (leave-one-out) or in range of [2,"+index.length+"]");
+			System.exit(-1);
+		}
+		if (kernelCacheSize < 0) {
+			System.err.println("Kernel Cache Size < 0 is invalid");
+			System.exit(-1);
+		}
 		if (threads < 1) {
 			System.err.println("Number of threads < 1 is invalid");
 			System.exit(-1);
@@ -91,14 +118,34 @@ public class SamplingSVMStudy extends Thread {
 			System.err.println("Number of Sampling Cycles < 1 is invalid");
 			System.exit(-1);
 		}
-		int lFeatures = matrix[0].length;
-		int lRows = matrix.length;
+		int lFeatures = matrix.getColumnCount();
+		int lRows = matrix.getRowCount();
 		if (index.length != lRows) {
 			System.err.println("Number of rows of data matrix ("+lRows+") and index ("+index.length+") differ!");
 			System.exit(-1);
 		}
 	}
 	
+	/** Streams training data to svm_learn through named pipes instead of scratch files. */
+	public void setFifo(boolean pFifo) {
+		fifo = pFifo;
+	}
+	
+	/** Stratified k-fold cross-validation instead of leave-one-out (0 = leave-one-out). */
+	public void setFolds(int pFolds) {
+		folds = pFolds;
+	}
+	
+	/** Seed of the stratified fold assignment. */
+	public void setFoldSeed(long pSeed) {
+		foldSeed = pSeed;
+	}
+	
+	/** Storage of the data matrix unless it is sparse, see MatrixLoader. */
+	public void setStorage(String pStorage) {
+		storage = pStorage;
+	}
+	
 	public void run() {
 		PrintWriter lWriter = null;
 		try {
@@ -115,74 +162,36 @@ public class SamplingSVMStudy extends Thread {
 			parseParameters();
 			checkSanity();
 			prepareDirectories();
+			if (folds > 0) {
+				foldSplit = new FoldSplit(index, folds, foldSeed);
+				System.out.println("Using stratified "+foldSplit+" cross-validation instead of leave-one-out");
+			}
+			if (backend.equals(SVMBackend.SVMLIGHT)) workerPool = SVMLightWorkerPool.create(threads, timeout, metrics);
+			if (backend.equals(SVMBackend.SMO) && (kernelCacheSize > 0)) kernelCache = new KernelCache(kernelCacheSize*1024L*1024L);
 			Sample[] lSamples = new Sample[samplingCycles];
 			for (elapsedCycles=0; elapsedCycles<lSamples.length; elapsedCycles++) {
-				lSamples[elapsedCycles] = new Sample(samplingMode, minSamples, index);
+				lSamples[elapsedCycles] = new Sample(samplingMode, minSamples, index, random);
 			}
-			ComputeSVMSampleThread[] lPool = new ComputeSVMSampleThread[threads];
-			int lFinished = 0;
+			metrics.register(outputFile.getName());
+			SVMBackendPool lBackends = new SVMBackendPool(backend, threads, scratch, workerPool, kernelCache, metrics);
+			executor = new WorkStealingExecutor<ComputeSVMSampleThread>(threads, timeout, metrics);
 			for (elapsedCycles=0; elapsedCycles<lSamples.length; elapsedCycles++) {
 				// Evaluate
-				Sample lSample = lSamples[elapsedCycles];
+				final Sample lSample = lSamples[elapsedCycles];
 				lSample.setIndexLabelsBestResults(null);
-				int lID = -1;
-				while (lID == -1) {
-					for (int i=0; i<lPool.length; i++) {
-						if (lPool[i] == null) {
-							lID = i;
-						}
-						else if (lPool[i].getState() == Thread.State.TERMINATED) {
-							lFinished++;
-							System.out.println(lFinished+"/"+samplingCycles+" "+lPool[i].getSample().getFMeasure());
-							lPool[i] = null;
-							lID = i;
-						}
-						else {
-							// Check Time
-							if (timeout > 0) {
-								if ((System.currentTimeMillis() - lPool[i].getStartTime()) > timeout) {
-									// Kill Thread
-									System.err.println("  Warning: Killing Thread because of Timeout "+(timeout/1000)+"s");
-									lPool[i].kill();
-									lPool[i].stop();
-									lPool[i].getSample().setIndexLabelsBestResults(null);
-									lPool[i] = null;
-								}
-							}
-						}
-					}
-					if (lID == -1) {
-						Thread.sleep(500);
+				executor.submit(new ComputeSVMSampleThread(lSample, indexLabelParameters, index, indexLabels, matrix, lBackends, foldSplit) {
+					public void kill() {
+						System.err.println("  Warning: Killing Thread because of Timeout "+(timeout/1000)+"s");
+						super.kill();
 					}
-				}
-				lPool[lID] = new ComputeSVMSampleThread(lSample, indexLabelParameters, index, indexLabels, matrix, tmpDirectory, lID);
-				lPool[lID].start();
+				});
 			}
-			boolean lAllDone = false;
-			while (!lAllDone) {
-				lAllDone = true;
-				for (int i=0; i<lPool.length; i++) {
-					if (lPool[i] != null) {
-						if (lPool[i].getState() == Thread.State.TERMINATED) {
-							lFinished++;
-							System.out.println(lFinished+"/"+samplingCycles+" "+lPool[i].getSample().getFMeasure());
-							lPool[i] = null;								
-						}
-						else {			
-							lAllDone = false;
-							// Check Time
-							if (timeout > 0) {									
-								if ((System.currentTimeMillis() - lPool[i].getStartTime()) > timeout) {
-									// Kill Thread
-									System.err.println("  Warning: Killing Thread because of Timeout "+(timeout/1000)+"s");
-									lPool[i].kill();
-									lPool[i].stop();
-									lPool[i].getSample().setIndexLabelsBestResults(null);
-									lPool[i] = null;
-								}
-							}
-						}
-					}
+			int lFinished = 0;
+			while (executor.getPending() > 0) {
+				ComputeSVMSampleThread lThread = executor.take();
+				lFinished++;
+				if (lThread != null) {
+					System.out.println(lFinished+"/"+samplingCycles+" "+lThread.getSample().getFMeasure());
 				}
 			}
 			
@@ -197,13 +206,30 @@ public class SamplingSVMStudy extends Thread {
 			}
 			lWriter.println("Average F-Measure: "+(lMed/lMedCount));
 			System.out.println("Average F-Measure: "+(lMed/lMedCount));
+			EvaluationMetrics.Snapshot lPhases = metrics.snapshot();
+			lWriter.println(lPhases);
+			System.out.println(lPhases);
+			if (scratch != null) {
+				String lScratch = scratch.getStatistics(0, 0);
+				lWriter.println(lScratch);
+				System.out.println(lScratch);
+			}
 			lWriter.flush();
 		}
 		catch (Exception e) {
 			e.printStackTrace();
 		}
 		finally {
+			if (executor != null) executor.shutdown();
 			if (lWriter != null) lWriter.close();
+			if (kernelCache != null) System.out.println(kernelCache.getStatistics());
+			if (backend.equals(SVMBackend.SMO)) System.out.println(SMOBackend.getStatistics());
+			if (workerPool != null) {
+				System.out.println("svm_learn Worker Statistics");
+				workerPool.printStatistics(System.out);
+				workerPool.shutdown();
+			}
+			if (scratch != null) scratch.close();
 		}
 	}
 	
@@ -233,34 +259,8 @@ public class SamplingSVMStudy extends Thread {
 	}
 	
 	private void parseMatrix() throws IOException {
-		BufferedReader lReader = new BufferedReader(new InputStreamReader(new FileInputStream(dataFile),"UTF-8"));
-		String lLine = null;
-		List<List<Double>> lEntries = new Vector<List<Double>>();
-		while ((lLine = lReader.readLine()) != null) {
-			lLine = lLine.trim();
-			if (lLine.length() == 0) continue;
-			if (lLine.startsWith("#")) continue;
-			lLine = lLine.replace('\t', ' ');
-			lLine = lLine.replaceAll("[ ]{2,}", " ").trim();
-			String[] lFields = lLine.split(" ");
-			List<Double> lCurrentLine = new Vector<Double>();
-			for (int i=0; i<lFields.length; i++) {
-				if (features.charAt(i) == '1') lCurrentLine.add(Double.parseDouble(lFields[i]));
-			}
-			if (lEntries.size()>0) {
-				if (lEntries.get(0).size() != lCurrentLine.size()) {
-					throw new IOException("Data Matrix contains rows of differing size");
-				}
-			}
-			lEntries.add(lCurrentLine);
-		}
-		lReader.close();
-		matrix = new double[lEntries.size()][lEntries.get(0).size()];
-		for (int i=0; i<lEntries.size(); i++) {
-			for (int k=0; k<lEntries.get(0).size(); k++) {
-				matrix[i][k] = lEntries.get(i).get(k);
-			}
-		}
+		matrix = MatrixLoader.load(dataFile, features, storage);
+		System.out.println("Data Matrix: "+matrix);
 	}
 	
 	private void parseParameters() throws IOException {
@@ -332,11 +332,9 @@ public class SamplingSVMStudy extends Thread {
 	}
 	
 	private void prepareDirectories() throws IOException {
-		tmpDirectory.mkdirs();
-		for (int i=0; i<threads; i++) {
-			File lFile = new File(tmpDirectory.getAbsolutePath()+File.separator+Integer.toString(i));
-			lFile.mkdirs();
-		}
+		if (!backend.equals(SVMBackend.SVMLIGHT)) return;
+		scratch = new ScratchSpace(tmpDirectory, fifo);
+		System.out.println("Scratch space: "+scratch);
 	}
 	
 }
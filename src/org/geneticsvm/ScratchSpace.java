@@ -0,0 +1,252 @@
+package org.geneticsvm;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Scratch files of the svm_learn backend: a directory of its own per run, below tmpfs (/dev/shm) unless another
+ * root is given, with one subdirectory per slot. The directory is deleted when the run ends, also on Ctrl-C.
+ * Optionally training data is streamed to svm_learn through a named pipe per slot instead of a file.
+ */
+public class ScratchSpace {
+
+	public static final File SHARED_MEMORY = new File("/dev/shm");
+	// Polling interval for the reader of a named pipe, doubled up to the maximum while waiting
+	public static final long MIN_POLL = 1;
+	public static final long MAX_POLL = 32;
+	// A reader that did not show up within this time quit before opening the pipe
+	public static final long READER_TIMEOUT = 1000;
+
+	private File directory;
+	private boolean fifo;
+	private AtomicLong written = new AtomicLong();
+	private AtomicLong streamed = new AtomicLong();
+	private Thread cleanup;
+
+	public ScratchSpace(File pRoot, boolean pFifo) throws IOException {
+		File lRoot = pRoot != null ? pRoot : getDefaultRoot();
+		lRoot.mkdirs();
+		directory = Files.createTempDirectory(lRoot.toPath(), "geneticsvm-").toFile();
+		fifo = pFifo && isFifoSupported();
+		if (pFifo && (!fifo)) System.err.println("Named pipes are not supported here, writing scratch files instead");
+		cleanup = new Thread("ScratchSpace-Cleanup") {
+			public void run() {
+				delete(directory);
+			}
+		};
+		Runtime.getRuntime().addShutdownHook(cleanup);
+	}
+
+	/** tmpfs if the system has one, tmp in the working directory otherwise. */
+	public static File getDefaultRoot() {
+		if (SHARED_MEMORY.isDirectory() && SHARED_MEMORY.canWrite()) return SHARED_MEMORY;
+		return new File(System.getProperty("user.dir")+File.separator+"tmp");
+	}
+
+	/** Named pipes need mkfifo and /proc to tell when svm_learn closed the pipe between its two reads. */
+	public static boolean isFifoSupported() {
+		return new File("/proc/self/fd").isDirectory() && (new File("/usr/bin/mkfifo").canExecute() || new File("/bin/mkfifo").canExecute());
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public boolean isFifo() {
+		return fifo;
+	}
+
+	public File getSlotDirectory(int pSlot) {
+		File lResult = new File(directory, Integer.toString(pSlot));
+		lResult.mkdirs();
+		return lResult;
+	}
+
+	/** Named pipe of a slot, created on first use. */
+	public File getFifo(int pSlot, String pName) throws IOException {
+		File lResult = new File(getSlotDirectory(pSlot), pName);
+		if (lResult.exists()) return lResult;
+		Process lProcess = new ProcessBuilder("mkfifo", lResult.getAbsolutePath()).redirectErrorStream(true).start();
+		try {
+			if (lProcess.waitFor() != 0) throw new IOException("mkfifo failed for "+lResult.getAbsolutePath());
+		}
+		catch (InterruptedException e) {
+			throw new IOException("Interrupted while creating "+lResult.getAbsolutePath());
+		}
+		return lResult;
+	}
+
+	public void addWritten(long pBytes) {
+		written.addAndGet(pBytes);
+	}
+
+	/** Bytes written to scratch files. */
+	public long getWritten() {
+		return written.get();
+	}
+
+	/** Bytes streamed through named pipes. */
+	public long getStreamed() {
+		return streamed.get();
+	}
+
+	/** Bytes currently held by the scratch files, including models and predictions of svm_learn. */
+	public long getUsage() {
+		return usage(directory);
+	}
+
+	/** Bytes written and streamed since the given counts, and the current usage. */
+	public String getStatistics(long pWrittenBefore, long pStreamedBefore) {
+		return "Scratch: "+megabytes(getWritten()-pWrittenBefore)+" written, "+megabytes(getStreamed()-pStreamedBefore)+" streamed, "+megabytes(getUsage())+" in use";
+	}
+	
+	private static String megabytes(long pBytes) {
+		return String.format(Locale.US, "%.2fMB", pBytes/(1024.0*1024.0));
+	}
+	
+	private static long usage(File pFile) {
+		File[] lFiles = pFile.listFiles();
+		if (lFiles == null) return pFile.isFile() ? pFile.length() : 0;
+		long lResult = 0;
+		for (File lFile:lFiles) {
+			lResult += usage(lFile);
+		}
+		return lResult;
+	}
+
+	/** Starts streaming pContent into the named pipe, to be finished once the reading process exited. */
+	public Feeder feed(File pFifo, ByteBuffer[] pContent) {
+		Feeder lResult = new Feeder(pFifo, pContent);
+		lResult.start();
+		return lResult;
+	}
+
+	/** Writes the content once for every time a reader opens the pipe, svm_learn reads its input twice. */
+	public class Feeder extends Thread {
+
+		private File pipe;
+		private ByteBuffer[] content;
+		private volatile boolean finished = false;
+
+		Feeder(File pPipe, ByteBuffer[] pContent) {
+			super("ScratchSpace-Feeder "+pPipe.getName());
+			setDaemon(true);
+			pipe = pPipe;
+			content = pContent;
+		}
+
+		public void run() {
+			try {
+				Path lPipe = pipe.toPath().toRealPath();
+				while (!finished) {
+					// Blocks until a reader opens the pipe
+					FileChannel lChannel = FileChannel.open(pipe.toPath(), StandardOpenOption.WRITE);
+					long lReader = -1;
+					try {
+						if (finished) return;
+						streamed.addAndGet(TrainingSet.write(lChannel, content));
+						// Small content fits into the pipe buffer before the reader's open completed; it cannot see
+						// the end before this close, so wait until its descriptor shows up (unless it quit early)
+						long lDeadline = System.currentTimeMillis()+READER_TIMEOUT;
+						long lPoll = MIN_POLL;
+						while ((!finished) && ((lReader = findReader(lPipe)) < 0) && (System.currentTimeMillis() < lDeadline)) {
+							Thread.sleep(lPoll);
+							lPoll = Math.min(2*lPoll, MAX_POLL);
+						}
+					}
+					finally {
+						lChannel.close();
+					}
+					// Until the reader closed its handle, the next open would rejoin it instead of waiting for the next read.
+					// There is no blocking notification for that on a named pipe, so only the reader's descriptors are polled
+					long lPoll = MIN_POLL;
+					while ((!finished) && (lReader >= 0) && isOpen(lReader, lPipe)) {
+						Thread.sleep(lPoll);
+						lPoll = Math.min(2*lPoll, MAX_POLL);
+					}
+				}
+			}
+			catch (IOException e) {
+				// Reader exited before reading everything, svm_learn reports the error itself
+			}
+			catch (InterruptedException e) {
+			}
+		}
+
+		/** Ends the feeding; an open waiting for a reader is released by opening the pipe read-write, which never blocks. */
+		public void finish() {
+			finished = true;
+			if (!isAlive()) return;
+			try {
+				// Only opened to unblock the feeder's open, nothing is read or written
+				RandomAccessFile lRelease = new RandomAccessFile(pipe, "rw");
+				try {
+					join(1000);
+				}
+				finally {
+					lRelease.close();
+				}
+			}
+			catch (IOException e) {
+			}
+			catch (InterruptedException e) {
+			}
+		}
+
+	}
+
+	/** Child process (svm_learn, also below an SVMLightWorker shell) holding the pipe open, -1 if there is none. */
+	private static long findReader(Path pPipe) {
+		Iterator<ProcessHandle> lProcesses = ProcessHandle.current().descendants().iterator();
+		while (lProcesses.hasNext()) {
+			long lPid = lProcesses.next().pid();
+			if (isOpen(lPid, pPipe)) return lPid;
+		}
+		return -1;
+	}
+
+	/** Whether the process holds the pipe open. */
+	private static boolean isOpen(long pPid, Path pPipe) {
+		File[] lDescriptors = new File("/proc/"+pPid+"/fd").listFiles();
+		if (lDescriptors == null) return false;
+		for (File lDescriptor:lDescriptors) {
+			try {
+				if (Files.readSymbolicLink(lDescriptor.toPath()).equals(pPipe)) return true;
+			}
+			catch (IOException e) {
+				// Descriptor closed meanwhile
+			}
+		}
+		return false;
+	}
+
+	private static void delete(File pFile) {
+		File[] lFiles = pFile.listFiles();
+		if (lFiles != null) {
+			for (File lFile:lFiles) {
+				delete(lFile);
+			}
+		}
+		pFile.delete();
+	}
+
+	/** Deletes the scratch directory. */
+	public void close() {
+		delete(directory);
+		try {
+			Runtime.getRuntime().removeShutdownHook(cleanup);
+		}
+		catch (IllegalStateException e) {
+			// Already shutting down, the hook deletes the directory
+		}
+	}
+
+	public String toString() {
+		return directory.getAbsolutePath()+(fifo ? " (named pipes)" : "");
+	}
+
+}
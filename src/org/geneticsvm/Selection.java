@@ -0,0 +1,32 @@
+package org.geneticsvm;
+
+import java.util.*;
+
+/** Choice of the parents of the next turn from the creatures of the current one, ranked best first. */
+public interface Selection {
+
+	public static final String ORDER = "order";
+	public static final String RANK = "rank";
+	public static final String TOURNAMENT = "tournament";
+	
+	/**
+	 * @param pSlot index of the offspring to breed, in [0, ranked creatures)
+	 */
+	public Creature select(List<Creature> pRanked, int pSlot, Random pRandom);
+	
+	/**
+	 * @param pSpec order, rank or tournament[:&lt;size&gt;]
+	 */
+	public static Selection create(String pSpec) {
+		if (pSpec.equals(ORDER)) return new OrderSelection();
+		if (pSpec.equals(RANK)) return new RankSelection();
+		if (pSpec.equals(TOURNAMENT)) return new TournamentSelection(2);
+		if (pSpec.startsWith(TOURNAMENT+":")) {
+			int lSize = Integer.parseInt(pSpec.substring(TOURNAMENT.length()+1));
+			if (lSize < 1) throw new IllegalArgumentException("Tournament size < 1 is invalid");
+			return new TournamentSelection(lSize);
+		}
+		throw new IllegalArgumentException("Unknown selection: "+pSpec);
+	}
+	
+}
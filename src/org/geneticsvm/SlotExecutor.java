@@ -0,0 +1,109 @@
+package org.geneticsvm;
+
+import java.util.concurrent.*;
+
+public class SlotExecutor<T> {
+
+	public interface Task<T> {
+		
+		public T run(int pSlot) throws Exception;
+		
+		public void kill();
+		
+	}
+	
+	private ExecutorService executor;
+	private CompletionService<T> completionService;
+	private ScheduledExecutorService watchdog;
+	private BlockingQueue<Integer> freeSlots;
+	private long timeout;
+	private EvaluationMetrics metrics;
+	private int pending = 0;
+	
+	public SlotExecutor(int pSlots, long pTimeout, EvaluationMetrics pMetrics) {
+		executor = createExecutor(pSlots);
+		completionService = new ExecutorCompletionService<T>(executor);
+		watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable pRunnable) {
+				Thread lThread = new Thread(pRunnable, "SlotExecutor-Watchdog");
+				lThread.setDaemon(true);
+				return lThread;
+			}
+		});
+		freeSlots = new ArrayBlockingQueue<Integer>(pSlots);
+		for (int i=0; i<pSlots; i++) {
+			freeSlots.add(i);
+		}
+		timeout = pTimeout;
+		metrics = pMetrics;
+	}
+	
+	private static ExecutorService createExecutor(int pSlots) {
+		// Use virtual threads where the runtime offers them; the slots bound the concurrency either way
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (Exception e) {
+			return Executors.newFixedThreadPool(pSlots);
+		}
+	}
+	
+	public void submit(final Task<T> pTask) {
+		pending++;
+		final long lSubmitted = System.nanoTime();
+		completionService.submit(new Callable<T>() {
+			private boolean running = false;
+			public T call() throws Exception {
+				int lSlot = freeSlots.take();
+				metrics.since(EvaluationMetrics.QUEUE, lSubmitted);
+				ScheduledFuture<?> lKill = null;
+				try {
+					synchronized (this) {
+						running = true;
+					}
+					if (timeout > 0) {
+						lKill = watchdog.schedule(new Runnable() {
+							public void run() {
+								kill();
+							}
+						}, timeout, TimeUnit.MILLISECONDS);
+					}
+					return pTask.run(lSlot);
+				}
+				finally {
+					synchronized (this) {
+						running = false;
+					}
+					if (lKill != null) lKill.cancel(false);
+					freeSlots.put(lSlot);
+				}
+			}
+			private synchronized void kill() {
+				// Never kill after the task released its slot to the next one
+				if (running) pTask.kill();
+			}
+		});
+	}
+	
+	public int getPending() {
+		return pending;
+	}
+	
+	public T take() throws InterruptedException {
+		Future<T> lFuture = completionService.take();
+		pending--;
+		try {
+			return lFuture.get();
+		}
+		catch (ExecutionException e) {
+			e.getCause().printStackTrace();
+			return null;
+		}
+	}
+	
+	public void shutdown() {
+		executor.shutdownNow();
+		watchdog.shutdownNow();
+	}
+	
+}
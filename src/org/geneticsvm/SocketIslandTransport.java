@@ -0,0 +1,73 @@
+package org.geneticsvm;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/** Islands in separate JVMs, on one machine or a LAN. Every island listens on its own address. */
+public class SocketIslandTransport implements IslandTransport {
+
+	public static final int CONNECT_TIMEOUT = 5000;
+
+	private ServerSocket serverSocket;
+	private InetSocketAddress next;
+	private BlockingQueue<Creature> inbox = new LinkedBlockingQueue<Creature>();
+	
+	public SocketIslandTransport(InetSocketAddress pLocal, InetSocketAddress pNext) throws IOException {
+		next = pNext;
+		serverSocket = new ServerSocket();
+		serverSocket.setReuseAddress(true);
+		serverSocket.bind(new InetSocketAddress(pLocal.getPort()));
+		Thread lThread = new Thread("Island Listener "+pLocal) {
+			public void run() {
+				while (!serverSocket.isClosed()) {
+					try {
+						Socket lSocket = serverSocket.accept();
+						try {
+							inbox.addAll(IslandTransport.read(new DataInputStream(new BufferedInputStream(lSocket.getInputStream()))));
+						}
+						finally {
+							lSocket.close();
+						}
+					}
+					catch (IOException e) {
+						if (!serverSocket.isClosed()) e.printStackTrace();
+					}
+				}
+			}
+		};
+		lThread.setDaemon(true);
+		lThread.start();
+	}
+	
+	public void emigrate(List<Creature> pMigrants) {
+		Socket lSocket = new Socket();
+		try {
+			lSocket.connect(next, CONNECT_TIMEOUT);
+			IslandTransport.write(new DataOutputStream(new BufferedOutputStream(lSocket.getOutputStream())), pMigrants);
+		}
+		catch (IOException e) {
+			// The next island may not be up yet or already be done, its loss is only diversity
+			System.err.println("Island "+next+" not reachable, "+pMigrants.size()+" migrants dropped: "+e.getMessage());
+		}
+		finally {
+			try {
+				lSocket.close();
+			}
+			catch (IOException e) {
+			}
+		}
+	}
+	
+	public List<Creature> immigrate() {
+		List<Creature> lResult = new ArrayList<Creature>();
+		inbox.drainTo(lResult);
+		return lResult;
+	}
+	
+	public void close() throws IOException {
+		serverSocket.close();
+	}
+	
+}
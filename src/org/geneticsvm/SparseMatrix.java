@@ -0,0 +1,75 @@
+package org.geneticsvm;
+
+import java.util.*;
+
+/** Compressed sparse rows: the non-zero values of all rows in one array, with their columns in ascending order. */
+public class SparseMatrix implements DataMatrix {
+
+	private int columns;
+	private int[] rowOffsets;
+	private int[] columnIndices;
+	private double[] values;
+
+	/** Row i holds the entries from pRowOffsets[i] to pRowOffsets[i+1] of pColumnIndices and pValues. */
+	public SparseMatrix(int pColumns, int[] pRowOffsets, int[] pColumnIndices, double[] pValues) {
+		columns = pColumns;
+		rowOffsets = pRowOffsets;
+		columnIndices = pColumnIndices;
+		values = pValues;
+	}
+
+	public int getRowCount() {
+		return rowOffsets.length-1;
+	}
+
+	public int getColumnCount() {
+		return columns;
+	}
+
+	public double get(int pRow, int pColumn) {
+		int lPosition = Arrays.binarySearch(columnIndices, rowOffsets[pRow], rowOffsets[pRow+1], pColumn);
+		return lPosition >= 0 ? values[lPosition] : 0;
+	}
+
+	public void getRow(int pRow, double[] pTarget) {
+		Arrays.fill(pTarget, 0, columns, 0);
+		for (int i=rowOffsets[pRow]; i<rowOffsets[pRow+1]; i++) {
+			pTarget[columnIndices[i]] = values[i];
+		}
+	}
+
+	public int project(int pRow, int[] pColumns, int[] pPositions, double[] pValues) {
+		// Merge of the row's columns with the selected ones, both ascending
+		int lResult = 0;
+		int i = rowOffsets[pRow];
+		int lEnd = rowOffsets[pRow+1];
+		int m = 0;
+		while ((i < lEnd) && (m < pColumns.length)) {
+			if (columnIndices[i] < pColumns[m]) {
+				i++;
+			}
+			else if (columnIndices[i] > pColumns[m]) {
+				m++;
+			}
+			else {
+				pPositions[lResult] = m++;
+				pValues[lResult++] = values[i++];
+			}
+		}
+		return lResult;
+	}
+
+	public double getDensity() {
+		long lCells = (long)getRowCount()*columns;
+		return lCells > 0 ? values.length/(double)lCells : 0;
+	}
+
+	public long getBytes() {
+		return 4L*rowOffsets.length+12L*values.length;
+	}
+
+	public String toString() {
+		return MatrixLoader.describe(this, "sparse");
+	}
+
+}
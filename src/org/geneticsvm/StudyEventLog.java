@@ -0,0 +1,72 @@
+package org.geneticsvm;
+
+import java.io.*;
+
+/**
+ * JSON Lines stream of a GeneticSVMStudy next to its text report: one record per ranked creature and per label
+ * result of every turn, plus racing, migration and turn summaries. Tools can tail it while the study runs.
+ */
+public class StudyEventLog {
+
+	private PrintWriter writer;
+
+	public StudyEventLog(File pFile, boolean pAppend) throws IOException {
+		writer = new PrintWriter(new AsyncWriter(pFile, pAppend));
+	}
+
+	/** Events file written next to a report. */
+	public static File getFile(File pReport) {
+		return new File(pReport.getPath()+".jsonl");
+	}
+
+	public void creature(int pTurn, int pRank, Creature pCreature) {
+		int lFeatures = pCreature.getFeaturesCount();
+		writer.println("{\"type\":\"creature\",\"turn\":"+pTurn+",\"rank\":"+pRank+",\"fMeasure\":"+number(pCreature.getFMeasure())
+			+",\"features\":"+lFeatures+",\"featureRatio\":"+number((double)lFeatures/pCreature.getLength())
+			+",\"evaluated\":"+pCreature.isEvaluated()+",\"keep\":"+pCreature.isKeep()+",\"mask\":\""+pCreature.getFeatures()+"\"}");
+		for (SVMResult lResult:pCreature.getIndexLabelsBestResults()) {
+			StringBuilder lBuilder = new StringBuilder("{\"type\":\"label\",\"turn\":"+pTurn+",\"rank\":"+pRank+",\"label\":"+lResult.getIndexLabel()
+				+",\"fMeasure\":"+number(lResult.getFMeasure())+",\"precision\":"+number(lResult.getPrecision())+",\"recall\":"+number(lResult.getRecall()));
+			SVMParameters lParameters = lResult.getParameters();
+			if (lParameters != null) {
+				lBuilder.append(",\"kernel\":"+lParameters.getKernel()+",\"c\":"+number(lParameters.getTradeOff())+",\"d\":"+lParameters.getD()+",\"gamma\":"+number(lParameters.getGamma())+",\"parameters\":\""+lParameters+"\"");
+			}
+			else {
+				lBuilder.append(",\"parameters\":null");
+			}
+			lBuilder.append(",\"mask\":\""+pCreature.getFeatures()+"\"}");
+			writer.println(lBuilder.toString());
+		}
+	}
+
+	public void race(int pTurn, int pCandidates, int pDropped, double pThreshold, long pSaved, long pTotal) {
+		writer.println("{\"type\":\"race\",\"turn\":"+pTurn+",\"candidates\":"+pCandidates+",\"dropped\":"+pDropped+",\"threshold\":"+number(pThreshold)+",\"savedTrainings\":"+pSaved+",\"totalTrainings\":"+pTotal+"}");
+	}
+
+	public void migration(int pTurn, int pSent, int pReceived, int pAccepted) {
+		writer.println("{\"type\":\"migration\",\"turn\":"+pTurn+",\"sent\":"+pSent+",\"received\":"+pReceived+",\"accepted\":"+pAccepted+"}");
+	}
+
+	/** Closes a turn and hands its records to the writer thread. */
+	public void turn(int pTurn, int pCreatures, double pBestF, double pAverageF, long pMillis, long pEvaluations, long pTrainings, EvaluationMetrics.Snapshot pPhases) {
+		StringBuilder lBuilder = new StringBuilder("{\"type\":\"turn\",\"turn\":"+pTurn+",\"creatures\":"+pCreatures+",\"bestFMeasure\":"+number(pBestF)+",\"averageFMeasure\":"+number(pAverageF)+",\"millis\":"+pMillis+",\"evaluations\":"+pEvaluations+",\"trainings\":"+pTrainings+",\"phases\":{");
+		for (int i=0; i<EvaluationMetrics.PHASES; i++) {
+			if (i > 0) lBuilder.append(",");
+			lBuilder.append("\""+EvaluationMetrics.getName(i)+"\":{\"count\":"+pPhases.getCount(i)+",\"millis\":"+number(pPhases.getMillis(i))+",\"p50\":"+number(pPhases.getQuantileMillis(i, 0.5))+",\"p90\":"+number(pPhases.getQuantileMillis(i, 0.9))+",\"p99\":"+number(pPhases.getQuantileMillis(i, 0.99))+"}");
+		}
+		lBuilder.append("}}");
+		writer.println(lBuilder.toString());
+		writer.flush();
+	}
+
+	public void close() {
+		writer.close();
+	}
+
+	private static String number(double pValue) {
+		// JSON has no NaN or Infinity
+		if (Double.isNaN(pValue) || Double.isInfinite(pValue)) return "null";
+		return Double.toString(pValue);
+	}
+
+}
@@ -0,0 +1,23 @@
+package org.geneticsvm;
+
+import java.util.*;
+
+/** The best of a number of creatures drawn uniformly with replacement. */
+public class TournamentSelection implements Selection {
+
+	private int size;
+	
+	public TournamentSelection(int pSize) {
+		size = pSize;
+	}
+	
+	public Creature select(List<Creature> pRanked, int pSlot, Random pRandom) {
+		// The list is ranked, so the smallest index drawn wins
+		int lBest = pRanked.size();
+		for (int i=0; i<size; i++) {
+			lBest = Math.min(lBest, pRandom.nextInt(pRanked.size()));
+		}
+		return pRanked.get(lBest);
+	}
+	
+}
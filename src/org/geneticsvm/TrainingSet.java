@@ -0,0 +1,192 @@
+package org.geneticsvm;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class TrainingSet {
+
+	private DataMatrix matrix;
+	private int[] index;
+	private int[] rows;
+	private int[] columns;
+	private int[] parentColumns;
+	private byte[] formattedRows;
+	private int[] formattedRowOffsets;
+	
+	public TrainingSet(DataMatrix pMatrix, int[] pIndex, int[] pRows, int[] pColumns) {
+		matrix = pMatrix;
+		index = pIndex;
+		rows = pRows;
+		columns = pColumns;
+	}
+	
+	public static TrainingSet forFeatures(DataMatrix pMatrix, int[] pIndex, Creature pCreature) {
+		int[] lRows = new int[pMatrix.getRowCount()];
+		for (int i=0; i<lRows.length; i++) lRows[i] = i;
+		TrainingSet lResult = new TrainingSet(pMatrix, pIndex, lRows, pCreature.getFeatureIndices());
+		if (pCreature.getParentBits() != null) lResult.parentColumns = Creature.indices(pCreature.getParentBits());
+		return lResult;
+	}
+	
+	public static TrainingSet forSample(DataMatrix pMatrix, int[] pIndex, Sample pSample) {
+		int[] lColumns = new int[pMatrix.getColumnCount()];
+		for (int i=0; i<lColumns.length; i++) lColumns[i] = i;
+		return new TrainingSet(pMatrix, pIndex, pSample.getSampleIndices(), lColumns);
+	}
+	
+	public int getRowCount() {
+		return rows.length;
+	}
+	
+	public int getColumnCount() {
+		return columns.length;
+	}
+	
+	public double getValue(int pRow, int pColumn) {
+		return matrix.get(rows[pRow], columns[pColumn]);
+	}
+	
+	/** Non-zero values of a row: stores the column (position in getColumns()) and value of each and returns their number. */
+	public int project(int pRow, int[] pPositions, double[] pValues) {
+		return matrix.project(rows[pRow], columns, pPositions, pValues);
+	}
+	
+	public int getLabel(int pRow, int pIndexLabel) {
+		return index[rows[pRow]] == pIndexLabel ? 1 : -1;
+	}
+	
+	public synchronized byte[] getFormattedRows() {
+		if (formattedRows == null) format();
+		return formattedRows;
+	}
+	
+	public synchronized int[] getFormattedRowOffsets() {
+		if (formattedRows == null) format();
+		return formattedRowOffsets;
+	}
+	
+	private void format() {
+		// svmlight feature list of every row (without target), shared by all labels and parameters; zeros are
+		// left out, svmlight reads missing features as 0
+		byte[] lBuffer = new byte[(int)Math.min(Integer.MAX_VALUE-8, Math.max(1024, rows.length*(long)columns.length*matrix.getDensity()*12))];
+		int lLength = 0;
+		int[] lPositions = new int[columns.length];
+		double[] lValues = new double[columns.length];
+		formattedRowOffsets = new int[rows.length+1];
+		for (int i=0; i<rows.length; i++) {
+			formattedRowOffsets[i] = lLength;
+			int lCount = project(i, lPositions, lValues);
+			for (int m=0; m<lCount; m++) {
+				String lValue = Double.toString(lValues[m]);
+				if (lLength+lValue.length()+13 > lBuffer.length) {
+					lBuffer = Arrays.copyOf(lBuffer, Math.max(lBuffer.length*2, lLength+lValue.length()+13));
+				}
+				lBuffer[lLength++] = ' ';
+				lLength = appendInt(lBuffer, lLength, lPositions[m]+1);
+				lBuffer[lLength++] = ':';
+				for (int k=0; k<lValue.length(); k++) {
+					lBuffer[lLength++] = (byte)lValue.charAt(k);
+				}
+			}
+			if (lLength+1 > lBuffer.length) lBuffer = Arrays.copyOf(lBuffer, lBuffer.length*2);
+			lBuffer[lLength++] = '\n';
+		}
+		formattedRowOffsets[rows.length] = lLength;
+		formattedRows = lBuffer;
+	}
+	
+	public long writeSVMLight(File pFile, int pIndexLabel, int pExcludedRow) throws IOException {
+		boolean[] lSelected = new boolean[rows.length];
+		Arrays.fill(lSelected, true);
+		if (pExcludedRow >= 0) lSelected[pExcludedRow] = false;
+		return writeSVMLight(pFile, pIndexLabel, lSelected);
+	}
+	
+	public long writeSVMLight(File pFile, int pIndexLabel, boolean[] pSelected) throws IOException {
+		return write(pFile, getSVMLight(pIndexLabel, pSelected));
+	}
+	
+	/** SVMlight lines of the selected rows as buffers over the formatted rows, written without copying. */
+	public ByteBuffer[] getSVMLight(int pIndexLabel, boolean[] pSelected) {
+		byte[] lRows = getFormattedRows();
+		int[] lOffsets = getFormattedRowOffsets();
+		ByteBuffer lPositive = ByteBuffer.wrap(new byte[]{'1'});
+		ByteBuffer lNegative = ByteBuffer.wrap(new byte[]{'-', '1'});
+		List<ByteBuffer> lBuffers = new ArrayList<ByteBuffer>(2*rows.length);
+		for (int k=0; k<rows.length; k++) {
+			if (!pSelected[k]) continue;
+			lBuffers.add(getLabel(k, pIndexLabel) == 1 ? lPositive : lNegative);
+			lBuffers.add(ByteBuffer.wrap(lRows, lOffsets[k], lOffsets[k+1]-lOffsets[k]));
+		}
+		return lBuffers.toArray(new ByteBuffer[lBuffers.size()]);
+	}
+	
+	public long writeSVMLightQuery(File pFile, int pRow) throws IOException {
+		byte[] lRows = getFormattedRows();
+		int[] lOffsets = getFormattedRowOffsets();
+		return write(pFile, new ByteBuffer[]{ByteBuffer.wrap(new byte[]{'0'}), ByteBuffer.wrap(lRows, lOffsets[pRow], lOffsets[pRow+1]-lOffsets[pRow])});
+	}
+	
+	private static long write(File pFile, ByteBuffer[] pBuffers) throws IOException {
+		FileChannel lChannel = FileChannel.open(pFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			return write(lChannel, pBuffers);
+		}
+		finally {
+			lChannel.close();
+		}
+	}
+	
+	/** Writes duplicates of the buffers, so the same content can be written again, and returns the number of bytes. */
+	static long write(GatheringByteChannel pChannel, ByteBuffer[] pBuffers) throws IOException {
+		ByteBuffer[] lBuffers = new ByteBuffer[pBuffers.length];
+		long lResult = 0;
+		for (int i=0; i<lBuffers.length; i++) {
+			lBuffers[i] = pBuffers[i].duplicate();
+			lResult += lBuffers[i].remaining();
+		}
+		// Gathering writes are limited in the number of buffers per call
+		for (int lFirst=0; lFirst<lBuffers.length; lFirst+=1024) {
+			int lCount = Math.min(1024, lBuffers.length-lFirst);
+			while (lBuffers[lFirst+lCount-1].hasRemaining()) {
+				pChannel.write(lBuffers, lFirst, lCount);
+			}
+		}
+		return lResult;
+	}
+	
+	private static int appendInt(byte[] pBuffer, int pOffset, int pValue) {
+		int lDigits = 1;
+		for (int lRest=pValue/10; lRest>0; lRest/=10) lDigits++;
+		for (int k=pOffset+lDigits-1; k>=pOffset; k--) {
+			pBuffer[k] = (byte)('0'+pValue%10);
+			pValue /= 10;
+		}
+		return pOffset+lDigits;
+	}
+	
+	public int[] getRows() {
+		return rows;
+	}
+	
+	public int[] getColumns() {
+		return columns;
+	}
+	
+	/** Columns of the parent creature's training set over the same rows, null if unknown. */
+	public int[] getParentColumns() {
+		return parentColumns;
+	}
+	
+	public DataMatrix getMatrix() {
+		return matrix;
+	}
+	
+	public int[] getIndex() {
+		return index;
+	}
+	
+}
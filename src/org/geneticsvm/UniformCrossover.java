@@ -0,0 +1,17 @@
+package org.geneticsvm;
+
+import java.util.*;
+
+/** Every feature is taken from either parent with probability 1/2, 64 features per random number. */
+public class UniformCrossover implements Crossover {
+
+	public long[] cross(long[] pFirst, long[] pSecond, int pLength, Random pRandom) {
+		long[] lResult = new long[pFirst.length];
+		for (int i=0; i<lResult.length; i++) {
+			long lMask = pRandom.nextLong();
+			lResult[i] = (pFirst[i] & lMask) | (pSecond[i] & ~lMask);
+		}
+		return lResult;
+	}
+	
+}
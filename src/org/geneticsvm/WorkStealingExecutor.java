@@ -0,0 +1,207 @@
+package org.geneticsvm;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs jobs that split into independent parts, e.g. a creature into its (parameters, label) trainings, on a
+ * work-stealing pool. Each pool thread owns one slot, threads that ran out of parts steal them from the others,
+ * and a job is reduced on the thread that finishes its last part. Results are taken in completion order
+ * like from SlotExecutor.
+ */
+public class WorkStealingExecutor<T> {
+
+	public interface Job<T> {
+
+		/** Prepares the job on a pool thread and returns its parts, none if there is nothing to compute. */
+		public List<? extends Part> split() throws Exception;
+
+		/** Combines the results of the parts after the last one finished. */
+		public T reduce() throws Exception;
+
+		/** Stops the running parts of this job (timeout). */
+		public void kill();
+
+	}
+
+	public interface Part {
+
+		public void run(int pSlot) throws Exception;
+
+	}
+
+	private ForkJoinPool pool;
+	private ScheduledExecutorService watchdog;
+	private BlockingQueue<Integer> freeSlots;
+	private BlockingQueue<Future<T>> completed = new LinkedBlockingQueue<Future<T>>();
+	private long timeout;
+	private EvaluationMetrics metrics;
+	private int pending = 0;
+
+	/** Records the time jobs wait for a thread in pMetrics. */
+	public WorkStealingExecutor(int pSlots, long pTimeout, EvaluationMetrics pMetrics) {
+		freeSlots = new ArrayBlockingQueue<Integer>(pSlots);
+		for (int i=0; i<pSlots; i++) {
+			freeSlots.add(i);
+		}
+		// No compensation threads beyond the slots, a part blocked in svm_learn simply occupies its slot
+		pool = new ForkJoinPool(pSlots, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+			public ForkJoinWorkerThread newThread(ForkJoinPool pPool) {
+				return new SlotThread(pPool, freeSlots);
+			}
+		}, null, true, 0, pSlots, 1, new java.util.function.Predicate<ForkJoinPool>() {
+			public boolean test(ForkJoinPool pPool) {
+				return true;
+			}
+		}, 60, TimeUnit.SECONDS);
+		watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable pRunnable) {
+				Thread lThread = new Thread(pRunnable, "WorkStealingExecutor-Watchdog");
+				lThread.setDaemon(true);
+				return lThread;
+			}
+		});
+		timeout = pTimeout;
+		metrics = pMetrics;
+	}
+
+	private static class SlotThread extends ForkJoinWorkerThread {
+
+		private BlockingQueue<Integer> freeSlots;
+		private int slot;
+
+		SlotThread(ForkJoinPool pPool, BlockingQueue<Integer> pFreeSlots) {
+			super(pPool);
+			setDaemon(true);
+			freeSlots = pFreeSlots;
+		}
+
+		protected void onStart() {
+			super.onStart();
+			// The pool never runs more threads than slots, and a terminating thread returns its slot first
+			try {
+				slot = freeSlots.take();
+			}
+			catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		protected void onTermination(Throwable pException) {
+			freeSlots.add(slot);
+			super.onTermination(pException);
+		}
+
+	}
+
+	private class JobTask extends CountedCompleter<Void> {
+
+		private static final long serialVersionUID = 1L;
+
+		private Job<T> job;
+		private long submitted;
+		private CompletableFuture<T> future = new CompletableFuture<T>();
+		private volatile Throwable failure;
+		private ScheduledFuture<?> kill;
+
+		JobTask(Job<T> pJob) {
+			job = pJob;
+			submitted = System.nanoTime();
+		}
+
+		public void compute() {
+			metrics.since(EvaluationMetrics.QUEUE, submitted);
+			if (timeout > 0) {
+				kill = watchdog.schedule(new Runnable() {
+					public void run() {
+						job.kill();
+					}
+				}, timeout, TimeUnit.MILLISECONDS);
+			}
+			List<? extends Part> lParts;
+			try {
+				lParts = job.split();
+			}
+			catch (Throwable e) {
+				failure = e;
+				lParts = Collections.emptyList();
+			}
+			setPendingCount(lParts.size());
+			for (Part lPart:lParts) {
+				new PartTask(this, lPart).fork();
+			}
+			tryComplete();
+		}
+
+		public void onCompletion(CountedCompleter<?> pCaller) {
+			if (kill != null) kill.cancel(false);
+			if (failure != null) {
+				future.completeExceptionally(failure);
+			}
+			else {
+				try {
+					future.complete(job.reduce());
+				}
+				catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			}
+			completed.add(future);
+		}
+
+	}
+
+	private class PartTask extends CountedCompleter<Void> {
+
+		private static final long serialVersionUID = 1L;
+
+		private JobTask job;
+		private Part part;
+
+		PartTask(JobTask pJob, Part pPart) {
+			super(pJob);
+			job = pJob;
+			part = pPart;
+		}
+
+		public void compute() {
+			try {
+				Thread lThread = Thread.currentThread();
+				if (!(lThread instanceof SlotThread)) throw new IllegalStateException("Part run outside the pool of its WorkStealingExecutor, on "+lThread.getName());
+				part.run(((SlotThread)lThread).slot);
+			}
+			catch (Throwable e) {
+				if (job.failure == null) job.failure = e;
+			}
+			tryComplete();
+		}
+
+	}
+
+	public void submit(Job<T> pJob) {
+		pending++;
+		pool.execute(new JobTask(pJob));
+	}
+
+	public int getPending() {
+		return pending;
+	}
+
+	public T take() throws InterruptedException {
+		Future<T> lFuture = completed.take();
+		pending--;
+		try {
+			return lFuture.get();
+		}
+		catch (ExecutionException e) {
+			e.getCause().printStackTrace();
+			return null;
+		}
+	}
+
+	public void shutdown() {
+		pool.shutdownNow();
+		watchdog.shutdownNow();
+	}
+
+}
@@ -0,0 +1,81 @@
+package org.geneticsvm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.function.*;
+import org.junit.jupiter.api.io.*;
+
+public class CheckpointTest {
+
+	@TempDir
+	public Path directory;
+
+	@Test
+	public void roundTrip() throws IOException {
+		Random lRandom = new Random(11);
+		List<Creature> lPopulation = new ArrayList<Creature>();
+		for (int i=0; i<5; i++) {
+			lPopulation.add(new Creature(0.4, 130, lRandom));
+		}
+		lPopulation.get(0).setKeep(true);
+		lPopulation.get(0).setEvaluated(true);
+		lPopulation.get(0).setIndexLabelsBestResults(new SVMResult[] {
+			new SVMResult(0, SVMParameters.fromString("-t 2 -c 100.0 -g 0.01"), 66.67, 50.0),
+			new SVMResult(1, null, -1, -1)
+		});
+		Checkpoint lCheckpoint = new Checkpoint(new File("testdata/parameters"), new File("testdata/object.index"), new File("testdata/object.matrix"), null, 0x1234567890abcdefL, 7, 42.5, lRandom, lPopulation);
+		lCheckpoint.setEvaluations(1000, 30000);
+		lCheckpoint.setTarget(5, 800, 24000);
+		File lFile = directory.resolve("study.checkpoint").toFile();
+		lCheckpoint.write(lFile);
+		assertTrue(Checkpoint.isCheckpoint(lFile));
+		assertFalse(new File(lFile.getAbsolutePath()+".tmp").exists());
+
+		Checkpoint lRead = Checkpoint.read(lFile);
+		assertEquals(new File("testdata/parameters").getAbsoluteFile(), lRead.getParameterFile());
+		assertEquals(new File("testdata/object.index").getAbsoluteFile(), lRead.getIndexFile());
+		assertEquals(new File("testdata/object.matrix").getAbsoluteFile(), lRead.getDataFile());
+		assertNull(lRead.getFeatureFile());
+		assertEquals(0x1234567890abcdefL, lRead.getGridHash());
+		assertEquals(7, lRead.getTurn());
+		assertEquals(42.5, lRead.getLastTurnsBestF(), 0);
+		assertEquals(1000, lRead.getEvaluations());
+		assertEquals(30000, lRead.getTrainings());
+		assertEquals(5, lRead.getTargetTurn());
+		assertEquals(800, lRead.getTargetEvaluations());
+		assertEquals(24000, lRead.getTargetTrainings());
+		// The random generator continues where the written one stopped
+		assertEquals(lRandom.nextLong(), lRead.getRandom().nextLong());
+
+		assertEquals(lPopulation, lRead.getPopulation());
+		Creature lCreature = lRead.getPopulation().get(0);
+		assertTrue(lCreature.isKeep());
+		assertTrue(lCreature.isEvaluated());
+		SVMResult[] lResults = lCreature.getIndexLabelsBestResults();
+		assertEquals(2, lResults.length);
+		assertEquals(0, lResults[0].getIndexLabel());
+		assertEquals("-t 2 -c 100.0 -g 0.01", lResults[0].getParameters().toString());
+		assertEquals(66.67, lResults[0].getPrecision(), 0);
+		assertEquals(50.0, lResults[0].getRecall(), 0);
+		assertNull(lResults[1].getParameters());
+		assertFalse(lRead.getPopulation().get(1).isKeep());
+		assertNull(lRead.getPopulation().get(1).getIndexLabelsBestResults());
+	}
+
+	@Test
+	public void otherFilesAreNoCheckpoint() throws IOException {
+		assertFalse(Checkpoint.isCheckpoint(new File("testdata/object.matrix")));
+		assertFalse(Checkpoint.isCheckpoint(directory.resolve("missing").toFile()));
+		assertThrows(IOException.class, new Executable() {
+			public void execute() throws Throwable {
+				Checkpoint.read(new File("testdata/object.matrix"));
+			}
+		});
+	}
+
+}
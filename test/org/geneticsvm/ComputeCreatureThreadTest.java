@@ -0,0 +1,109 @@
+package org.geneticsvm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+
+public class ComputeCreatureThreadTest {
+
+	private static final int[] INDEX_LABELS = {0, 1, 2};
+
+	private DataMatrix matrix;
+	private int[] index;
+	private List<SVMParameters> parameters;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		matrix = MatrixLoader.load(new File("testdata/object.matrix"), null);
+		index = new int[matrix.getRowCount()];
+		for (int i=0; i<index.length; i++) index[i] = i % INDEX_LABELS.length;
+		parameters = new ArrayList<SVMParameters>();
+		parameters.add(SVMParameters.fromString("-t 2 -c 100.0 -g 0.01"));
+	}
+
+	private SVMResult[] cachedResults() {
+		SVMResult[] lResult = new SVMResult[INDEX_LABELS.length];
+		for (int i=0; i<lResult.length; i++) {
+			lResult[i] = new SVMResult(INDEX_LABELS[i], parameters.get(0), 80, 60);
+		}
+		return lResult;
+	}
+
+	@Test
+	public void cacheHitKeepsFMeasure() throws Exception {
+		FitnessCache lCache = new FitnessCache(100, null, 0, parameters);
+		Creature lCreature = new Creature(0.5, matrix.getColumnCount(), new Random(1));
+		lCache.put(lCreature, cachedResults());
+		lCreature.setIndexLabelsBestResults(cachedResults());
+		double lExpected = lCreature.getFMeasure();
+		assertTrue(lExpected > 0);
+		// A survivor of the last turn is looked up again through the work-stealing path
+		WorkStealingExecutor<ComputeCreatureThread> lExecutor = new WorkStealingExecutor<ComputeCreatureThread>(1, 0, new EvaluationMetrics());
+		try {
+			lExecutor.submit(new ComputeCreatureThread(lCreature, parameters, index, INDEX_LABELS, matrix, new SVMBackendPool(SVMBackend.SMO, 1, null, null, null, new EvaluationMetrics()), null, 0, lCache));
+			ComputeCreatureThread lThread = lExecutor.take();
+			assertNotNull(lThread);
+			assertTrue(lThread.isCached());
+		}
+		finally {
+			lExecutor.shutdown();
+		}
+		assertEquals(lExpected, lCreature.getFMeasure(), 0);
+		assertTrue(lCreature.isEvaluated());
+		SVMResult[] lStored = lCache.get(lCreature);
+		assertNotNull(lStored);
+		assertEquals(80, lStored[0].getPrecision(), 0);
+	}
+
+	@Test
+	public void foldPartsMatchSequentialFolds() throws Exception {
+		parameters.add(SVMParameters.fromString("-t 2 -c 1.0 -g 0.01"));
+		parameters.add(SVMParameters.fromString("-t 0 -c 10.0"));
+		FoldSplit lFoldSplit = new FoldSplit(index, 4, FoldSplit.DEFAULT_SEED);
+		Creature lSequential = new Creature(0.5, matrix.getColumnCount(), new Random(2));
+		Creature lParts = new Creature(lSequential.getBits(), lSequential.getLength());
+		new ComputeCreatureThread(lSequential, parameters, index, INDEX_LABELS, matrix, new SMOBackend(), lFoldSplit, 0, null).run();
+		WorkStealingExecutor<ComputeCreatureThread> lExecutor = new WorkStealingExecutor<ComputeCreatureThread>(2, 0, new EvaluationMetrics());
+		try {
+			lExecutor.submit(new ComputeCreatureThread(lParts, parameters, index, INDEX_LABELS, matrix, new SVMBackendPool(SVMBackend.SMO, 2, null, null, null, new EvaluationMetrics()), lFoldSplit, 0, null));
+			assertNotNull(lExecutor.take());
+		}
+		finally {
+			lExecutor.shutdown();
+		}
+		assertTrue(lParts.isEvaluated());
+		for (int i=0; i<INDEX_LABELS.length; i++) {
+			SVMResult lExpected = lSequential.getIndexLabelsBestResults()[i];
+			SVMResult lActual = lParts.getIndexLabelsBestResults()[i];
+			assertSame(lExpected.getParameters(), lActual.getParameters());
+			assertEquals(lExpected.getPrecision(), lActual.getPrecision(), 0);
+			assertEquals(lExpected.getRecall(), lActual.getRecall(), 0);
+		}
+	}
+
+	@Test
+	public void metricsStayWithTheirStudy() throws Exception {
+		// Two islands of one process, only the first one evaluates
+		EvaluationMetrics lFirst = new EvaluationMetrics();
+		EvaluationMetrics lSecond = new EvaluationMetrics();
+		WorkStealingExecutor<ComputeCreatureThread> lExecutor = new WorkStealingExecutor<ComputeCreatureThread>(1, 0, lFirst);
+		try {
+			lExecutor.submit(new ComputeCreatureThread(new Creature(0.5, matrix.getColumnCount(), new Random(3)), parameters, index, INDEX_LABELS, matrix, new SVMBackendPool(SVMBackend.SMO, 1, null, null, null, lFirst), null, 0, null));
+			assertNotNull(lExecutor.take());
+		}
+		finally {
+			lExecutor.shutdown();
+		}
+		EvaluationMetrics.Snapshot lSnapshot = lFirst.snapshot();
+		assertEquals(1, lSnapshot.getCount(EvaluationMetrics.QUEUE));
+		assertEquals(1, lSnapshot.getCount(EvaluationMetrics.CREATURE));
+		assertTrue(lSnapshot.getCount(EvaluationMetrics.SOLVE) > 0);
+		for (int i=0; i<EvaluationMetrics.PHASES; i++) {
+			assertEquals(0, lSecond.snapshot().getCount(i), EvaluationMetrics.getName(i));
+		}
+	}
+
+}
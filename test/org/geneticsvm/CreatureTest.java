@@ -0,0 +1,87 @@
+package org.geneticsvm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+
+public class CreatureTest {
+
+	/** Mask of pLength features with the bits at pFeatures set, spanning several words. */
+	private static String features(int pLength, int... pFeatures) {
+		char[] lResult = new char[pLength];
+		Arrays.fill(lResult, '0');
+		for (int lFeature:pFeatures) lResult[lFeature] = '1';
+		return new String(lResult);
+	}
+
+	@Test
+	public void featuresRoundTripAcrossWords() {
+		String lFeatures = features(130, 0, 5, 63, 64, 127, 128, 129);
+		Creature lCreature = new Creature(lFeatures);
+		assertEquals(130, lCreature.getLength());
+		assertEquals(3, lCreature.getBits().length);
+		assertEquals(lFeatures, lCreature.getFeatures());
+		assertEquals(7, lCreature.getFeaturesCount());
+		assertArrayEquals(new int[] {0, 5, 63, 64, 127, 128, 129}, lCreature.getFeatureIndices());
+		assertTrue(lCreature.isFeature(63));
+		assertTrue(lCreature.isFeature(64));
+		assertFalse(lCreature.isFeature(62));
+		assertFalse(lCreature.isFeature(65));
+	}
+
+	@Test
+	public void equalsAndHashCode() {
+		Creature lCreature = new Creature(features(70, 1, 64, 69));
+		Creature lSame = new Creature(lCreature.getBits().clone(), 70);
+		assertEquals(lCreature, lSame);
+		assertEquals(lCreature.hashCode(), lSame.hashCode());
+		assertNotEquals(lCreature, new Creature(features(70, 1, 64)));
+		assertNotEquals(lCreature, new Creature(features(71, 1, 64, 69)));
+	}
+
+	@Test
+	public void randomMaskStaysWithinLength() {
+		Random lRandom = new Random(1);
+		for (int lLength:new int[] {1, 63, 64, 65, 200}) {
+			assertTrue(Creature.isEmpty(Creature.randomMask(lLength, 0, lRandom)));
+			long[] lFull = Creature.randomMask(lLength, 1, lRandom);
+			assertEquals(Creature.words(lLength), lFull.length);
+			assertEquals(lLength, Creature.indices(lFull).length);
+			for (int i=0; i<20; i++) {
+				int[] lIndices = Creature.indices(Creature.randomMask(lLength, 0.5, lRandom));
+				for (int lIndex:lIndices) assertTrue(lIndex < lLength);
+			}
+		}
+	}
+
+	@Test
+	public void randomMaskDensity() {
+		Random lRandom = new Random(2);
+		for (double lProbability:new double[] {0.01, 0.1, 0.5, 0.9}) {
+			int lLength = 100000;
+			int lCount = Creature.indices(Creature.randomMask(lLength, lProbability, lRandom)).length;
+			// Well within five standard deviations of the binomial count
+			double lDeviation = Math.sqrt(lLength*lProbability*(1-lProbability));
+			assertEquals(lLength*lProbability, lCount, 5*lDeviation, "p = "+lProbability);
+		}
+	}
+
+	@Test
+	public void randomMaskIsDeterministic() {
+		assertArrayEquals(Creature.randomMask(300, 0.3, new Random(5)), Creature.randomMask(300, 0.3, new Random(5)));
+		assertEquals(new Creature(0.3, 300, new Random(5)), new Creature(0.3, 300, new Random(5)));
+	}
+
+	@Test
+	public void offspringKeepsParent() {
+		Creature lParent = new Creature(0.5, 150, new Random(3));
+		Creature lChild = lParent.createOffspring(0.05, new Random(4));
+		assertEquals(150, lChild.getLength());
+		assertArrayEquals(lParent.getBits(), lChild.getParentBits());
+		assertTrue(lChild.getFeaturesCount() > 0);
+		for (int lIndex:lChild.getFeatureIndices()) assertTrue(lIndex < 150);
+	}
+
+}
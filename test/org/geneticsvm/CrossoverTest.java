@@ -0,0 +1,89 @@
+package org.geneticsvm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.function.*;
+
+public class CrossoverTest {
+
+	private static final int LENGTH = 200;
+
+	private static boolean isSet(long[] pBits, int pIndex) {
+		return (pBits[pIndex >>> 6] & (1L << pIndex)) != 0;
+	}
+
+	@Test
+	public void setRangeAcrossWords() {
+		int[][] lRanges = {{0, 0}, {0, 1}, {3, 64}, {0, 64}, {63, 65}, {64, 128}, {10, 200}, {65, 130}, {199, 200}};
+		for (int[] lRange:lRanges) {
+			long[] lBits = new long[Creature.words(LENGTH)];
+			KPointCrossover.setRange(lBits, lRange[0], lRange[1]);
+			for (int i=0; i<lBits.length*64; i++) {
+				assertEquals((i >= lRange[0]) && (i < lRange[1]), isSet(lBits, i), "["+lRange[0]+", "+lRange[1]+") bit "+i);
+			}
+		}
+	}
+
+	@Test
+	public void kPointTakesSegmentsAlternately() {
+		long[] lFirst = Creature.randomMask(LENGTH, 1, new Random(1));
+		long[] lSecond = new long[lFirst.length];
+		Random lRandom = new Random(2);
+		for (int lPoints:new int[] {1, 2, 5}) {
+			KPointCrossover lCrossover = new KPointCrossover(lPoints);
+			for (int n=0; n<50; n++) {
+				long[] lChild = lCrossover.cross(lFirst, lSecond, LENGTH, lRandom);
+				// Starts with the first parent and switches at every cut
+				assertTrue(isSet(lChild, 0));
+				int lSwitches = 0;
+				for (int i=1; i<LENGTH; i++) {
+					if (isSet(lChild, i) != isSet(lChild, i-1)) lSwitches++;
+				}
+				assertEquals(lPoints, lSwitches);
+				for (int i=LENGTH; i<lChild.length*64; i++) {
+					assertFalse(isSet(lChild, i));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void uniformTakesEveryFeatureFromAParent() {
+		Random lRandom = new Random(3);
+		long[] lFirst = Creature.randomMask(LENGTH, 0.5, lRandom);
+		long[] lSecond = Creature.randomMask(LENGTH, 0.5, lRandom);
+		UniformCrossover lCrossover = new UniformCrossover();
+		int lFromFirst = 0;
+		int lDiffering = 0;
+		for (int n=0; n<100; n++) {
+			long[] lChild = lCrossover.cross(lFirst, lSecond, LENGTH, lRandom);
+			for (int i=0; i<lChild.length*64; i++) {
+				if (isSet(lFirst, i) == isSet(lSecond, i)) {
+					assertEquals(isSet(lFirst, i), isSet(lChild, i));
+				}
+				else {
+					lDiffering++;
+					if (isSet(lChild, i) == isSet(lFirst, i)) lFromFirst++;
+				}
+			}
+		}
+		// Each parent's feature is picked with probability 1/2
+		assertEquals(0.5, lFromFirst/(double)lDiffering, 0.05);
+	}
+
+	@Test
+	public void create() {
+		assertNull(Crossover.create(Crossover.NONE));
+		assertTrue(Crossover.create(Crossover.UNIFORM) instanceof UniformCrossover);
+		assertTrue(Crossover.create("kpoint:3") instanceof KPointCrossover);
+		assertThrows(IllegalArgumentException.class, new Executable() {
+			public void execute() {
+				Crossover.create("kpoint:0");
+			}
+		});
+	}
+
+}
@@ -0,0 +1,159 @@
+package org.geneticsvm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.*;
+
+public class DataMatrixTest {
+
+	private static final int ROWS = 40;
+	private static final int COLUMNS = 150;
+
+	@TempDir
+	public Path directory;
+
+	private DenseMatrix dense;
+
+	@BeforeEach
+	public void setUp() {
+		// Mostly zeros, with negative and positive values of different magnitudes per column
+		Random lRandom = new Random(8);
+		double[][] lRows = new double[ROWS][COLUMNS];
+		for (int i=0; i<ROWS; i++) {
+			for (int k=0; k<COLUMNS; k++) {
+				if (lRandom.nextInt(10) == 0) lRows[i][k] = (lRandom.nextDouble()-0.3)*Math.pow(10, k % 5);
+			}
+		}
+		dense = new DenseMatrix(lRows);
+	}
+
+	/** Compares every accessor of pMatrix with pExpected, values within pTolerance per column. */
+	private static void assertSameValues(DataMatrix pExpected, DataMatrix pMatrix, double[] pTolerance) {
+		int lColumnCount = pExpected.getColumnCount();
+		assertEquals(pExpected.getRowCount(), pMatrix.getRowCount());
+		assertEquals(lColumnCount, pMatrix.getColumnCount());
+		assertEquals(pExpected.getDensity(), pMatrix.getDensity(), 0);
+		double[] lRow = new double[lColumnCount];
+		int[] lColumns = Creature.indices(Creature.randomMask(lColumnCount, 0.5, new Random(9)));
+		int[] lPositions = new int[lColumns.length];
+		double[] lValues = new double[lColumns.length];
+		int[] lDensePositions = new int[lColumns.length];
+		double[] lDenseValues = new double[lColumns.length];
+		for (int i=0; i<pExpected.getRowCount(); i++) {
+			pMatrix.getRow(i, lRow);
+			for (int k=0; k<lColumnCount; k++) {
+				double lExpected = pExpected.get(i, k);
+				assertEquals(lExpected, pMatrix.get(i, k), pTolerance[k], "row "+i+", column "+k);
+				assertEquals(pMatrix.get(i, k), lRow[k]);
+				// Zeros stay exact so that sparse projections agree
+				assertEquals(lExpected == 0, lRow[k] == 0, "row "+i+", column "+k);
+			}
+			int lCount = pMatrix.project(i, lColumns, lPositions, lValues);
+			assertEquals(pExpected.project(i, lColumns, lDensePositions, lDenseValues), lCount);
+			for (int m=0; m<lCount; m++) {
+				assertEquals(lDensePositions[m], lPositions[m]);
+				assertEquals(lDenseValues[m], lValues[m], pTolerance[lColumns[lPositions[m]]]);
+			}
+		}
+	}
+
+	private static double[] tolerance(double pTolerance) {
+		double[] lResult = new double[COLUMNS];
+		Arrays.fill(lResult, pTolerance);
+		return lResult;
+	}
+
+	/** pRelative of the largest absolute value of every column. */
+	private static double[] relativeTolerance(DataMatrix pMatrix, double pRelative) {
+		double[] lResult = new double[pMatrix.getColumnCount()];
+		for (int i=0; i<pMatrix.getRowCount(); i++) {
+			for (int k=0; k<lResult.length; k++) {
+				lResult[k] = Math.max(lResult[k], pRelative*Math.abs(pMatrix.get(i, k)));
+			}
+		}
+		return lResult;
+	}
+
+	/** One quantization step of every column: half a step of rounding plus less than half a step of shift. */
+	private static double[] quantizationTolerance(DataMatrix pMatrix) {
+		double[] lResult = new double[pMatrix.getColumnCount()];
+		for (int k=0; k<lResult.length; k++) {
+			double lMinimum = Double.POSITIVE_INFINITY;
+			double lMaximum = Double.NEGATIVE_INFINITY;
+			for (int i=0; i<pMatrix.getRowCount(); i++) {
+				lMinimum = Math.min(lMinimum, pMatrix.get(i, k));
+				lMaximum = Math.max(lMaximum, pMatrix.get(i, k));
+			}
+			lResult[k] = (lMaximum-lMinimum)/(QuantizedMatrix.LEVELS-1);
+		}
+		return lResult;
+	}
+
+	@Test
+	public void sparseMatchesDense() {
+		SparseMatrix lSparse = KernelMatrixTest.toSparse(dense);
+		assertSameValues(dense, lSparse, tolerance(0));
+		assertTrue(lSparse.getBytes() < dense.getBytes());
+	}
+
+	@Test
+	public void loaderKeepsSparseRows() throws IOException {
+		File lFile = directory.resolve("sparse.matrix").toFile();
+		PrintWriter lWriter = new PrintWriter(lFile, "UTF-8");
+		try {
+			for (int i=0; i<ROWS; i++) {
+				StringBuilder lLine = new StringBuilder();
+				for (int k=0; k<COLUMNS; k++) {
+					if (k > 0) lLine.append('\t');
+					lLine.append(dense.get(i, k));
+				}
+				lWriter.println(lLine);
+			}
+		}
+		finally {
+			lWriter.close();
+		}
+		DataMatrix lMatrix = MatrixLoader.load(lFile, null);
+		assertTrue(lMatrix instanceof SparseMatrix, lMatrix.toString());
+		assertSameValues(dense, lMatrix, tolerance(0));
+		// Again from the matrix cache written by the first load
+		assertTrue(MatrixLoader.getSidecar(lFile).exists());
+		lMatrix = MatrixLoader.load(lFile, null);
+		assertTrue(lMatrix instanceof SparseMatrix, lMatrix.toString());
+		assertSameValues(dense, lMatrix, tolerance(0));
+	}
+
+	@Test
+	public void floatMatchesDense() {
+		FloatMatrix lFloat = new FloatMatrix(dense);
+		assertSameValues(dense, lFloat, relativeTolerance(dense, 1e-6));
+		assertEquals(dense.getBytes()/2, lFloat.getBytes());
+	}
+
+	@Test
+	public void quantizedMatchesDense() {
+		QuantizedMatrix lQuantized = new QuantizedMatrix(dense);
+		assertSameValues(dense, lQuantized, quantizationTolerance(dense));
+		assertTrue(lQuantized.getBytes() < dense.getBytes()/3);
+	}
+
+	@Test
+	public void loaderStorages() throws IOException {
+		File lFile = directory.resolve("object.matrix").toFile();
+		Files.copy(Paths.get("testdata/object.matrix"), lFile.toPath());
+		DataMatrix lDouble = MatrixLoader.load(lFile, null, MatrixLoader.DOUBLE);
+		assertTrue(lDouble instanceof DenseMatrix, lDouble.toString());
+		DataMatrix lFloat = MatrixLoader.load(lFile, null, MatrixLoader.FLOAT);
+		assertTrue(lFloat instanceof FloatMatrix, lFloat.toString());
+		assertSameValues(lDouble, lFloat, relativeTolerance(lDouble, 1e-6));
+		DataMatrix lQuantized = MatrixLoader.load(lFile, null, MatrixLoader.INT16);
+		assertTrue(lQuantized instanceof QuantizedMatrix, lQuantized.toString());
+		assertSameValues(lDouble, lQuantized, quantizationTolerance(lDouble));
+	}
+
+}
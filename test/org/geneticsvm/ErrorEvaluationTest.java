@@ -0,0 +1,40 @@
+package org.geneticsvm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.*;
+
+public class ErrorEvaluationTest {
+
+	private static final String FEATURES = "0100000111010100010010111110100111000010001010100100010010101";
+
+	@TempDir
+	public Path directory;
+
+	@Test
+	public void failedJobDoesNotStopLaterRows() throws Exception {
+		Map<Integer, SVMParameters> lMap = new HashMap<Integer, SVMParameters>();
+		for (int i=0; i<3; i++) lMap.put(i, new SVMParameters(2, 100, 0, 0.01));
+		ErrorEvaluation lEvaluation = new ErrorEvaluation(new File("testdata/object.index"), new File("testdata/object.matrix"), lMap, FEATURES, directory.toFile()) {
+			protected Boolean classify(TrainingSet pTrainingSet, int pID, int pIndexLabel, File pDirectory, SVMLightWorker pWorker) {
+				if (pID == 1) throw new IllegalStateException("classification of row 1 failed");
+				return pID % 2 == 0;
+			}
+		};
+		File lResultFile = directory.resolve("results.txt").toFile();
+		lEvaluation.evaluate(lResultFile, 2);
+		List<String> lLines = Files.readAllLines(lResultFile.toPath(), StandardCharsets.UTF_8);
+		int lRows = lEvaluation.matrix.getRowCount();
+		int lLabels = lEvaluation.indexSet.size();
+		// Header, then every job except the three of row 1
+		assertEquals(1+(lRows-1)*lLabels, lLines.size());
+		assertTrue(lLines.get(lLines.size()-1).startsWith((lRows-1)+"\t"));
+	}
+
+}
@@ -0,0 +1,72 @@
+package org.geneticsvm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.*;
+
+public class FitnessCacheTest {
+
+	private static final long GRID_HASH = 42;
+
+	@TempDir
+	public Path directory;
+
+	private List<SVMParameters> grid() {
+		return Arrays.asList(new SVMParameters(0, 1, 0, 0), new SVMParameters(2, 100, 0, 0.01));
+	}
+
+	private SVMResult[] results(List<SVMParameters> pGrid) {
+		return new SVMResult[]{new SVMResult(1, pGrid.get(0), 80, 60), new SVMResult(2, pGrid.get(1), 70, 50)};
+	}
+
+	@Test
+	public void evictedCreatureIsNotAppendedAgain() throws Exception {
+		File lFile = directory.resolve("fitness.cache").toFile();
+		List<SVMParameters> lGrid = grid();
+		Random lRandom = new Random(1);
+		Creature lFirst = new Creature(0.5, 100, lRandom);
+		Creature lSecond = new Creature(0.5, 100, lRandom);
+		FitnessCache lCache = new FitnessCache(1, lFile, GRID_HASH, lGrid);
+		try {
+			lCache.put(lFirst, results(lGrid));
+			lCache.put(lSecond, results(lGrid));
+			long lLength = lFile.length();
+			// The second creature evicted the first from memory, it is recomputed and stored again
+			lCache.put(lFirst, results(lGrid));
+			assertEquals(lLength, lFile.length());
+		}
+		finally {
+			lCache.close();
+		}
+	}
+
+	@Test
+	public void reloadedResultsUseGridInstances() throws Exception {
+		File lFile = directory.resolve("fitness.cache").toFile();
+		Creature lCreature = new Creature(0.5, 100, new Random(1));
+		FitnessCache lCache = new FitnessCache(10, lFile, GRID_HASH, grid());
+		try {
+			lCache.put(lCreature, results(grid()));
+		}
+		finally {
+			lCache.close();
+		}
+		List<SVMParameters> lGrid = grid();
+		lCache = new FitnessCache(10, lFile, GRID_HASH, lGrid);
+		try {
+			SVMResult[] lResults = lCache.get(lCreature);
+			assertNotNull(lResults);
+			assertSame(lGrid.get(0), lResults[0].getParameters());
+			assertSame(lGrid.get(1), lResults[1].getParameters());
+		}
+		finally {
+			lCache.close();
+		}
+	}
+
+}
@@ -0,0 +1,90 @@
+package org.geneticsvm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+
+public class FoldSplitTest {
+
+	private static int[] index(int... pCounts) {
+		List<Integer> lResult = new ArrayList<Integer>();
+		for (int lLabel=0; lLabel<pCounts.length; lLabel++) {
+			for (int i=0; i<pCounts[lLabel]; i++) lResult.add(lLabel);
+		}
+		// Interleave the labels so that the split cannot rely on sorted rows
+		Collections.shuffle(lResult, new Random(9));
+		int[] lIndex = new int[lResult.size()];
+		for (int i=0; i<lIndex.length; i++) lIndex[i] = lResult.get(i);
+		return lIndex;
+	}
+
+	@Test
+	public void foldsAreStratified() {
+		int[] lCounts = {23, 7, 50};
+		int[] lIndex = index(lCounts);
+		int lFolds = 5;
+		FoldSplit lSplit = new FoldSplit(lIndex, lFolds, FoldSplit.DEFAULT_SEED);
+		int[][] lPerFold = new int[lFolds][lCounts.length];
+		int[] lSizes = new int[lFolds];
+		for (int i=0; i<lIndex.length; i++) {
+			int lFold = lSplit.getFold(i);
+			assertTrue((lFold >= 0) && (lFold < lFolds));
+			lPerFold[lFold][lIndex[i]]++;
+			lSizes[lFold]++;
+		}
+		for (int lLabel=0; lLabel<lCounts.length; lLabel++) {
+			int lMin = Integer.MAX_VALUE;
+			int lMax = 0;
+			for (int lFold=0; lFold<lFolds; lFold++) {
+				lMin = Math.min(lMin, lPerFold[lFold][lLabel]);
+				lMax = Math.max(lMax, lPerFold[lFold][lLabel]);
+			}
+			assertTrue(lMax-lMin <= 1, "label "+lLabel);
+		}
+		int lMin = Integer.MAX_VALUE;
+		int lMax = 0;
+		for (int lSize:lSizes) {
+			lMin = Math.min(lMin, lSize);
+			lMax = Math.max(lMax, lSize);
+		}
+		assertTrue(lMax-lMin <= 1);
+	}
+
+	@Test
+	public void sameSeedSameSplit() {
+		int[] lIndex = index(30, 30, 30);
+		FoldSplit lSplit = new FoldSplit(lIndex, 4, 17);
+		FoldSplit lSame = new FoldSplit(lIndex, 4, 17);
+		FoldSplit lOther = new FoldSplit(lIndex, 4, 18);
+		boolean lDiffers = false;
+		for (int i=0; i<lIndex.length; i++) {
+			assertEquals(lSplit.getFold(i), lSame.getFold(i));
+			if (lSplit.getFold(i) != lOther.getFold(i)) lDiffers = true;
+		}
+		assertTrue(lDiffers);
+	}
+
+	@Test
+	public void testRowsFollowTrainingSetRows() throws IOException {
+		DataMatrix lMatrix = MatrixLoader.load(new File("testdata/object.matrix"), null);
+		int[] lIndex = {0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2};
+		FoldSplit lSplit = new FoldSplit(lIndex, 3, FoldSplit.DEFAULT_SEED);
+		int[] lRows = {1, 4, 5, 8, 10};
+		TrainingSet lTrainingSet = new TrainingSet(lMatrix, lIndex, lRows, new int[] {0, 1, 2});
+		int lTestRows = 0;
+		for (int lFold=0; lFold<lSplit.getFolds(); lFold++) {
+			boolean[] lTest = lSplit.getTestRows(lTrainingSet, lFold);
+			assertEquals(lRows.length, lTest.length);
+			for (int i=0; i<lRows.length; i++) {
+				assertEquals(lSplit.getFold(lRows[i]) == lFold, lTest[i]);
+				if (lTest[i]) lTestRows++;
+			}
+		}
+		// Every row is held out exactly once
+		assertEquals(lRows.length, lTestRows);
+	}
+
+}
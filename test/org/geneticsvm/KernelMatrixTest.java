@@ -0,0 +1,124 @@
+package org.geneticsvm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+
+public class KernelMatrixTest {
+
+	private DataMatrix matrix;
+	private int[] index;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		matrix = MatrixLoader.load(new File("testdata/object.matrix"), null);
+		index = new int[matrix.getRowCount()];
+	}
+
+	/** The same values in compressed sparse rows. */
+	static SparseMatrix toSparse(DataMatrix pMatrix) {
+		int[] lOffsets = new int[pMatrix.getRowCount()+1];
+		List<Integer> lColumns = new ArrayList<Integer>();
+		List<Double> lValues = new ArrayList<Double>();
+		for (int i=0; i<pMatrix.getRowCount(); i++) {
+			for (int k=0; k<pMatrix.getColumnCount(); k++) {
+				if (pMatrix.get(i, k) != 0) {
+					lColumns.add(k);
+					lValues.add(pMatrix.get(i, k));
+				}
+			}
+			lOffsets[i+1] = lColumns.size();
+		}
+		int[] lColumnArray = new int[lColumns.size()];
+		double[] lValueArray = new double[lValues.size()];
+		for (int i=0; i<lColumnArray.length; i++) {
+			lColumnArray[i] = lColumns.get(i);
+			lValueArray[i] = lValues.get(i);
+		}
+		return new SparseMatrix(pMatrix.getColumnCount(), lOffsets, lColumnArray, lValueArray);
+	}
+
+	private static void assertDotProducts(TrainingSet pTrainingSet, KernelMatrix pKernel) {
+		for (int i=0; i<pTrainingSet.getRowCount(); i++) {
+			for (int k=0; k<=i; k++) {
+				double lSum = 0;
+				for (int m=0; m<pTrainingSet.getColumnCount(); m++) {
+					lSum += pTrainingSet.getValue(i, m)*pTrainingSet.getValue(k, m);
+				}
+				assertEquals(lSum, pKernel.get(i, k), 1e-9*Math.max(1, Math.abs(lSum)), "row "+i+", "+k);
+				assertEquals(pKernel.get(i, k), pKernel.get(k, i));
+			}
+		}
+	}
+
+	@Test
+	public void dotProductsOfDenseAndSparseRows() {
+		Creature lCreature = new Creature(0.5, matrix.getColumnCount(), new Random(3));
+		TrainingSet lDense = TrainingSet.forFeatures(matrix, index, lCreature);
+		TrainingSet lSparse = TrainingSet.forFeatures(toSparse(matrix), index, lCreature);
+		KernelMatrix lKernel = KernelMatrix.computeDotProducts(lDense);
+		assertDotProducts(lDense, lKernel);
+		KernelMatrix lSparseKernel = KernelMatrix.computeDotProducts(lSparse);
+		for (int i=0; i<lKernel.getRows(); i++) {
+			for (int k=0; k<=i; k++) {
+				assertEquals(lKernel.get(i, k), lSparseKernel.get(i, k));
+			}
+		}
+	}
+
+	private static void assertSameDotProducts(KernelMatrix pExpected, KernelMatrix pKernel) {
+		assertEquals(pExpected.getRows(), pKernel.getRows());
+		for (int i=0; i<pExpected.getRows(); i++) {
+			for (int k=0; k<=i; k++) {
+				double lExpected = pExpected.get(i, k);
+				assertEquals(lExpected, pKernel.get(i, k), 1e-9*Math.max(1, Math.abs(lExpected)), "row "+i+", "+k);
+			}
+		}
+	}
+
+	@Test
+	public void patchMatchesComputeDotProducts() {
+		Random lRandom = new Random(4);
+		Creature lParent = new Creature(0.5, matrix.getColumnCount(), lRandom);
+		KernelMatrix lKernel = KernelMatrix.computeDotProducts(TrainingSet.forFeatures(matrix, index, lParent));
+		// A chain of offspring, each patched from the last
+		for (int lGeneration=0; lGeneration<KernelCache.MAX_PATCHES; lGeneration++) {
+			Creature lChild = lParent.createOffspring(0.1, lRandom);
+			TrainingSet lTrainingSet = TrainingSet.forFeatures(matrix, index, lChild);
+			List<Integer> lAdded = new ArrayList<Integer>();
+			List<Integer> lRemoved = new ArrayList<Integer>();
+			for (int m=0; m<matrix.getColumnCount(); m++) {
+				if (lChild.isFeature(m) && !lParent.isFeature(m)) lAdded.add(m);
+				if (!lChild.isFeature(m) && lParent.isFeature(m)) lRemoved.add(m);
+			}
+			lKernel = lKernel.patch(lTrainingSet, toArray(lAdded), toArray(lRemoved));
+			assertEquals(lGeneration+1, lKernel.getPatches());
+			assertSameDotProducts(KernelMatrix.computeDotProducts(lTrainingSet), lKernel);
+			lParent = lChild;
+		}
+	}
+
+	@Test
+	public void cachePatchesOffspring() {
+		Random lRandom = new Random(6);
+		KernelCache lCache = new KernelCache(1 << 20, 0.5);
+		SVMParameters lParameters = SVMParameters.fromString("-t 2 -c 100.0 -g 0.01");
+		Creature lParent = new Creature(0.5, matrix.getColumnCount(), lRandom);
+		lCache.get(TrainingSet.forFeatures(matrix, index, lParent), lParameters);
+		Creature lChild = lParent.createOffspring(0.05, lRandom);
+		TrainingSet lTrainingSet = TrainingSet.forFeatures(matrix, index, lChild);
+		KernelMatrix lKernel = lCache.get(lTrainingSet, lParameters);
+		assertTrue(lCache.getStatistics().contains(" 1 patched from parents"), lCache.getStatistics());
+		assertSameDotProducts(SMOBackend.computeKernel(lTrainingSet, lParameters), lKernel);
+	}
+
+	private static int[] toArray(List<Integer> pList) {
+		int[] lResult = new int[pList.size()];
+		for (int i=0; i<lResult.length; i++) lResult[i] = pList.get(i);
+		return lResult;
+	}
+
+}
@@ -0,0 +1,51 @@
+package org.geneticsvm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.*;
+
+public class MatrixLoaderTest {
+
+	@TempDir
+	public Path directory;
+
+	@Test
+	public void concurrentLoadersWriteOneCache() throws Exception {
+		final File lFile = directory.resolve("object.matrix").toFile();
+		Files.copy(Paths.get("testdata/object.matrix"), lFile.toPath());
+		final DataMatrix lExpected = MatrixLoader.load(new File("testdata/object.matrix"), null);
+		// Islands of one process load the same matrix at the same time, none finds a cache yet
+		ExecutorService lExecutor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<DataMatrix>> lResults = new ArrayList<Future<DataMatrix>>();
+			for (int i=0; i<8; i++) {
+				final String lStorage = i % 2 == 0 ? MatrixLoader.MAPPED : MatrixLoader.DOUBLE;
+				lResults.add(lExecutor.submit(new Callable<DataMatrix>() {
+					public DataMatrix call() throws IOException {
+						return MatrixLoader.load(lFile, null, lStorage);
+					}
+				}));
+			}
+			for (Future<DataMatrix> lResult:lResults) {
+				DataMatrix lMatrix = lResult.get();
+				for (int i=0; i<lExpected.getRowCount(); i++) {
+					for (int k=0; k<lExpected.getColumnCount(); k++) {
+						assertEquals(lExpected.get(i, k), lMatrix.get(i, k), 0);
+					}
+				}
+			}
+		}
+		finally {
+			lExecutor.shutdown();
+		}
+		assertTrue(MatrixLoader.getSidecar(lFile).isFile());
+		assertEquals(2, directory.toFile().list().length, "temporary files left: "+Arrays.toString(directory.toFile().list()));
+	}
+
+}
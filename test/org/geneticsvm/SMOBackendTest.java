@@ -0,0 +1,101 @@
+package org.geneticsvm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.regex.*;
+
+import org.junit.jupiter.api.*;
+
+public class SMOBackendTest {
+
+	private static final Pattern CREATURE = Pattern.compile("^[0-9.]+\t([01]+)\t.*");
+	private static final Pattern RESULT = Pattern.compile(".*Label = (\\d+) .*Precision = ([-0-9.E]+) Recall = ([-0-9.E]+) Parameters = (-t .*) \\]");
+
+	private DataMatrix matrix;
+	private int[] index;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		matrix = MatrixLoader.load(new File("testdata/object.matrix"), null);
+		index = parseIndex(new File("testdata/object.index"));
+	}
+
+	private static int[] parseIndex(File pFile) throws IOException {
+		BufferedReader lReader = new BufferedReader(new InputStreamReader(new FileInputStream(pFile), "UTF-8"));
+		List<Integer> lEntries = new ArrayList<Integer>();
+		try {
+			String lLine = null;
+			while ((lLine = lReader.readLine()) != null) {
+				lLine = lLine.trim();
+				if ((lLine.length() == 0) || lLine.startsWith("#")) continue;
+				lEntries.add(Integer.parseInt(lLine));
+			}
+		}
+		finally {
+			lReader.close();
+		}
+		int[] lResult = new int[lEntries.size()];
+		for (int i=0; i<lResult.length; i++) lResult[i] = lEntries.get(i);
+		return lResult;
+	}
+
+	@Test
+	public void radialMatchesRecordedSVMLight() throws IOException {
+		// testdata/results.txt was written by a study running svm_learn -x 1
+		BufferedReader lReader = new BufferedReader(new InputStreamReader(new FileInputStream("testdata/results.txt"), "UTF-8"));
+		int lChecked = 0;
+		try {
+			String lLine = null;
+			Creature lCreature = null;
+			while ((lLine = lReader.readLine()) != null) {
+				Matcher lMatcher = CREATURE.matcher(lLine);
+				if (lMatcher.matches()) {
+					lCreature = new Creature(lMatcher.group(1));
+					continue;
+				}
+				lMatcher = RESULT.matcher(lLine);
+				if (!lMatcher.matches()) continue;
+				SVMParameters lParameters = SVMParameters.fromString(lMatcher.group(4));
+				// With gamma below 0.01 and C up to 10^6 the problem is nearly singular and
+				// both solvers stop at their own tolerance, so only compare well-conditioned ones
+				if (lParameters.getGamma() < 0.01) continue;
+				int lIndexLabel = Integer.parseInt(lMatcher.group(1));
+				SVMResult lResult = new SMOBackend().leaveOneOut(TrainingSet.forFeatures(matrix, index, lCreature), lIndexLabel, lParameters);
+				String lMessage = lCreature.getFeatures()+" label "+lIndexLabel+" "+lParameters;
+				assertEquals(Double.parseDouble(lMatcher.group(2)), lResult.getPrecision(), 0.01, lMessage);
+				assertEquals(Double.parseDouble(lMatcher.group(3)), lResult.getRecall(), 0.01, lMessage);
+				lChecked++;
+			}
+		}
+		finally {
+			lReader.close();
+		}
+		assertTrue(lChecked > 200);
+	}
+
+	@Test
+	public void leaveOneOutMatchesRetraining() throws IOException {
+		// No svm_learn recordings exist for these kernels: compare the bound-skipping,
+		// warm-started estimate with retraining once per held-out row
+		String[] lParameters = {"-t 0 -c 1.0", "-t 0 -c 100.0", "-t 1 -d 2 -c 1.0", "-t 1 -d 3 -c 10.0", "-t 3 -c 1.0", "-t 3 -c 100.0", "-t 2 -c 100.0 -g 0.1"};
+		FoldSplit lFoldSplit = new FoldSplit(index, index.length, FoldSplit.DEFAULT_SEED);
+		Random lRandom = new Random(7);
+		for (int c=0; c<4; c++) {
+			Creature lCreature = new Creature(c == 0 ? 1.0 : 0.5, matrix.getColumnCount(), lRandom);
+			TrainingSet lTrainingSet = TrainingSet.forFeatures(matrix, index, lCreature);
+			for (String lString:lParameters) {
+				SVMParameters lSVMParameters = SVMParameters.fromString(lString);
+				for (int lIndexLabel=0; lIndexLabel<3; lIndexLabel++) {
+					SVMResult lExpected = new SMOBackend().crossValidate(lTrainingSet, lIndexLabel, lSVMParameters, lFoldSplit);
+					SVMResult lResult = new SMOBackend().leaveOneOut(lTrainingSet, lIndexLabel, lSVMParameters);
+					String lMessage = lCreature.getFeatures()+" label "+lIndexLabel+" "+lString;
+					assertEquals(lExpected.getPrecision(), lResult.getPrecision(), 0, lMessage);
+					assertEquals(lExpected.getRecall(), lResult.getRecall(), 0, lMessage);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,38 @@
+package org.geneticsvm;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+
+public class SVMLightWorkerTest {
+
+	@Test
+	public void commandIsKilledAfterTimeout() throws Exception {
+		assumeTrue(SVMLightWorker.isSupported());
+		SVMLightWorkerPool lPool = new SVMLightWorkerPool(1, 200, new EvaluationMetrics());
+		try {
+			SVMLightWorker lWorker = lPool.getWorker(0);
+			long lStart = System.currentTimeMillis();
+			try {
+				lWorker.execute(Arrays.asList("sleep", "10"), new ArrayList<String>());
+				fail("Command not killed");
+			}
+			catch (IOException e) {
+				assertTrue(e.getMessage().contains("timeout"), e.getMessage());
+			}
+			assertTrue(System.currentTimeMillis()-lStart < 5000);
+			// The worker restarts its shell for the next command
+			List<String> lOutput = new ArrayList<String>();
+			assertEquals(0, lWorker.execute(Arrays.asList("echo", "alive"), lOutput));
+			assertEquals(Arrays.asList("alive"), lOutput);
+		}
+		finally {
+			lPool.shutdown();
+		}
+	}
+
+}